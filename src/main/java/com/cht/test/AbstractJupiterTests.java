@@ -0,0 +1,47 @@
+package com.cht.test;
+
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import com.cht.test.rule.ConcurrentExtension;
+
+/**
+ * JUnit Jupiter 的一般用途抽象測試案例，對應 {@link AbstractTests}。會自動偵測 Mockito 的 Annotation 並進行 Mock 物件的產生及注入，
+ * 也可以直接使用 {@link com.cht.test.annotation.Concurrent Concurrent}。需要調整 {@link ConcurrentExtension} 的設定時，在子類別以
+ * <code>&#064;RegisterExtension</code> 註冊即可，預設的 {@link ConcurrentExtension} 就不會作用。
+ * <p>
+ * 請先在貴系統測試用的 Source Folder 裡新增一個抽象測試類別，並且繼承我:
+ *
+ * <pre>
+ * &#064;ContextConfiguration
+ * public abstract class Abstract<i>&lt;系統代碼&gt;</i>Tests extends AbstractJupiterTests {
+ *
+ * }
+ * </pre>
+ *
+ * 再將測試用的 Spring 設定檔放在相同 classpath 下，並取名
+ * <code>Abstract<i>&lt;系統代碼&gt;</i>Tests-context.xml</code>，之後所有的測試案例都只要繼承該類別就可以了。
+ * <p>
+ * 如果是需要使用到 dbUnit 及 h2 database 進行的資料庫存取測試，請使用 {@link AbstractPersistenceCapableJupiterTests}。
+ *
+ * @author <a href="mailto:beta@cht.com.tw">黃培棠</a>
+ */
+@ExtendWith({ SpringExtension.class, MockitoExtension.class, ConcurrentExtension.class })
+public abstract class AbstractJupiterTests implements ApplicationContextAware {
+
+    /**
+     * 測試使用的 {@link ApplicationContext}。
+     */
+    protected ApplicationContext applicationContext;
+
+    /**
+     * 由 Spring 注入測試使用的 {@link ApplicationContext}。
+     */
+    @Override
+    public final void setApplicationContext(ApplicationContext applicationContext) {
+        this.applicationContext = applicationContext;
+    }
+}
@@ -0,0 +1,44 @@
+package com.cht.test;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.TestExecutionListeners.MergeMode;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.cht.test.persistence.CleanInsertTestExecutionListener;
+import com.cht.test.persistence.DataSetLocation;
+
+/**
+ * JUnit Jupiter 的資料庫存取抽象測試案例，對應 {@link AbstractPersistenceCapableTests}。
+ * <p>
+ * 類似 {@link AbstractJupiterTests}，會自動偵測 Mockito 的 Annotation，進行 Mock 物件的產生及注入；此外，每個測試都在交易中執行並於
+ * 結束時 rollback，還會依據 {@link DataSetLocation} 的設定進行測試資料表內容的建立。
+ * <p>
+ * 請注意 Spring 的交易只綁定在主要的 Thread 上，{@link com.cht.test.annotation.Concurrent Concurrent} 測試方法是在其他 Thread
+ * 上執行，不在測試的交易中：寫入的資料會直接 commit，不會在測試結束時 rollback，也看不到主要 Thread 在交易中尚未 commit 的資料。
+ * dataset 中的資料表會在下一個測試開始前依 {@link DataSetLocation#reset()} 重新建立，其他資料表請在 <code>&#064;AfterEach</code>
+ * 中自行清除。
+ *
+ * @author <a href="mailto:beta@cht.com.tw">黃培棠</a>
+ */
+@Transactional
+@TestExecutionListeners(listeners = CleanInsertTestExecutionListener.class,
+        mergeMode = MergeMode.MERGE_WITH_DEFAULTS)
+public abstract class AbstractPersistenceCapableJupiterTests extends AbstractJupiterTests {
+
+    /**
+     * 使用測試 {@link DataSource} 的 {@link JdbcTemplate}。
+     */
+    protected JdbcTemplate jdbcTemplate;
+
+    /**
+     * 由 Spring 注入測試使用的 {@link DataSource}。
+     */
+    @Autowired
+    public void setDataSource(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+}
@@ -47,4 +47,101 @@ public @interface Concurrent {
      * @return 同步等級，換句話說就是要開啟的 Thread 數目。預設是 {@value #DEFAULT_VALUE}。
      */
     int value() default DEFAULT_VALUE;
+
+    /**
+     * @return 每個 Thread 重複執行測試內容的次數，預設為 1。
+     */
+    int iterations() default 1;
+
+    /**
+     * @return 每個 Thread 重複執行測試內容的時間(ms)，大於 0 時忽略 {@link #iterations()}；時間由每個 Thread 暖機結束時開始計算。
+     *         預設為 0。
+     */
+    long durationMillis() default 0;
+
+    /**
+     * @return 每個 Thread 開始記錄前暖機(執行測試內容但不列入延遲時間與 throughput)的次數，預設為 0。
+     */
+    int warmupIterations() default 0;
+
+    /**
+     * @return 每個 Thread 開始記錄前暖機的時間(ms)，與 {@link #warmupIterations()} 同時指定時兩者都要滿足，預設為 0。
+     */
+    long warmupMillis() default 0;
+
+    /**
+     * @return 在這段時間(ms)內平均錯開每個 Thread 的開始時間，而不是同時開始，預設為 0。
+     */
+    long rampUpMillis() default 0;
+
+    /**
+     * @return 大於 0 時改為 open-loop，以固定速率(每秒呼叫次數)呼叫測試內容，{@link #value()} 個 Thread 只負責執行呼叫；呼叫的總次數為
+     *         <code>ratePerSecond * durationMillis / 1000</code>，沒有指定 {@link #durationMillis()} 時為
+     *         <code>value * iterations</code>。延遲時間由每次呼叫預定的開始時間計算，包含排隊等待的時間；不能與
+     *         {@link #rampUpMillis()} 同時使用。預設為 0，表示 closed-loop(每個 Thread 盡快重複執行)。
+     */
+    double ratePerSecond() default 0;
+
+    /**
+     * @return 任一 Thread 失敗時是否立即取消(interrupt)其他 Thread，預設為 <code>true</code>。
+     */
+    boolean failFast() default true;
+
+    /**
+     * @return 所有 Thread 必須在這段時間(ms)內結束，否則記錄所有執行中 Thread 的 stack trace 並讓測試失敗；預設為 0，表示沒有時限。
+     */
+    long timeoutMillis() default 0;
+
+    /**
+     * @return 依序以這些同步等級執行測試(例如 <code>{1, 2, 4, 8, 16}</code>)並比較每個等級的 throughput 與延遲時間，指定時忽略
+     *         {@link #value()}；每個等級必須大於 0 且不重複。建議搭配 {@link #durationMillis()} 讓每個等級執行相同的時間。預設為空，表示只以 {@link #value()} 執行。
+     */
+    int[] levels() default {};
+
+    /**
+     * @return 以 {@link #levels()} 執行時，最後一個同步等級的 throughput 至少要是第一個同步等級的幾倍，例如 <code>levels = {1, 16},
+     *         minSpeedup = 8</code> 表示 16 個 Thread 的 throughput 至少是 1 個 Thread 的 8 倍；預設為 0，表示不檢查。
+     */
+    double minSpeedup() default 0;
+
+    /**
+     * @return 是否收集工作 Thread 的 lock 競爭次數與時間、CPU 時間與 wall time、配置的記憶體，並在執行期間檢查 deadlock；
+     *         發生 deadlock 時測試會以 deadlock 的完整說明失敗。統計資料會加到
+     *         {@link com.cht.test.rule.ConcurrentResult ConcurrentResult} 與報告中。預設為 <code>false</code>。
+     */
+    boolean diagnostics() default false;
+
+    /**
+     * @return 執行測試的 Thread 種類，預設是 {@link ThreadKind#PLATFORM}。
+     */
+    ThreadKind threads() default ThreadKind.PLATFORM;
+
+    /**
+     * @return 以 virtual thread 執行時，測試內容 pin 住 carrier thread(例如在 <code>synchronized</code> 區塊或 native
+     *         method 中 blocking)時是否讓測試失敗；預設只會記錄 warning log。
+     */
+    boolean failOnPinning() default false;
+
+    /**
+     * @return 每次呼叫延遲時間第 99 百分位數的上限(ms)，超過時測試失敗；預設為 0，表示不檢查。延遲時間的分佈與 throughput 可以由
+     *         {@link com.cht.test.rule.ConcurrentResult ConcurrentResult} 取得。
+     */
+    double maxP99Millis() default 0;
+
+    /**
+     * 執行測試的 Thread 種類。
+     */
+    enum ThreadKind {
+
+        /**
+         * 由 {@link com.cht.test.rule.ConcurrentRule ConcurrentRule} 的
+         * {@link com.cht.test.rule.ExecutorStrategy ExecutorStrategy} 決定。
+         */
+        PLATFORM,
+
+        /**
+         * 每個工作一個 virtual thread，需要 Java 21 以上，適合模擬上萬個同時呼叫 blocking I/O 的呼叫端。
+         */
+        VIRTUAL
+    }
 }
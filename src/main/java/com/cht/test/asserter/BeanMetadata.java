@@ -0,0 +1,221 @@
+package com.cht.test.asserter;
+
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * {@link PropertyAsserter}、{@link JavaBeanAsserter} 及 {@link ObjectAsserter} 共用的 JavaBean 資訊快取。
+ * <p>
+ * 每個類別只會呼叫一次 {@link Introspector#getBeanInfo(Class)}，之後各個 property 的 getter、setter、型態以及測試用的參數都
+ * 直接由快取取得，不需要每次都重新建立 {@link PropertyDescriptor}。快取以 {@link ClassValue} 掛在類別上，類別被 unload
+ * 時會一起被回收。
+ *
+ * @author <a href="mailto:beta@cht.com.tw">黃培棠</a>
+ */
+final class BeanMetadata {
+
+    private static final ClassValue<BeanMetadata> CACHES = new ClassValue<BeanMetadata>() {
+        @Override
+        protected BeanMetadata computeValue(Class<?> type) {
+            return new BeanMetadata(type);
+        }
+    };
+
+    private final Class<?> beanClass;
+
+    private final Constructor<?> defaultConstructor;
+
+    private final Map<String, PropertyMetadata> properties;
+
+    private final List<PropertyMetadata> writableProperties;
+
+    private final IntrospectionException introspectionException;
+
+    private BeanMetadata(Class<?> beanClass) {
+        this.beanClass = beanClass;
+        this.defaultConstructor = ClassUtils.getConstructorIfAvailable(beanClass);
+        if (defaultConstructor != null) {
+            // 只在建立快取時設定一次，之後各個 Thread 共用時不需要再修改
+            ReflectionUtils.makeAccessible(defaultConstructor);
+        }
+
+        Map<String, PropertyMetadata> properties = new LinkedHashMap<String, PropertyMetadata>();
+        List<PropertyMetadata> writableProperties = new ArrayList<PropertyMetadata>();
+        IntrospectionException introspectionException = null;
+        try {
+            BeanInfo beanInfo = Introspector.getBeanInfo(beanClass);
+            for (PropertyDescriptor descriptor : beanInfo.getPropertyDescriptors()) {
+                PropertyMetadata property = new PropertyMetadata(beanClass, descriptor);
+                properties.put(property.getName(), property);
+                if (property.getWriteMethod() != null) {
+                    writableProperties.add(property);
+                }
+            }
+
+        } catch (IntrospectionException e) {
+            introspectionException = e;
+        }
+
+        this.properties = Collections.unmodifiableMap(properties);
+        this.writableProperties = Collections.unmodifiableList(writableProperties);
+        this.introspectionException = introspectionException;
+    }
+
+    static BeanMetadata of(Class<?> beanClass) {
+        return CACHES.get(beanClass);
+    }
+
+    Class<?> getBeanClass() {
+        return beanClass;
+    }
+
+    /**
+     * @return public 的 default constructor，類別本身不是 public 時也可以直接呼叫；沒有的話回傳 <code>null</code>。
+     */
+    Constructor<?> getDefaultConstructor() {
+        return defaultConstructor;
+    }
+
+    /**
+     * @return 是否有 public 的 default constructor，且至少有一個同時有 getter 與 setter 的 property。
+     */
+    boolean isJavaBean() {
+        if (defaultConstructor == null) {
+            return false;
+        }
+        for (PropertyMetadata property : writableProperties) {
+            if (property.getReadMethod() != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return 名為 <code>name</code> 的 property，沒有的話回傳 <code>null</code>。
+     * @throws IntrospectionException
+     *             表示該類別無法 introspect。
+     */
+    PropertyMetadata getProperty(String name) throws IntrospectionException {
+        checkIntrospected();
+        return properties.get(name);
+    }
+
+    /**
+     * @return 有 setter 的 property，順序與 {@link BeanInfo#getPropertyDescriptors()} 相同。
+     * @throws IntrospectionException
+     *             表示該類別無法 introspect。
+     */
+    List<PropertyMetadata> getWritableProperties() throws IntrospectionException {
+        checkIntrospected();
+        return writableProperties;
+    }
+
+    private void checkIntrospected() throws IntrospectionException {
+        if (introspectionException != null) {
+            IntrospectionException e = new IntrospectionException(
+                    introspectionException.getMessage());
+            e.initCause(introspectionException);
+            throw e;
+        }
+    }
+
+    /**
+     * 單一 property 的資訊。
+     */
+    static final class PropertyMetadata {
+
+        private final Class<?> beanClass;
+
+        private final String name;
+
+        private final Class<?> type;
+
+        private final Method readMethod;
+
+        private final Method writeMethod;
+
+        /**
+         * 預先準備好的測試參數，以及準備時使用的型態參數快照與 {@link ValuePipeline}。
+         */
+        private volatile DefaultArgument defaultArgument;
+
+        PropertyMetadata(Class<?> beanClass, PropertyDescriptor descriptor) {
+            this.beanClass = beanClass;
+            this.name = descriptor.getName();
+            this.type = descriptor.getPropertyType();
+            this.readMethod = descriptor.getReadMethod();
+            this.writeMethod = descriptor.getWriteMethod();
+        }
+
+        Class<?> getBeanClass() {
+            return beanClass;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        Class<?> getType() {
+            return type;
+        }
+
+        Method getReadMethod() {
+            return readMethod;
+        }
+
+        Method getWriteMethod() {
+            return writeMethod;
+        }
+
+        /**
+         * 取得以 <code>typeArguments</code> 及 <code>pipeline</code> 準備好的測試參數，沒有的話回傳 <code>null</code>。
+         */
+        DefaultArgument getDefaultArgument(TypeArguments typeArguments, ValuePipeline pipeline) {
+            DefaultArgument argument = defaultArgument;
+            if (argument != null && argument.typeArguments == typeArguments
+                    && argument.pipeline == pipeline) {
+                return argument;
+            }
+            return null;
+        }
+
+        void setDefaultArgument(DefaultArgument argument) {
+            this.defaultArgument = argument;
+        }
+    }
+
+    /**
+     * 預先準備好的測試參數。
+     */
+    static final class DefaultArgument {
+
+        private final TypeArguments typeArguments;
+
+        private final ValuePipeline pipeline;
+
+        private final Object value;
+
+        DefaultArgument(TypeArguments typeArguments, ValuePipeline pipeline, Object value) {
+            this.typeArguments = typeArguments;
+            this.pipeline = pipeline;
+            this.value = value;
+        }
+
+        Object getValue() {
+            return value;
+        }
+    }
+}
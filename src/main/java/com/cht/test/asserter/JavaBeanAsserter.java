@@ -6,11 +6,10 @@ import static org.junit.Assert.assertTrue;
 import java.io.Externalizable;
 import java.io.Serializable;
 import java.lang.reflect.Constructor;
+import java.util.List;
 
 import javassist.Modifier;
 
-import org.springframework.util.ClassUtils;
-
 /**
  * 輔助測試 JavaBean 是否符合<a href="http://goo.gl/j7oD7">JavaBean&trade;
  * Specification</a>。
@@ -45,6 +44,20 @@ public abstract class JavaBeanAsserter {
         PropertyAsserter.assertBasicGetterSetterBehavior(target);
     }
 
+    /**
+     * 以 {@link #assertJavaBean(Object)} 平行測試 package(包含子 package)中所有的 JavaBean，全部測完後才一併回報失敗。
+     * <p>
+     * 需要排除特定類別或調整平行度時，請直接使用 {@link JavaBeanSweeper}。
+     *
+     * @param basePackages
+     *            package 名稱，例如 <code>com.cht.model</code>。
+     * @return 測試過的類別名稱。
+     * @see JavaBeanSweeper
+     */
+    public static List<String> assertJavaBeans(String... basePackages) {
+        return JavaBeanSweeper.forPackages(basePackages).sweep();
+    }
+
     /**
      * 確認該 JavaBean 有 public 的 Default Constructor 。
      *
@@ -52,7 +65,7 @@ public abstract class JavaBeanAsserter {
      *            待測 JavaBean 物件。
      */
     public static void assertHasDefaultConstructor(Object target) {
-        Constructor<?> constructor = ClassUtils.getConstructorIfAvailable(target.getClass());
+        Constructor<?> constructor = BeanMetadata.of(target.getClass()).getDefaultConstructor();
 
         assertNotNull(String.format("JavaBean %s must have default constructor.", target.getClass()
                 .getName()), constructor);
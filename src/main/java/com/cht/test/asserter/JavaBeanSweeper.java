@@ -0,0 +1,378 @@
+package com.cht.test.asserter;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternResolver;
+import org.springframework.core.type.ClassMetadata;
+import org.springframework.core.type.classreading.CachingMetadataReaderFactory;
+import org.springframework.core.type.classreading.MetadataReader;
+import org.springframework.core.type.classreading.MetadataReaderFactory;
+import org.springframework.core.type.filter.TypeFilter;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+/**
+ * 一次測試整個 package 的 JavaBean，不需要再自己維護 DTO 的清單。
+ * <p>
+ * 會在 classpath 中找出 package 下所有可以直接建立的類別(非 interface、abstract、enum、annotation 及非 static 的內部類別)
+ * 中，有 public default constructor 且至少有一組 getter/setter 的類別，
+ * 以 {@link ForkJoinPool} 平行執行 {@link JavaBeanAsserter#assertHasDefaultConstructor(Object)}、
+ * {@link JavaBeanAsserter#assertIsSerializable(Object)}、{@link ObjectAsserter#assertBasicObjectMethods(Object)} 及
+ * {@link PropertyAsserter#assertBasicGetterSetterBehavior(Object)}。遇到失敗不會中斷，全部跑完後才把所有失敗彙整成一個
+ * {@link AssertionError} 丟出，每個失敗都可以由 {@link AssertionError#getSuppressed()} 取得。
+ *
+ * <pre>
+ * JavaBeanSweeper.forPackages(&quot;com.cht.model&quot;).exclude(LegacyOrder.class).sweep();
+ * </pre>
+ *
+ * 掃描類別時先讀取 class 檔的 metadata，被 {@link TypeFilter} 排除的類別不會被載入。執行 sweep 的 Thread 當下使用的
+ * {@link PropertyAsserter} 型態參數(包含 {@link TypeArgumentScope} 中的設定)也會套用在平行執行的測試中。
+ *
+ * @author <a href="mailto:beta@cht.com.tw">黃培棠</a>
+ */
+public final class JavaBeanSweeper {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JavaBeanSweeper.class);
+
+    private final List<String> locationPatterns;
+
+    private final List<Class<?>> classes;
+
+    private final List<TypeFilter> includeFilters = new ArrayList<TypeFilter>();
+
+    private final List<TypeFilter> excludeFilters = new ArrayList<TypeFilter>();
+
+    private final Set<String> excludedClassNames = new HashSet<String>();
+
+    private ClassLoader classLoader = ClassUtils.getDefaultClassLoader();
+
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    private JavaBeanSweeper(List<String> locationPatterns, List<Class<?>> classes) {
+        this.locationPatterns = locationPatterns;
+        this.classes = classes;
+    }
+
+    /**
+     * 測試 package(包含子 package)中的所有 JavaBean。
+     *
+     * @param basePackages
+     *            package 名稱，例如 <code>com.cht.model</code>。
+     * @return 尚未執行的 {@code JavaBeanSweeper}。
+     */
+    public static JavaBeanSweeper forPackages(String... basePackages) {
+        Assert.notEmpty(basePackages, "\"basePackages\" must be specified.");
+
+        List<String> patterns = new ArrayList<String>();
+        for (String basePackage : basePackages) {
+            patterns.add(ResourcePatternResolver.CLASSPATH_ALL_URL_PREFIX
+                    + ClassUtils.convertClassNameToResourcePath(basePackage) + "/**/*.class");
+        }
+        return new JavaBeanSweeper(patterns, Collections.<Class<?>> emptyList());
+    }
+
+    /**
+     * 測試符合 Spring resource pattern 的所有 class 檔，例如
+     * <code>file:target/classes/com/cht/model/**&#47;*.class</code>，用於只想掃描特定 classpath root 的情形。
+     *
+     * @param locationPatterns
+     *            class 檔的 resource pattern，類別必須可以由 {@link #classLoader(ClassLoader)} 載入。
+     * @return 尚未執行的 {@code JavaBeanSweeper}。
+     */
+    public static JavaBeanSweeper forLocationPatterns(String... locationPatterns) {
+        Assert.notEmpty(locationPatterns, "\"locationPatterns\" must be specified.");
+        return new JavaBeanSweeper(Arrays.asList(locationPatterns),
+                Collections.<Class<?>> emptyList());
+    }
+
+    /**
+     * 測試指定的類別，{@link TypeFilter} 對這些類別不會有作用。
+     *
+     * @param classes
+     *            待測的 JavaBean 類別。
+     * @return 尚未執行的 {@code JavaBeanSweeper}。
+     */
+    public static JavaBeanSweeper forClasses(Class<?>... classes) {
+        Assert.notEmpty(classes, "\"classes\" must be specified.");
+        return new JavaBeanSweeper(Collections.<String> emptyList(), Arrays.asList(classes));
+    }
+
+    /**
+     * 只測試符合 <code>filter</code> 的類別；設定多個時只要符合其中之一即可。
+     */
+    public JavaBeanSweeper include(TypeFilter filter) {
+        Assert.notNull(filter, "\"filter\" must be specified.");
+        includeFilters.add(filter);
+        return this;
+    }
+
+    /**
+     * 排除符合 <code>filter</code> 的類別。
+     */
+    public JavaBeanSweeper exclude(TypeFilter filter) {
+        Assert.notNull(filter, "\"filter\" must be specified.");
+        excludeFilters.add(filter);
+        return this;
+    }
+
+    /**
+     * 排除指定的類別。
+     */
+    public JavaBeanSweeper exclude(Class<?>... classes) {
+        for (Class<?> klass : classes) {
+            excludedClassNames.add(klass.getName());
+        }
+        return this;
+    }
+
+    /**
+     * 設定載入類別使用的 {@link ClassLoader}，預設為 {@link ClassUtils#getDefaultClassLoader()}。
+     */
+    public JavaBeanSweeper classLoader(ClassLoader classLoader) {
+        Assert.notNull(classLoader, "\"classLoader\" must be specified.");
+        this.classLoader = classLoader;
+        return this;
+    }
+
+    /**
+     * 設定平行執行的 Thread 數量，預設為 CPU 數量。
+     */
+    public JavaBeanSweeper parallelism(int parallelism) {
+        Assert.isTrue(parallelism > 0, "\"parallelism\" must be positive.");
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * 執行所有測試。
+     *
+     * @return 測試過的類別名稱，依名稱排序。
+     * @throws AssertionError
+     *             表示有類別沒有通過測試，訊息中會列出所有失敗。
+     * @throws IllegalStateException
+     *             表示掃描 classpath 時發生錯誤。
+     */
+    public List<String> sweep() {
+        List<String> classNames = new ArrayList<String>(scan());
+        Collections.sort(classNames);
+
+        TypeArguments typeArguments = PropertyAsserter.currentTypeArguments();
+        List<BeanTask> tasks = new ArrayList<BeanTask>(classNames.size());
+        for (String className : classNames) {
+            tasks.add(new BeanTask(className, classLoader, typeArguments));
+        }
+
+        List<AssertionError> failures = new ArrayList<AssertionError>();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            for (BeanTask task : tasks) {
+                pool.execute(task);
+            }
+            for (BeanTask task : tasks) {
+                failures.addAll(task.join());
+            }
+        } finally {
+            pool.shutdown();
+        }
+        if (!failures.isEmpty()) {
+            throw aggregate(failures, classNames.size());
+        }
+
+        LOGGER.debug("{} JavaBeans swept.", classNames.size());
+        return classNames;
+    }
+
+    private Set<String> scan() {
+        Set<String> classNames = new LinkedHashSet<String>();
+        for (Class<?> klass : classes) {
+            if (!excludedClassNames.contains(klass.getName())) {
+                classNames.add(klass.getName());
+            }
+        }
+        if (locationPatterns.isEmpty()) {
+            return classNames;
+        }
+
+        ResourcePatternResolver resolver = new PathMatchingResourcePatternResolver(classLoader);
+        MetadataReaderFactory readerFactory = new CachingMetadataReaderFactory(resolver);
+        try {
+            for (String locationPattern : locationPatterns) {
+                for (Resource resource : resolver.getResources(locationPattern)) {
+                    if (resource.isReadable()) {
+                        MetadataReader reader = readerFactory.getMetadataReader(resource);
+                        if (isCandidate(reader, readerFactory)) {
+                            classNames.add(reader.getClassMetadata().getClassName());
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to scan JavaBeans in " + locationPatterns, e);
+        }
+        return classNames;
+    }
+
+    private boolean isCandidate(MetadataReader reader, MetadataReaderFactory readerFactory)
+            throws IOException {
+        ClassMetadata metadata = reader.getClassMetadata();
+        if (!metadata.isConcrete() || !metadata.isIndependent() || metadata.isAnnotation()
+                || Enum.class.getName().equals(metadata.getSuperClassName())
+                || excludedClassNames.contains(metadata.getClassName())) {
+            return false;
+        }
+
+        for (TypeFilter filter : excludeFilters) {
+            if (filter.match(reader, readerFactory)) {
+                return false;
+            }
+        }
+        boolean included = includeFilters.isEmpty();
+        for (TypeFilter filter : includeFilters) {
+            included |= filter.match(reader, readerFactory);
+        }
+        return included && isJavaBean(metadata.getClassName());
+    }
+
+    /**
+     * 掃描到的類別不一定是 JavaBean，例如同一個 package 裡的工具類別或 builder，只測試看起來像 JavaBean 的類別。
+     */
+    private boolean isJavaBean(String className) {
+        try {
+            return BeanMetadata.of(ClassUtils.forName(className, classLoader)).isJavaBean();
+
+        } catch (ClassNotFoundException e) {
+            LOGGER.debug("Skip {}: {}", className, e.toString());
+
+        } catch (LinkageError e) {
+            LOGGER.debug("Skip {}: {}", className, e.toString());
+        }
+        return false;
+    }
+
+    private static AssertionError aggregate(List<AssertionError> failures, int total) {
+        StringBuilder message = new StringBuilder();
+        message.append(failures.size()).append(" failure(s) in ").append(total)
+                .append(" JavaBean(s):");
+        for (AssertionError failure : failures) {
+            message.append("\n  ").append(failure.getMessage());
+        }
+
+        AssertionError error = new AssertionError(message.toString());
+        for (AssertionError failure : failures) {
+            error.addSuppressed(failure);
+        }
+        return error;
+    }
+
+    /**
+     * 測試單一類別，每一項測試的失敗都會分開記錄。
+     */
+    private static final class BeanTask extends RecursiveTask<List<AssertionError>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String className;
+
+        private final transient ClassLoader classLoader;
+
+        private final transient TypeArguments typeArguments;
+
+        private final List<AssertionError> failures = new ArrayList<AssertionError>();
+
+        BeanTask(String className, ClassLoader classLoader, TypeArguments typeArguments) {
+            this.className = className;
+            this.classLoader = classLoader;
+            this.typeArguments = typeArguments;
+        }
+
+        @Override
+        protected List<AssertionError> compute() {
+            final Object target = instantiate();
+            if (target == null) {
+                return failures;
+            }
+
+            try (TypeArgumentScope scope = TypeArgumentScope.open(typeArguments)) {
+                check("default constructor", new Runnable() {
+                    @Override
+                    public void run() {
+                        JavaBeanAsserter.assertHasDefaultConstructor(target);
+                    }
+                });
+                check("serializable", new Runnable() {
+                    @Override
+                    public void run() {
+                        JavaBeanAsserter.assertIsSerializable(target);
+                    }
+                });
+                check("object methods", new Runnable() {
+                    @Override
+                    public void run() {
+                        ObjectAsserter.assertBasicObjectMethods(target);
+                    }
+                });
+                check("getters/setters", new Runnable() {
+                    @Override
+                    public void run() {
+                        PropertyAsserter.assertBasicGetterSetterBehavior(target);
+                    }
+                });
+            }
+            return failures;
+        }
+
+        private Object instantiate() {
+            try {
+                Class<?> type = ClassUtils.forName(className, classLoader);
+                Constructor<?> constructor = BeanMetadata.of(type).getDefaultConstructor();
+                if (constructor == null) {
+                    fail("default constructor", String.format(
+                            "JavaBean %s must have default constructor.", className), null);
+                    return null;
+                }
+                return constructor.newInstance();
+
+            } catch (InvocationTargetException e) {
+                fail("instantiation", e.getTargetException().toString(), e.getTargetException());
+
+            } catch (Exception e) {
+                fail("instantiation", e.toString(), e);
+
+            } catch (LinkageError e) {
+                fail("instantiation", e.toString(), e);
+            }
+            return null;
+        }
+
+        private void check(String name, Runnable assertion) {
+            try {
+                assertion.run();
+
+            } catch (AssertionError e) {
+                fail(name, e.getMessage(), e);
+
+            } catch (RuntimeException e) {
+                fail(name, e.toString(), e);
+            }
+        }
+
+        private void fail(String name, String message, Throwable cause) {
+            failures.add(new AssertionError(className + " [" + name + "]: " + message, cause));
+        }
+    }
+}
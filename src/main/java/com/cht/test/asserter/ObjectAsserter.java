@@ -13,7 +13,6 @@ import javassist.Modifier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeanUtils;
-import org.springframework.util.ClassUtils;
 import org.springframework.util.ReflectionUtils;
 
 /**
@@ -193,8 +192,10 @@ public abstract class ObjectAsserter {
         }
     }
 
+    @SuppressWarnings("unchecked")
     static <T> T createNewInstance(Class<T> clazz) {
-        Constructor<T> defaultConstructor = ClassUtils.getConstructorIfAvailable(clazz);
+        Constructor<T> defaultConstructor = (Constructor<T>) BeanMetadata.of(clazz)
+                .getDefaultConstructor();
 
         if (defaultConstructor != null) {
             try {
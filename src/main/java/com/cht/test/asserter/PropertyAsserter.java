@@ -3,14 +3,8 @@ package com.cht.test.asserter;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
-import static org.mockito.Mockito.mock;
 
-import java.beans.BeanInfo;
 import java.beans.IntrospectionException;
-import java.beans.Introspector;
-import java.beans.PropertyDescriptor;
-import java.lang.reflect.Array;
-import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.math.BigDecimal;
@@ -32,9 +26,16 @@ import java.util.SortedMap;
 import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import com.cht.test.asserter.BeanMetadata.DefaultArgument;
+import com.cht.test.asserter.BeanMetadata.PropertyMetadata;
 
 /**
  * 讓 Getter 跟 Setter 的測試簡單點。
@@ -52,42 +53,54 @@ public final class PropertyAsserter {
 
     private static final Logger log = LoggerFactory.getLogger(PropertyAsserter.class);
 
-    private static final Map<Class, Object> TYPE_ARGUMENTS = new HashMap<Class, Object>();
+    /**
+     * 全域的型態參數快照，只在 {@link TypeArgumentScope} 沒有開啟時使用。
+     */
+    private static final AtomicReference<TypeArguments> TYPE_ARGUMENTS = new AtomicReference<TypeArguments>();
+
+    private static final TypeArguments DEFAULT_TYPE_ARGUMENTS;
 
     static {
-        TYPE_ARGUMENTS.put(Collection.class, new ArrayList());
-        TYPE_ARGUMENTS.put(List.class, new ArrayList());
-        TYPE_ARGUMENTS.put(Set.class, new HashSet());
-        TYPE_ARGUMENTS.put(SortedSet.class, new TreeSet());
-        TYPE_ARGUMENTS.put(Map.class, new HashMap());
-        TYPE_ARGUMENTS.put(SortedMap.class, new TreeMap());
-        TYPE_ARGUMENTS.put(Boolean.class, true);
-        TYPE_ARGUMENTS.put(Boolean.TYPE, true);
-        TYPE_ARGUMENTS.put(Character.class, 'Z');
-        TYPE_ARGUMENTS.put(Character.TYPE, 'Z');
-        TYPE_ARGUMENTS.put(Byte.class, (byte) 10);
-        TYPE_ARGUMENTS.put(Byte.TYPE, (byte) 10);
-        TYPE_ARGUMENTS.put(Short.class, (short) 10);
-        TYPE_ARGUMENTS.put(Short.TYPE, (short) 10);
-        TYPE_ARGUMENTS.put(Integer.class, 10);
-        TYPE_ARGUMENTS.put(Integer.TYPE, 10);
-        TYPE_ARGUMENTS.put(Long.class, 10L);
-        TYPE_ARGUMENTS.put(Long.TYPE, 10L);
-        TYPE_ARGUMENTS.put(Float.class, 3.14159F);
-        TYPE_ARGUMENTS.put(Float.TYPE, 3.14159F);
-        TYPE_ARGUMENTS.put(Double.class, 3.14159);
-        TYPE_ARGUMENTS.put(Double.TYPE, 3.14159);
-        TYPE_ARGUMENTS.put(java.sql.Date.class, new java.sql.Date(new Date().getTime()));
-        TYPE_ARGUMENTS.put(Timestamp.class, new Timestamp(new Date().getTime()));
-        TYPE_ARGUMENTS.put(Calendar.class, Calendar.getInstance());
-        TYPE_ARGUMENTS.put(BigDecimal.class, new BigDecimal("3.14159"));
-        TYPE_ARGUMENTS.put(BigInteger.class, BigInteger.TEN);
+        Map<Class, Object> arguments = new HashMap<Class, Object>();
+        arguments.put(Collection.class, new ArrayList());
+        arguments.put(List.class, new ArrayList());
+        arguments.put(Set.class, new HashSet());
+        arguments.put(SortedSet.class, new TreeSet());
+        arguments.put(Map.class, new HashMap());
+        arguments.put(SortedMap.class, new TreeMap());
+        arguments.put(Boolean.class, true);
+        arguments.put(Boolean.TYPE, true);
+        arguments.put(Character.class, 'Z');
+        arguments.put(Character.TYPE, 'Z');
+        arguments.put(Byte.class, (byte) 10);
+        arguments.put(Byte.TYPE, (byte) 10);
+        arguments.put(Short.class, (short) 10);
+        arguments.put(Short.TYPE, (short) 10);
+        arguments.put(Integer.class, 10);
+        arguments.put(Integer.TYPE, 10);
+        arguments.put(Long.class, 10L);
+        arguments.put(Long.TYPE, 10L);
+        arguments.put(Float.class, 3.14159F);
+        arguments.put(Float.TYPE, 3.14159F);
+        arguments.put(Double.class, 3.14159);
+        arguments.put(Double.TYPE, 3.14159);
+        arguments.put(java.sql.Date.class, new java.sql.Date(new Date().getTime()));
+        arguments.put(Timestamp.class, new Timestamp(new Date().getTime()));
+        arguments.put(Calendar.class, Calendar.getInstance());
+        arguments.put(BigDecimal.class, new BigDecimal("3.14159"));
+        arguments.put(BigInteger.class, BigInteger.TEN);
+
+        DEFAULT_TYPE_ARGUMENTS = new TypeArguments(arguments);
+        TYPE_ARGUMENTS.set(DEFAULT_TYPE_ARGUMENTS);
     }
 
-    private static final Map<Class, Object> DEFAULT_TYPE_ARGUMENTS = Collections
-            .unmodifiableMap(new HashMap<Class, Object>(TYPE_ARGUMENTS));
+    private static final AtomicReference<ValuePipeline> VALUE_PIPELINE = new AtomicReference<ValuePipeline>(
+            ValuePipeline.defaults());
 
-    private static final int TEST_ARRAY_SIZE = 10;
+    /**
+     * 以 Mockito mock 當作測試參數的 property，依型態分類。
+     */
+    private static final ConcurrentMap<Class<?>, Set<String>> MOCKED_PROPERTIES = new ConcurrentHashMap<Class<?>, Set<String>>();
 
     private PropertyAsserter() {
     }
@@ -96,6 +109,8 @@ public final class PropertyAsserter {
      * Registers the specified type that will default to the speicifed
      * <code>defaultArgument</code> as the argument to setter methods. Note this
      * method will override any existing default arguments for a type.
+     * <p>
+     * 這裡的設定對所有 Thread 都有效，只想在單一測試中使用的型態請改用 {@link #openTypeArgumentScope()}。
      *
      * @param type
      *            the type to register
@@ -103,7 +118,10 @@ public final class PropertyAsserter {
      *            the default argument to use in setters
      */
     public static void registerTypeAndDefaultArgument(Class type, Object defaultArgument) {
-        TYPE_ARGUMENTS.put(type, defaultArgument);
+        TypeArguments current;
+        do {
+            current = TYPE_ARGUMENTS.get();
+        } while (!TYPE_ARGUMENTS.compareAndSet(current, current.with(type, defaultArgument)));
     }
 
     /**
@@ -114,24 +132,85 @@ public final class PropertyAsserter {
      *            the type to degister
      */
     public static void deregisterType(Class type) {
-        TYPE_ARGUMENTS.remove(type);
+        TypeArguments current;
+        do {
+            current = TYPE_ARGUMENTS.get();
+        } while (!TYPE_ARGUMENTS.compareAndSet(current, current.without(type)));
     }
 
-    /** Resets the types and default arguments. */
+    /** Resets the types, default arguments and value generators. */
     public static void resetToDefaultTypes() {
-        TYPE_ARGUMENTS.clear();
-        TYPE_ARGUMENTS.putAll(DEFAULT_TYPE_ARGUMENTS);
+        TYPE_ARGUMENTS.set(DEFAULT_TYPE_ARGUMENTS);
+        VALUE_PIPELINE.set(ValuePipeline.defaults());
+    }
+
+    /**
+     * 註冊產生測試參數的 {@link ValueGenerator}，沒有註冊型態參數的型態會優先交給最後註冊的 Generator 處理，都不接受時才會使用內建的
+     * Generator。
+     *
+     * @param generator
+     *            產生測試參數的 Generator。
+     * @see ValuePipeline
+     */
+    public static void registerValueGenerator(ValueGenerator generator) {
+        Assert.notNull(generator, "\"generator\" must be specified.");
+
+        ValuePipeline current;
+        do {
+            current = VALUE_PIPELINE.get();
+        } while (!VALUE_PIPELINE.compareAndSet(current, current.with(generator)));
+    }
+
+    /**
+     * 取得以 Mockito mock 當作測試參數的 property，這些型態建議以
+     * {@link #registerTypeAndDefaultArgument(Class, Object)} 註冊較輕量的參數。
+     *
+     * @return 以型態分類的 property，格式為 <code>類別名稱.property 名稱</code>。
+     */
+    public static Map<Class<?>, Set<String>> getMockedProperties() {
+        Map<Class<?>, Set<String>> mocked = new LinkedHashMap<Class<?>, Set<String>>();
+        for (Map.Entry<Class<?>, Set<String>> entry : MOCKED_PROPERTIES.entrySet()) {
+            mocked.put(entry.getKey(),
+                    Collections.unmodifiableSet(new TreeSet<String>(entry.getValue())));
+        }
+        return Collections.unmodifiableMap(mocked);
+    }
+
+    /** 清除 {@link #getMockedProperties()} 的紀錄。 */
+    public static void clearMockedProperties() {
+        MOCKED_PROPERTIES.clear();
+    }
+
+    /**
+     * 以目前的設定為起點，開啟只在目前 Thread 有效的型態參數設定，關閉後回到原本的設定。
+     *
+     * @return 開啟的 scope，請以 try-with-resources 關閉。
+     * @see TypeArgumentScope
+     */
+    public static TypeArgumentScope openTypeArgumentScope() {
+        return TypeArgumentScope.open(currentTypeArguments());
+    }
+
+    /**
+     * @return 目前 Thread 使用的型態參數快照，有開啟 {@link TypeArgumentScope} 時以 scope 中的設定為準。
+     */
+    static TypeArguments currentTypeArguments() {
+        TypeArguments scoped = TypeArgumentScope.current();
+        return scoped == null ? TYPE_ARGUMENTS.get() : scoped;
     }
 
     /**
      * Returns the default argument for the specified type.
+     * <p>
+     * 沒有註冊完全相同的型態時，會使用已註冊的父型態中最接近的一個，只要其參數可以指定給 <code>type</code>，例如
+     * <code>ArrayList</code> 會使用 <code>List</code> 的參數。
      *
      * @param type
      *            the type
      * @return the type's default argument
      */
     public static Object defaultArgumentForType(Class type) {
-        return TYPE_ARGUMENTS.get(type);
+        return currentTypeArguments().get(type);
     }
 
     /**
@@ -145,7 +224,7 @@ public final class PropertyAsserter {
      * <p>
      * Uses a default argument for basic collection types, primitive types,
      * Dates, java.sql.Dates, and Timestamps. See
-     * {@link PropertyAsserter#TYPE_ARGUMENTS}.
+     * {@link PropertyAsserter#defaultArgumentForType(Class)}.
      *
      * @param target
      *            the object on which to invoke the getter and setter
@@ -172,28 +251,33 @@ public final class PropertyAsserter {
     public static void assertBasicGetterSetterBehavior(Object target, String property,
             Object argument) {
         try {
-            PropertyDescriptor descriptor = new PropertyDescriptor(property, target.getClass());
+            PropertyMetadata metadata = BeanMetadata.of(target.getClass()).getProperty(property);
+            if (metadata == null || metadata.getType() == null
+                    || metadata.getReadMethod() == null || metadata.getWriteMethod() == null) {
+                throw new IntrospectionException("Method not found: " + property);
+            }
+            assertBasicGetterSetterBehavior(target, metadata, argument);
+
+        } catch (IntrospectionException e) {
+            String msg = "Error creating PropertyDescriptor for property [" + property
+                    + "]. Do you have a getter and a setter?";
+            log.error(msg, e);
+            fail(msg);
+        }
+    }
+
+    private static void assertBasicGetterSetterBehavior(Object target, PropertyMetadata metadata,
+            Object argument) {
+        String property = metadata.getName();
+        try {
             Object arg = argument;
-            Class<?> type = descriptor.getPropertyType();
+            Class<?> type = metadata.getType();
             if (arg == null) {
-                if (type.isArray()) {
-                    arg = Array.newInstance(type.getComponentType(), new int[] { TEST_ARRAY_SIZE });
-                } else if (type.isEnum()) {
-                    arg = type.getEnumConstants()[0];
-                } else if (TYPE_ARGUMENTS.containsKey(type)) {
-                    arg = TYPE_ARGUMENTS.get(type);
-                } else {
-                    try {
-                        arg = invokeDefaultConstructorEvenIfPrivate(type);
-
-                    } catch (RuntimeException e) {
-                        arg = mock(type);
-                    }
-                }
+                arg = defaultArgumentForProperty(metadata);
             }
 
-            Method writeMethod = descriptor.getWriteMethod();
-            Method readMethod = descriptor.getReadMethod();
+            Method writeMethod = metadata.getWriteMethod();
+            Method readMethod = metadata.getReadMethod();
 
             writeMethod.invoke(target, arg);
             Object propertyValue = readMethod.invoke(target);
@@ -202,11 +286,6 @@ public final class PropertyAsserter {
             } else {
                 assertSame(property + " getter/setter failed test", arg, propertyValue);
             }
-        } catch (IntrospectionException e) {
-            String msg = "Error creating PropertyDescriptor for property [" + property
-                    + "]. Do you have a getter and a setter?";
-            log.error(msg, e);
-            fail(msg);
         } catch (IllegalAccessException e) {
             String msg = "Error accessing property. Are the getter and setter both accessible?";
             log.error(msg, e);
@@ -218,16 +297,37 @@ public final class PropertyAsserter {
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private static Object invokeDefaultConstructorEvenIfPrivate(Class type) {
-        try {
-            Constructor ctor = type.getDeclaredConstructor();
-            ctor.setAccessible(true);
-            return ctor.newInstance();
+    /**
+     * 取得 property 預設的測試參數，同一個 property 只會準備一次，直到使用的型態參數或 {@link ValuePipeline} 不同為止；
+     * mock 則每次重新建立。
+     */
+    private static Object defaultArgumentForProperty(PropertyMetadata metadata) {
+        TypeArguments typeArguments = currentTypeArguments();
+        ValuePipeline pipeline = VALUE_PIPELINE.get();
+        DefaultArgument argument = metadata.getDefaultArgument(typeArguments, pipeline);
+        if (argument == null) {
+            ValuePipeline.Generated generated = pipeline.produce(metadata.getType());
+            if (generated.isMock()) {
+                // mock 不快取，每次測試都使用新的 mock
+                recordMockedProperty(metadata);
+                return generated.getValue();
+            }
+            argument = new DefaultArgument(typeArguments, pipeline, generated.getValue());
+            metadata.setDefaultArgument(argument);
+        }
+        return argument.getValue();
+    }
 
-        } catch (Exception ex) {
-            throw new RuntimeException("Could not invoke default constructor on type " + type, ex);
+    private static void recordMockedProperty(PropertyMetadata metadata) {
+        Set<String> properties = MOCKED_PROPERTIES.get(metadata.getType());
+        if (properties == null) {
+            properties = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+            Set<String> existing = MOCKED_PROPERTIES.putIfAbsent(metadata.getType(), properties);
+            if (existing != null) {
+                properties = existing;
+            }
         }
+        properties.add(metadata.getBeanClass().getName() + "." + metadata.getName());
     }
 
     /**
@@ -298,14 +398,10 @@ public final class PropertyAsserter {
             String... propertyNames) {
         List<String> blacklist = Arrays.asList(propertyNames);
         try {
-            BeanInfo beanInfo = Introspector.getBeanInfo(target.getClass());
-            PropertyDescriptor[] descriptors = beanInfo.getPropertyDescriptors();
-            for (PropertyDescriptor descriptor : descriptors) {
-                if (descriptor.getWriteMethod() == null) {
-                    continue;
-                }
-                if (!blacklist.contains(descriptor.getDisplayName())) {
-                    assertBasicGetterSetterBehavior(target, descriptor.getDisplayName());
+            for (PropertyMetadata metadata : BeanMetadata.of(target.getClass())
+                    .getWritableProperties()) {
+                if (!blacklist.contains(metadata.getName())) {
+                    assertBasicGetterSetterBehavior(target, metadata.getName());
                 }
             }
         } catch (IntrospectionException e) {
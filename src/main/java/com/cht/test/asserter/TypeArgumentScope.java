@@ -0,0 +1,115 @@
+package com.cht.test.asserter;
+
+/**
+ * 只在目前 Thread 有效的型態參數設定，由 {@link PropertyAsserter#openTypeArgumentScope()} 取得。
+ * <p>
+ * 在 scope 中註冊或移除的型態不會影響其他 Thread 或其他測試，{@link #close()} 之後就會回到開啟前的設定，請搭配
+ * try-with-resources 使用:
+ *
+ * <pre>
+ * try (TypeArgumentScope scope = PropertyAsserter.openTypeArgumentScope()) {
+ *     scope.registerTypeAndDefaultArgument(Money.class, Money.of(100));
+ *     PropertyAsserter.assertBasicGetterSetterBehavior(order);
+ * }
+ * </pre>
+ *
+ * scope 可以巢狀開啟，但必須以相反的順序在同一個 Thread 中關閉。
+ *
+ * @author <a href="mailto:beta@cht.com.tw">黃培棠</a>
+ */
+@SuppressWarnings("rawtypes")
+public final class TypeArgumentScope implements AutoCloseable {
+
+    private static final ThreadLocal<TypeArgumentScope> CURRENT = new ThreadLocal<TypeArgumentScope>();
+
+    private final TypeArgumentScope previous;
+
+    private final Thread owner;
+
+    private volatile TypeArguments arguments;
+
+    private boolean closed;
+
+    private TypeArgumentScope(TypeArgumentScope previous, TypeArguments arguments) {
+        this.previous = previous;
+        this.owner = Thread.currentThread();
+        this.arguments = arguments;
+    }
+
+    /**
+     * 以 <code>arguments</code> 為起點，在目前 Thread 開啟新的 scope。
+     */
+    static TypeArgumentScope open(TypeArguments arguments) {
+        TypeArgumentScope scope = new TypeArgumentScope(CURRENT.get(), arguments);
+        CURRENT.set(scope);
+        return scope;
+    }
+
+    /**
+     * @return 目前 Thread 最內層的 scope 的設定，沒有開啟 scope 時回傳 <code>null</code>。
+     */
+    static TypeArguments current() {
+        TypeArgumentScope scope = CURRENT.get();
+        return scope == null ? null : scope.arguments;
+    }
+
+    /**
+     * 在這個 scope 中註冊型態的預設測試參數，會覆蓋原有的設定。
+     *
+     * @param type
+     *            型態。
+     * @param defaultArgument
+     *            呼叫 setter 時使用的參數。
+     * @return 自己，方便連續註冊。
+     */
+    public TypeArgumentScope registerTypeAndDefaultArgument(Class type, Object defaultArgument) {
+        checkOpen();
+        arguments = arguments.with(type, defaultArgument);
+        return this;
+    }
+
+    /**
+     * 在這個 scope 中移除型態的預設測試參數。
+     *
+     * @param type
+     *            型態。
+     * @return 自己，方便連續設定。
+     */
+    public TypeArgumentScope deregisterType(Class type) {
+        checkOpen();
+        arguments = arguments.without(type);
+        return this;
+    }
+
+    /**
+     * 關閉 scope，回到開啟前的設定。重複關閉不會有任何作用。
+     *
+     * @throws IllegalStateException
+     *             表示不是在開啟的 Thread 關閉，或是還有內層的 scope 沒有關閉。
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        if (Thread.currentThread() != owner) {
+            throw new IllegalStateException("TypeArgumentScope must be closed by " + owner + ".");
+        }
+        if (CURRENT.get() != this) {
+            throw new IllegalStateException("Nested TypeArgumentScope must be closed first.");
+        }
+
+        closed = true;
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("TypeArgumentScope has been closed.");
+        }
+    }
+}
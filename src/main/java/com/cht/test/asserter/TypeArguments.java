@@ -0,0 +1,122 @@
+package com.cht.test.asserter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * {@link PropertyAsserter} 使用的型態與預設測試參數對照表。
+ * <p>
+ * 物件本身不可變，每次註冊或移除型態都會產生新的快照，所以可以安心地在多個 Thread 間共用，也可以直接交給其他 Thread
+ * 使用。查詢時除了完全相同的型態外，也會找已註冊的父型態，只要其參數是查詢型態的實體即可，例如 <code>ArrayList</code>
+ * 型態的 property 會使用 <code>List</code> 註冊的參數；查詢結果會快取在快照中。
+ *
+ * @author <a href="mailto:beta@cht.com.tw">黃培棠</a>
+ */
+@SuppressWarnings("rawtypes")
+final class TypeArguments {
+
+    /**
+     * 查詢不到參數時放在快取中的記號。
+     */
+    private static final Object NOT_FOUND = new Object();
+
+    private final Map<Class, Object> arguments;
+
+    private final ConcurrentMap<Class, Object> resolved = new ConcurrentHashMap<Class, Object>();
+
+    TypeArguments(Map<Class, Object> arguments) {
+        this.arguments = Collections.unmodifiableMap(new HashMap<Class, Object>(arguments));
+    }
+
+    /**
+     * @return 加入或覆蓋 <code>type</code> 後的新快照。
+     */
+    TypeArguments with(Class type, Object argument) {
+        Map<Class, Object> arguments = new HashMap<Class, Object>(this.arguments);
+        arguments.put(type, argument);
+        return new TypeArguments(arguments);
+    }
+
+    /**
+     * @return 移除 <code>type</code> 後的新快照，沒有註冊該型態時回傳自己。
+     */
+    TypeArguments without(Class type) {
+        if (!arguments.containsKey(type)) {
+            return this;
+        }
+        Map<Class, Object> arguments = new HashMap<Class, Object>(this.arguments);
+        arguments.remove(type);
+        return new TypeArguments(arguments);
+    }
+
+    /**
+     * @return 是否可以為 <code>type</code> 找到參數。
+     */
+    boolean contains(Class type) {
+        return resolve(type) != NOT_FOUND;
+    }
+
+    /**
+     * @return <code>type</code> 的參數，找不到時回傳 <code>null</code>。
+     */
+    Object get(Class type) {
+        Object argument = resolve(type);
+        return argument == NOT_FOUND ? null : argument;
+    }
+
+    private Object resolve(Class type) {
+        Object argument = resolved.get(type);
+        if (argument == null) {
+            argument = lookup(type);
+            resolved.putIfAbsent(type, argument);
+        }
+        return argument;
+    }
+
+    /**
+     * 先找完全相同的型態，再由可以指定給 <code>type</code> 的參數中，挑選註冊型態最接近 <code>type</code> 的一個。
+     */
+    @SuppressWarnings("unchecked")
+    private Object lookup(Class type) {
+        if (arguments.containsKey(type)) {
+            Object argument = arguments.get(type);
+            return argument == null ? NOT_FOUND : argument;
+        }
+        if (type.isPrimitive()) {
+            return NOT_FOUND;
+        }
+
+        List<Class> candidates = new ArrayList<Class>();
+        for (Map.Entry<Class, Object> entry : arguments.entrySet()) {
+            Class registered = entry.getKey();
+            if (registered.isAssignableFrom(type) && type.isInstance(entry.getValue())) {
+                candidates.add(registered);
+            }
+        }
+
+        Class selected = null;
+        for (Class candidate : candidates) {
+            if (isMostSpecific(candidate, candidates)
+                    && (selected == null || candidate.getName().compareTo(selected.getName()) < 0)) {
+                // 有多個互不相關的型態(例如同時實作的兩個介面)時以名稱決定，讓結果不受 HashMap 順序影響
+                selected = candidate;
+            }
+        }
+        return selected == null ? NOT_FOUND : arguments.get(selected);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static boolean isMostSpecific(Class candidate, List<Class> candidates) {
+        for (Class other : candidates) {
+            if (other != candidate && candidate.isAssignableFrom(other)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
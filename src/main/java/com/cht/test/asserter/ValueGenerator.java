@@ -0,0 +1,29 @@
+package com.cht.test.asserter;
+
+/**
+ * 產生特定型態測試用數值的 Generator，由 {@link PropertyAsserter#registerValueGenerator(ValueGenerator)} 註冊。
+ * <p>
+ * 同一個型態只會呼叫一次 {@link #accepts(Class)}，結果會快取在 {@link ValuePipeline} 中，所以判斷結果不應該隨時間改變。
+ *
+ * @author <a href="mailto:beta@cht.com.tw">黃培棠</a>
+ */
+public interface ValueGenerator {
+
+    /**
+     * @param type
+     *            需要數值的型態。
+     * @return 是否可以產生 <code>type</code> 的數值。
+     */
+    boolean accepts(Class<?> type);
+
+    /**
+     * 產生 <code>type</code> 的數值，丟出例外時會改由下一個接受該型態的 Generator 產生。
+     *
+     * @param type
+     *            需要數值的型態。
+     * @param pipeline
+     *            用來產生其他型態的數值，例如 constructor 的參數。
+     * @return 可以指定給 <code>type</code> 的數值。
+     */
+    Object generate(Class<?> type, ValuePipeline pipeline);
+}
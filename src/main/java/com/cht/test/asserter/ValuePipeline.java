@@ -0,0 +1,384 @@
+package com.cht.test.asserter;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.LinkedBlockingDeque;
+
+import org.mockito.Mockito;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 依序詢問各個 {@link ValueGenerator}，為 {@link PropertyAsserter} 產生沒有註冊型態參數的測試數值。
+ * <p>
+ * 內建的 Generator 依序處理 primitive、陣列、enum、record、集合介面、有 default constructor 的類別以及介面，最後才會
+ * 以 Mockito 建立 mock。每個型態會由哪些 Generator 處理只判斷一次，之後直接使用快取的結果，不會再靠丟出例外來決定；
+ * mock 則每次都會重新建立。物件本身不可變，註冊新的 Generator 時會產生新的 {@code ValuePipeline}。
+ *
+ * @author <a href="mailto:beta@cht.com.tw">黃培棠</a>
+ */
+public final class ValuePipeline {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ValuePipeline.class);
+
+    private static final int TEST_ARRAY_SIZE = 10;
+
+    private static final ValueGenerator[] NO_GENERATORS = new ValueGenerator[0];
+
+    /**
+     * 目前 Thread 正在產生數值的型態，避免 record 互相參照時無窮遞迴。
+     */
+    private static final ThreadLocal<Set<Class<?>>> GENERATING = new ThreadLocal<Set<Class<?>>>() {
+        @Override
+        protected Set<Class<?>> initialValue() {
+            return new HashSet<Class<?>>();
+        }
+    };
+
+    static final ValueGenerator MOCK_GENERATOR = new ValueGenerator() {
+        @Override
+        public boolean accepts(Class<?> type) {
+            return !type.isPrimitive();
+        }
+
+        @Override
+        public Object generate(Class<?> type, ValuePipeline pipeline) {
+            // 每次都建立新的 mock，避免測試之間透過同一個 mock 的 stubbing 或呼叫紀錄互相影響；產生的類別由 Mockito 快取
+            LOGGER.debug("No cheaper value generator for {}, falling back to a Mockito mock.",
+                    type.getName());
+            return Mockito.mock(type);
+        }
+    };
+
+    private static final ValuePipeline DEFAULT = new ValuePipeline(defaultGenerators());
+
+    private final List<ValueGenerator> generators;
+
+    private final ConcurrentMap<Class<?>, ValueGenerator[]> strategies = new ConcurrentHashMap<Class<?>, ValueGenerator[]>();
+
+    private ValuePipeline(List<ValueGenerator> generators) {
+        this.generators = generators;
+    }
+
+    /**
+     * @return 只有內建 Generator 的 {@code ValuePipeline}。
+     */
+    static ValuePipeline defaults() {
+        return DEFAULT;
+    }
+
+    /**
+     * @return 把 <code>generator</code> 放在最前面的新 {@code ValuePipeline}。
+     */
+    ValuePipeline with(ValueGenerator generator) {
+        List<ValueGenerator> generators = new ArrayList<ValueGenerator>();
+        generators.add(generator);
+        generators.addAll(this.generators);
+        return new ValuePipeline(generators);
+    }
+
+    /**
+     * 產生 <code>type</code> 的測試數值，有註冊型態參數的型態會直接使用目前 Thread 的型態參數。
+     *
+     * @param type
+     *            需要數值的型態。
+     * @return 可以指定給 <code>type</code> 的數值；record 互相參照時，遞迴中的非 primitive 型態會是 <code>null</code>。
+     * @throws IllegalArgumentException
+     *             表示沒有任何 Generator 可以產生該型態的數值。
+     */
+    public Object generate(Class<?> type) {
+        return produce(type).getValue();
+    }
+
+    Generated produce(Class<?> type) {
+        TypeArguments arguments = PropertyAsserter.currentTypeArguments();
+        if (arguments.contains(type)) {
+            return new Generated(arguments.get(type), null);
+        }
+
+        Set<Class<?>> generating = GENERATING.get();
+        if (!generating.add(type)) {
+            return new Generated(type.isPrimitive() ? defaultValue(type) : null, null);
+        }
+        try {
+            RuntimeException failure = null;
+            for (ValueGenerator generator : strategiesFor(type)) {
+                try {
+                    return new Generated(generator.generate(type, this), generator);
+
+                } catch (RuntimeException e) {
+                    LOGGER.debug("{} failed to generate {}.", generator, type.getName(), e);
+                    failure = e;
+                }
+            }
+            throw new IllegalArgumentException("Cannot generate a value for " + type.getName()
+                    + ", register one with PropertyAsserter.registerTypeAndDefaultArgument().",
+                    failure);
+
+        } finally {
+            generating.remove(type);
+        }
+    }
+
+    private ValueGenerator[] strategiesFor(Class<?> type) {
+        ValueGenerator[] accepted = strategies.get(type);
+        if (accepted == null) {
+            List<ValueGenerator> list = new ArrayList<ValueGenerator>();
+            for (ValueGenerator generator : generators) {
+                if (generator.accepts(type)) {
+                    list.add(generator);
+                }
+            }
+            accepted = list.isEmpty() ? NO_GENERATORS : list.toArray(new ValueGenerator[list
+                    .size()]);
+            strategies.putIfAbsent(type, accepted);
+        }
+        return accepted;
+    }
+
+    private static Object defaultValue(Class<?> primitive) {
+        return Array.get(Array.newInstance(primitive, 1), 0);
+    }
+
+    /**
+     * 產生的數值以及產生它的 Generator。
+     */
+    static final class Generated {
+
+        private final Object value;
+
+        private final ValueGenerator generator;
+
+        Generated(Object value, ValueGenerator generator) {
+            this.value = value;
+            this.generator = generator;
+        }
+
+        Object getValue() {
+            return value;
+        }
+
+        /**
+         * @return 是否是以 Mockito 建立的 mock。
+         */
+        boolean isMock() {
+            return generator == MOCK_GENERATOR;
+        }
+    }
+
+    private static List<ValueGenerator> defaultGenerators() {
+        List<ValueGenerator> generators = new ArrayList<ValueGenerator>();
+
+        // primitive 的預設值，只有在型態參數被移除時才會用到
+        generators.add(new ValueGenerator() {
+            @Override
+            public boolean accepts(Class<?> type) {
+                return type.isPrimitive() && type != void.class;
+            }
+
+            @Override
+            public Object generate(Class<?> type, ValuePipeline pipeline) {
+                return defaultValue(type);
+            }
+        });
+
+        generators.add(new ValueGenerator() {
+            @Override
+            public boolean accepts(Class<?> type) {
+                return type.isArray();
+            }
+
+            @Override
+            public Object generate(Class<?> type, ValuePipeline pipeline) {
+                return Array.newInstance(type.getComponentType(), TEST_ARRAY_SIZE);
+            }
+        });
+
+        generators.add(new ValueGenerator() {
+            @Override
+            public boolean accepts(Class<?> type) {
+                return type.isEnum() && type.getEnumConstants().length > 0;
+            }
+
+            @Override
+            public Object generate(Class<?> type, ValuePipeline pipeline) {
+                return type.getEnumConstants()[0];
+            }
+        });
+
+        generators.add(new RecordGenerator());
+
+        generators.add(new ValueGenerator() {
+            private final Class<?>[] implementations = { ArrayList.class, LinkedHashSet.class,
+                    TreeSet.class, ArrayDeque.class, LinkedHashMap.class, TreeMap.class,
+                    ConcurrentHashMap.class, ConcurrentSkipListMap.class,
+                    ConcurrentSkipListSet.class, LinkedBlockingDeque.class };
+
+            @Override
+            public boolean accepts(Class<?> type) {
+                return isAbstract(type) && implementationOf(type) != null;
+            }
+
+            @Override
+            public Object generate(Class<?> type, ValuePipeline pipeline) {
+                Class<?> implementation = implementationOf(type);
+                try {
+                    return implementation.getDeclaredConstructor().newInstance();
+
+                } catch (Exception e) {
+                    throw new IllegalStateException("Could not instantiate " + implementation
+                            + " for type " + type, e);
+                }
+            }
+
+            private Class<?> implementationOf(Class<?> type) {
+                for (Class<?> implementation : implementations) {
+                    if (type.isAssignableFrom(implementation)) {
+                        return implementation;
+                    }
+                }
+                return null;
+            }
+        });
+
+        generators.add(new ValueGenerator() {
+            private final ClassValue<Constructor<?>> constructors = new ClassValue<Constructor<?>>() {
+                @Override
+                protected Constructor<?> computeValue(Class<?> type) {
+                    for (Constructor<?> constructor : type.getDeclaredConstructors()) {
+                        if (constructor.getParameterTypes().length == 0) {
+                            constructor.setAccessible(true);
+                            return constructor;
+                        }
+                    }
+                    return null;
+                }
+            };
+
+            @Override
+            public boolean accepts(Class<?> type) {
+                return !type.isPrimitive() && !isAbstract(type) && constructors.get(type) != null;
+            }
+
+            @Override
+            public Object generate(Class<?> type, ValuePipeline pipeline) {
+                try {
+                    return constructors.get(type).newInstance();
+
+                } catch (Exception e) {
+                    throw new IllegalStateException("Could not invoke default constructor on type "
+                            + type, e);
+                }
+            }
+        });
+
+        // 介面直接用 JDK 的 Proxy，比 Mockito 輕量得多
+        generators.add(new ValueGenerator() {
+            @Override
+            public boolean accepts(Class<?> type) {
+                return type.isInterface() && !type.isAnnotation();
+            }
+
+            @Override
+            public Object generate(final Class<?> type, ValuePipeline pipeline) {
+                return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+                        new InvocationHandler() {
+                            @Override
+                            public Object invoke(Object proxy, Method method, Object[] args) {
+                                String name = method.getName();
+                                if ("equals".equals(name) && args != null && args.length == 1) {
+                                    return proxy == args[0];
+                                } else if ("hashCode".equals(name) && args == null) {
+                                    return System.identityHashCode(proxy);
+                                } else if ("toString".equals(name) && args == null) {
+                                    return "Generated " + type.getName();
+                                }
+                                Class<?> returnType = method.getReturnType();
+                                return returnType.isPrimitive() && returnType != void.class
+                                        ? defaultValue(returnType) : null;
+                            }
+                        });
+            }
+        });
+
+        generators.add(MOCK_GENERATOR);
+        return generators;
+    }
+
+    private static boolean isAbstract(Class<?> type) {
+        return !type.isPrimitive() && !type.isArray()
+                && (type.isInterface() || Modifier.isAbstract(type.getModifiers()));
+    }
+
+    /**
+     * 以 canonical constructor 建立 record，各個 component 的數值也由 pipeline 產生。執行環境不支援 record 時不會接受任何型態。
+     */
+    private static final class RecordGenerator implements ValueGenerator {
+
+        private static final Method IS_RECORD = findMethod(Class.class, "isRecord");
+
+        private static final Method GET_RECORD_COMPONENTS = findMethod(Class.class,
+                "getRecordComponents");
+
+        private static Method findMethod(Class<?> type, String name) {
+            try {
+                return type.getMethod(name);
+
+            } catch (NoSuchMethodException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public boolean accepts(Class<?> type) {
+            try {
+                return IS_RECORD != null && (Boolean) IS_RECORD.invoke(type);
+
+            } catch (Exception e) {
+                return false;
+            }
+        }
+
+        @Override
+        public Object generate(Class<?> type, ValuePipeline pipeline) {
+            try {
+                Object[] components = (Object[]) GET_RECORD_COMPONENTS.invoke(type);
+                Class<?>[] types = new Class<?>[components.length];
+                Object[] args = new Object[components.length];
+                for (int i = 0; i < components.length; i++) {
+                    types[i] = (Class<?>) components[i].getClass().getMethod("getType")
+                            .invoke(components[i]);
+                    args[i] = pipeline.produce(types[i]).getValue();
+                }
+
+                Constructor<?> constructor = type.getDeclaredConstructor(types);
+                constructor.setAccessible(true);
+                return constructor.newInstance(args);
+
+            } catch (RuntimeException e) {
+                throw e;
+
+            } catch (Exception e) {
+                throw new IllegalStateException("Could not invoke canonical constructor on record "
+                        + type, e);
+            }
+        }
+    }
+}
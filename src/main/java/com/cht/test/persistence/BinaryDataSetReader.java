@@ -0,0 +1,273 @@
+package com.cht.test.persistence;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.dbunit.dataset.AbstractTable;
+import org.dbunit.dataset.Column;
+import org.dbunit.dataset.DataSetException;
+import org.dbunit.dataset.DefaultDataSet;
+import org.dbunit.dataset.DefaultTableMetaData;
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.ITable;
+import org.dbunit.dataset.ITableMetaData;
+import org.dbunit.dataset.datatype.DataType;
+import org.springframework.core.io.Resource;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+
+/**
+ * 讀取 {@link BinaryDataSetWriter} 產生的 <code>*-dataset.bin</code>。
+ * <p>
+ * 檔案系統上的檔案以 memory-mapped I/O 讀取；在 jar 檔裡的檔案只能整個讀進記憶體。壓縮的檔案必須先解壓縮到 heap，即使在檔案系統上也
+ * 無法受惠於 memory-mapped I/O。整數欄位的值是 {@link Long}，其他欄位是
+ * {@link String}，與 FlatXML 相同，所有欄位的型別都是 {@link DataType#UNKNOWN}，寫入資料庫時再依欄位型別轉換。
+ *
+ * @author <a href="mailto:beta@cht.com.tw">黃培棠</a>
+ */
+final class BinaryDataSetReader {
+
+    /**
+     * magic、版本、flags、來源檔案的大小與最後修改時間，以及內容的長度。
+     */
+    private static final int HEADER_LENGTH = 4 + 1 + 1 + 8 + 8 + 4;
+
+    private BinaryDataSetReader() {
+    }
+
+    /**
+     * @return <code>location</code> 是否為二進位 dataset。
+     */
+    static boolean isBinary(String location) {
+        return location != null && location.endsWith(".bin");
+    }
+
+    /**
+     * @return <code>*-dataset.xml</code> 對應的 <code>*-dataset.bin</code>；其他名稱回傳 <code>null</code>。
+     */
+    static String binaryLocationOf(String location) {
+        if (!location.endsWith(BinaryDataSetWriter.XML_SUFFIX)) {
+            return null;
+        }
+        return location.substring(0, location.length() - BinaryDataSetWriter.XML_SUFFIX.length())
+                + BinaryDataSetWriter.BINARY_SUFFIX;
+    }
+
+    /**
+     * 只讀取 <code>binary</code> 的 header，確認是否由目前的 <code>source</code> 轉換而來。<code>source</code> 的大小不同，或是比轉換時新，
+     * 表示 XML 在轉換之後被修改過；舊版或不是由 XML 轉換的二進位 dataset 也無法確認。
+     *
+     * @return <code>binary</code> 是否可以取代 <code>source</code>。
+     */
+    static boolean isUpToDate(Resource binary, Resource source) throws IOException {
+        DataInputStream in = new DataInputStream(binary.getInputStream());
+        try {
+            if (in.readInt() != BinaryDataSetWriter.MAGIC
+                    || in.readByte() != BinaryDataSetWriter.VERSION) {
+                return false;
+            }
+            in.readByte();
+            long sourceLength = in.readLong();
+            long sourceLastModified = in.readLong();
+            return sourceLength != BinaryDataSetWriter.UNKNOWN_SOURCE
+                    && sourceLength == source.contentLength()
+                    && source.lastModified() <= sourceLastModified;
+
+        } catch (EOFException e) {
+            return false;
+
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * 只讀取 <code>binary</code> 的 header。
+     *
+     * @return 未壓縮的內容長度(bytes)。
+     */
+    static int bodyLengthOf(Resource binary) throws IOException {
+        DataInputStream in = new DataInputStream(binary.getInputStream());
+        try {
+            // magic、版本、flags、來源檔案的大小與最後修改時間
+            ByteStreams.skipFully(in, HEADER_LENGTH - 4);
+            return in.readInt();
+
+        } finally {
+            in.close();
+        }
+    }
+
+    static IDataSet read(Resource resource) throws IOException, DataSetException {
+        return read(map(resource), resource.getDescription());
+    }
+
+    static IDataSet read(ByteBuffer buffer, String description) throws DataSetException {
+        if (buffer.remaining() < HEADER_LENGTH || buffer.getInt() != BinaryDataSetWriter.MAGIC) {
+            throw new DataSetException(description + " is not a binary data set.");
+        }
+        byte version = buffer.get();
+        if (version != BinaryDataSetWriter.VERSION) {
+            throw new DataSetException("Unsupported version " + version + " of " + description
+                    + ".");
+        }
+        byte flags = buffer.get();
+        // 來源檔案的大小與最後修改時間只在 isUpToDate 使用
+        buffer.getLong();
+        buffer.getLong();
+        int length = buffer.getInt();
+        ByteBuffer body = (flags & BinaryDataSetWriter.FLAG_DEFLATE) != 0 ? inflate(buffer,
+                length, description) : buffer.slice();
+
+        int tableCount = body.getInt();
+        ITable[] tables = new ITable[tableCount];
+        for (int i = 0; i < tableCount; i++) {
+            tables[i] = readTable(body);
+        }
+        return new DefaultDataSet(tables);
+    }
+
+    private static ITable readTable(ByteBuffer body) {
+        String tableName = readString(body);
+        Column[] columns = new Column[body.getInt()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = new Column(readString(body), DataType.UNKNOWN);
+        }
+        int rowCount = body.getInt();
+
+        Object[][] values = new Object[columns.length][];
+        for (int i = 0; i < columns.length; i++) {
+            values[i] = readColumn(body, rowCount);
+        }
+        return new ColumnarTable(new DefaultTableMetaData(tableName, columns), rowCount, values);
+    }
+
+    private static Object[] readColumn(ByteBuffer body, int rowCount) {
+        Object[] values = new Object[rowCount];
+        byte type = body.get();
+        if (type == BinaryDataSetWriter.TYPE_LONG) {
+            byte[] nulls = new byte[(rowCount + 7) / 8];
+            body.get(nulls);
+            for (int row = 0; row < rowCount; row++) {
+                long value = body.getLong();
+                if ((nulls[row >> 3] & 1 << (row & 7)) == 0) {
+                    values[row] = value;
+                }
+            }
+
+        } else {
+            for (int row = 0; row < rowCount; row++) {
+                int length = body.getInt();
+                values[row] = length < 0 ? null : readString(body, length);
+            }
+        }
+        return values;
+    }
+
+    private static String readString(ByteBuffer body) {
+        return readString(body, body.getInt());
+    }
+
+    private static String readString(ByteBuffer body, int length) {
+        byte[] bytes = new byte[length];
+        body.get(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+
+    private static ByteBuffer inflate(ByteBuffer buffer, int length, String description)
+            throws DataSetException {
+        byte[] compressed = new byte[buffer.remaining()];
+        buffer.get(compressed);
+        byte[] body = new byte[length];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int offset = 0;
+            while (offset < length && !inflater.finished()) {
+                int inflated = inflater.inflate(body, offset, length - offset);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                offset += inflated;
+            }
+            if (offset != length) {
+                throw new DataSetException(description + " is truncated.");
+            }
+            return ByteBuffer.wrap(body);
+
+        } catch (DataFormatException e) {
+            throw new DataSetException(description + " is corrupted.", e);
+
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static ByteBuffer map(Resource resource) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(resource.getFile().toPath(), StandardOpenOption.READ);
+
+        } catch (FileNotFoundException e) {
+            // 不在檔案系統上，例如在 jar 檔裡
+            InputStream in = resource.getInputStream();
+            try {
+                return ByteBuffer.wrap(ByteStreams.toByteArray(in));
+
+            } finally {
+                in.close();
+            }
+        }
+
+        try {
+            // 關閉 channel 後 mapping 仍然有效
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * 以欄為單位保存值的 {@link ITable}。
+     */
+    private static final class ColumnarTable extends AbstractTable {
+
+        private final ITableMetaData metaData;
+
+        private final int rowCount;
+
+        private final Object[][] values;
+
+        ColumnarTable(ITableMetaData metaData, int rowCount, Object[][] values) {
+            this.metaData = metaData;
+            this.rowCount = rowCount;
+            this.values = values;
+        }
+
+        @Override
+        public ITableMetaData getTableMetaData() {
+            return metaData;
+        }
+
+        @Override
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        @Override
+        public Object getValue(int row, String column) throws DataSetException {
+            assertValidRowIndex(row);
+            return values[getColumnIndex(column)][row];
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package com.cht.test.persistence;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.dbunit.dataset.Column;
+import org.dbunit.dataset.DataSetException;
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.ITable;
+import org.dbunit.dataset.ITableIterator;
+import org.dbunit.dataset.datatype.DataType;
+import org.dbunit.dataset.xml.FlatXmlDataSetBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+
+/**
+ * 把 {@link IDataSet} 寫成 {@link CleanInsertTestExecutionListener} 可以直接載入的二進位 dataset(<code>*-dataset.bin</code>)，
+ * 省去每個 JVM 第一次載入 FlatXML 時的解析時間。
+ * <p>
+ * 檔案以欄(column)為單位儲存，每欄的所有值都是整數時以 <code>long</code> 儲存，其餘以 UTF-8 字串儲存；可以選擇以 Deflate 壓縮。
+ * 由 XML 轉換時，header 會記錄 XML 的大小與最後修改時間，XML 之後被修改時改為載入 XML，不會使用過期的二進位 dataset。
+ * 讀取請使用 {@link BinaryDataSetReader}。
+ * <p>
+ * {@link #main(String[])} 可以在建置時把 <code>*-dataset.xml</code> 轉換成同目錄的 <code>*-dataset.bin</code>，例如在
+ * <code>process-test-resources</code> 階段以 exec-maven-plugin 執行:
+ *
+ * <pre>
+ * &lt;plugin&gt;
+ *     &lt;groupId&gt;org.codehaus.mojo&lt;/groupId&gt;
+ *     &lt;artifactId&gt;exec-maven-plugin&lt;/artifactId&gt;
+ *     &lt;executions&gt;
+ *         &lt;execution&gt;
+ *             &lt;phase&gt;process-test-resources&lt;/phase&gt;
+ *             &lt;goals&gt;
+ *                 &lt;goal&gt;java&lt;/goal&gt;
+ *             &lt;/goals&gt;
+ *             &lt;configuration&gt;
+ *                 &lt;mainClass&gt;com.cht.test.persistence.BinaryDataSetWriter&lt;/mainClass&gt;
+ *                 &lt;classpathScope&gt;test&lt;/classpathScope&gt;
+ *                 &lt;arguments&gt;
+ *                     &lt;argument&gt;${project.build.testOutputDirectory}&lt;/argument&gt;
+ *                 &lt;/arguments&gt;
+ *             &lt;/configuration&gt;
+ *         &lt;/execution&gt;
+ *     &lt;/executions&gt;
+ * &lt;/plugin&gt;
+ * </pre>
+ *
+ * 本專案的 <code>binary-dataset</code> profile 即是如此設定。不建議加上 <code>--compress</code>:壓縮後的檔案載入時會整個複製到
+ * heap 再解壓縮，memory-mapped I/O 就沒有作用了；只有在意檔案大小時才壓縮。
+ *
+ * @author <a href="mailto:beta@cht.com.tw">黃培棠</a>
+ */
+public final class BinaryDataSetWriter {
+
+    static final int MAGIC = 0x43485444; // "CHTD"
+
+    static final byte VERSION = 2;
+
+    static final byte FLAG_DEFLATE = 1;
+
+    /**
+     * 不是由 XML 轉換時，header 中來源檔案的大小與最後修改時間。
+     */
+    static final long UNKNOWN_SOURCE = -1;
+
+    static final byte TYPE_STRING = 0;
+
+    static final byte TYPE_LONG = 1;
+
+    static final String XML_SUFFIX = "-dataset.xml";
+
+    static final String BINARY_SUFFIX = "-dataset.bin";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BinaryDataSetWriter.class);
+
+    private final boolean compress;
+
+    /**
+     * @param compress
+     *            是否以 Deflate 壓縮；壓縮後的檔案較小，但載入時需要多花時間解壓縮，而且無法直接從 memory-mapped 的檔案讀取。
+     */
+    public BinaryDataSetWriter(boolean compress) {
+        this.compress = compress;
+    }
+
+    /**
+     * 把 <code>dataSet</code> 寫到 <code>file</code>。
+     */
+    public void write(IDataSet dataSet, File file) throws IOException, DataSetException {
+        write(dataSet, file, null);
+    }
+
+    /**
+     * 把由 <code>source</code> 解析的 <code>dataSet</code> 寫到 <code>file</code>，並記錄 <code>source</code> 的大小與最後修改時間。
+     */
+    void write(IDataSet dataSet, File file, File source) throws IOException, DataSetException {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            if (source == null) {
+                write(dataSet, out, UNKNOWN_SOURCE, UNKNOWN_SOURCE);
+
+            } else {
+                write(dataSet, out, source.length(), source.lastModified());
+            }
+
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * 把 <code>dataSet</code> 寫到 <code>out</code>，不會關閉 <code>out</code>。
+     */
+    public void write(IDataSet dataSet, OutputStream out) throws IOException, DataSetException {
+        write(dataSet, out, UNKNOWN_SOURCE, UNKNOWN_SOURCE);
+    }
+
+    private void write(IDataSet dataSet, OutputStream out, long sourceLength,
+            long sourceLastModified) throws IOException, DataSetException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(body);
+        writeTables(dataSet, data);
+        data.flush();
+
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(MAGIC);
+        header.writeByte(VERSION);
+        header.writeByte(compress ? FLAG_DEFLATE : 0);
+        header.writeLong(sourceLength);
+        header.writeLong(sourceLastModified);
+        // 讀取時依此配置解壓縮的空間
+        header.writeInt(body.size());
+        if (compress) {
+            Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+            DeflaterOutputStream deflated = new DeflaterOutputStream(header, deflater);
+            body.writeTo(deflated);
+            deflated.finish();
+            deflater.end();
+
+        } else {
+            body.writeTo(header);
+        }
+        header.flush();
+    }
+
+    private static void writeTables(IDataSet dataSet, DataOutputStream data)
+            throws IOException, DataSetException {
+        List<ITable> tables = new ArrayList<ITable>();
+        for (ITableIterator iterator = dataSet.iterator(); iterator.next();) {
+            tables.add(iterator.getTable());
+        }
+
+        data.writeInt(tables.size());
+        for (ITable table : tables) {
+            Column[] columns = table.getTableMetaData().getColumns();
+            int rowCount = table.getRowCount();
+            writeString(data, table.getTableMetaData().getTableName());
+            data.writeInt(columns.length);
+            for (Column column : columns) {
+                writeString(data, column.getColumnName());
+            }
+            data.writeInt(rowCount);
+
+            for (Column column : columns) {
+                String[] values = new String[rowCount];
+                for (int row = 0; row < rowCount; row++) {
+                    Object value = table.getValue(row, column.getColumnName());
+                    values[row] = value == null || value instanceof String ? (String) value
+                            : DataType.asString(value);
+                }
+                writeColumn(data, values);
+            }
+        }
+    }
+
+    private static void writeColumn(DataOutputStream data, String[] values) throws IOException {
+        if (!isLongColumn(values)) {
+            data.writeByte(TYPE_STRING);
+            for (String value : values) {
+                if (value == null) {
+                    data.writeInt(-1);
+
+                } else {
+                    writeString(data, value);
+                }
+            }
+            return;
+        }
+
+        // 先寫 null 的 bitmap，再寫每一列的值
+        data.writeByte(TYPE_LONG);
+        byte[] nulls = new byte[(values.length + 7) / 8];
+        for (int row = 0; row < values.length; row++) {
+            if (values[row] == null) {
+                nulls[row >> 3] |= 1 << (row & 7);
+            }
+        }
+        data.write(nulls);
+        for (String value : values) {
+            data.writeLong(value == null ? 0 : Long.parseLong(value));
+        }
+    }
+
+    /**
+     * @return 所有值都是可以還原成相同字串的整數(例如沒有前置的 0)，且至少有一個值。
+     */
+    private static boolean isLongColumn(String[] values) {
+        boolean hasValue = false;
+        for (String value : values) {
+            if (value != null) {
+                try {
+                    if (!String.valueOf(Long.parseLong(value)).equals(value)) {
+                        return false;
+                    }
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+                hasValue = true;
+            }
+        }
+        return hasValue;
+    }
+
+    private static void writeString(DataOutputStream data, String value) throws IOException {
+        byte[] bytes = value.getBytes(Charsets.UTF_8);
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    /**
+     * 把 FlatXML 格式的 <code>xml</code> 轉換成同目錄的 <code>*-dataset.bin</code>。
+     *
+     * @return 轉換後的檔案。
+     */
+    public File convert(File xml) throws IOException, DataSetException {
+        String name = xml.getName();
+        String baseName = name.endsWith(XML_SUFFIX) ? name.substring(0, name.length()
+                - XML_SUFFIX.length()) : name.substring(0, Math.max(name.lastIndexOf('.'), 0));
+        File binary = new File(xml.getParentFile(), baseName + BINARY_SUFFIX);
+
+        InputStream in = new FileInputStream(xml);
+        try {
+            write(new FlatXmlDataSetBuilder().build(in), binary, xml);
+
+        } finally {
+            in.close();
+        }
+        LOGGER.info("converted {} ({} bytes) to {} ({} bytes)", xml, xml.length(), binary,
+                binary.length());
+        return binary;
+    }
+
+    /**
+     * 把參數指定的 <code>*-dataset.xml</code> 檔案，以及目錄下(包含子目錄)所有的 <code>*-dataset.xml</code> 轉換成
+     * <code>*-dataset.bin</code>。
+     *
+     * @param args
+     *            <code>[--compress] &lt;檔案或目錄&gt;...</code>
+     */
+    public static void main(String[] args) throws IOException, DataSetException {
+        boolean compress = false;
+        List<File> files = new ArrayList<File>();
+        for (String arg : args) {
+            if ("--compress".equals(arg)) {
+                compress = true;
+
+            } else {
+                files.add(new File(arg));
+            }
+        }
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException(
+                    "Usage: BinaryDataSetWriter [--compress] <file or directory>...");
+        }
+
+        BinaryDataSetWriter writer = new BinaryDataSetWriter(compress);
+        for (File file : files) {
+            if (file.isDirectory()) {
+                writer.convertDirectory(file);
+
+            } else {
+                writer.convert(file);
+            }
+        }
+    }
+
+    private void convertDirectory(File directory) throws IOException, DataSetException {
+        File[] children = directory.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                convertDirectory(child);
+
+            } else if (child.getName().endsWith(XML_SUFFIX)) {
+                convert(child);
+            }
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.cht.test.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.dbunit.DatabaseUnitException;
+import org.dbunit.database.IDatabaseConnection;
+import org.dbunit.dataset.Column;
+import org.dbunit.dataset.DataSetException;
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.ITable;
+import org.dbunit.dataset.ITableIterator;
+import org.dbunit.dataset.ITableMetaData;
+import org.dbunit.dataset.datatype.DataType;
+import org.dbunit.operation.DatabaseOperation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.Files;
+
+/**
+ * 以 H2 的大量載入方式取代 DbUnit 逐筆新增的 {@link DatabaseOperation}，效果與 {@link DatabaseOperation#CLEAN_INSERT}
+ * 相同：先清空 dataset 裡所有資料表，再新增 dataset 的資料。
+ * <p>
+ * 載入期間會以 <code>SET REFERENTIAL_INTEGRITY FALSE</code> 關閉 H2 的 foreign key 檢查，因此以
+ * <code>TRUNCATE TABLE</code> 清空資料表，也不需要依照 foreign key 排列 dataset 的資料表；載入後恢復成原本的設定。
+ * 這個設定對整個資料庫有效，載入期間其他連線的異動也不會檢查 foreign key，請不要在同一個資料庫平行載入 dataset 或執行其他測試。
+ * <p>
+ * 資料量小的資料表以 JDBC batch 新增；資料列數量達到 <code>csvThreshold</code> 的資料表，會先寫成暫存的 CSV 檔，再以
+ * <code>INSERT ... SELECT * FROM CSVREAD(...)</code> 在資料庫內一次新增，只適用於與測試在同一台電腦上的 H2。
+ * <p>
+ * 值的型別轉換與 DbUnit 相同，使用 {@link IDatabaseConnection} 設定的 <code>IDataTypeFactory</code>。
+ *
+ * @author <a href="mailto:beta@cht.com.tw">黃培棠</a>
+ * @see DataSetLocation#bulkLoad()
+ */
+public class BulkLoadOperation extends DatabaseOperation {
+
+    /**
+     * 預設每次送出的 batch 大小。
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkLoadOperation.class);
+
+    private final int batchSize;
+
+    private final int csvThreshold;
+
+    /**
+     * 以 {@link #DEFAULT_BATCH_SIZE} 新增所有資料表，不使用 <code>CSVREAD</code>。
+     */
+    public BulkLoadOperation() {
+        this(DEFAULT_BATCH_SIZE, 0);
+    }
+
+    /**
+     * @param batchSize
+     *            每次送出的 batch 大小。
+     * @param csvThreshold
+     *            資料列數量達到多少的資料表改以 <code>CSVREAD</code> 新增，0 表示不使用 <code>CSVREAD</code>。
+     */
+    public BulkLoadOperation(int batchSize, int csvThreshold) {
+        Assert.isTrue(batchSize > 0, "batchSize must be positive");
+        Assert.isTrue(csvThreshold >= 0, "csvThreshold must not be negative");
+        this.batchSize = batchSize;
+        this.csvThreshold = csvThreshold;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute(IDatabaseConnection connection, IDataSet dataSet)
+            throws DatabaseUnitException, SQLException {
+        Connection jdbcConnection = connection.getConnection();
+        IDataSet database = connection.createDataSet();
+        Statement statement = jdbcConnection.createStatement();
+        boolean referentialIntegrity = isReferentialIntegrity(statement);
+        try {
+            if (referentialIntegrity) {
+                statement.execute("SET REFERENTIAL_INTEGRITY FALSE");
+            }
+            for (ITableIterator iterator = dataSet.iterator(); iterator.next();) {
+                statement.execute("TRUNCATE TABLE "
+                        + iterator.getTableMetaData().getTableName());
+            }
+
+            for (ITableIterator iterator = dataSet.iterator(); iterator.next();) {
+                ITable table = iterator.getTable();
+                if (table.getRowCount() == 0) {
+                    continue;
+                }
+
+                Column[] columns = table.getTableMetaData().getColumns();
+                DataType[] dataTypes = dataTypesOf(database, table.getTableMetaData());
+                long start = System.nanoTime();
+                if (csvThreshold > 0 && table.getRowCount() >= csvThreshold) {
+                    loadCsv(statement, table, columns, dataTypes);
+
+                } else {
+                    insertBatch(jdbcConnection, table, columns, dataTypes);
+                }
+                LOGGER.debug("loaded {} rows into {} in {} ms", table.getRowCount(), table
+                        .getTableMetaData().getTableName(), (System.nanoTime() - start) / 1000000);
+            }
+
+        } finally {
+            try {
+                if (referentialIntegrity) {
+                    statement.execute("SET REFERENTIAL_INTEGRITY TRUE");
+                }
+
+            } finally {
+                statement.close();
+            }
+        }
+    }
+
+    /**
+     * @return 資料庫目前是否檢查 foreign key。
+     */
+    private static boolean isReferentialIntegrity(Statement statement) throws SQLException {
+        ResultSet resultSet = statement.executeQuery("SELECT VALUE FROM"
+                + " INFORMATION_SCHEMA.SETTINGS WHERE NAME = 'REFERENTIAL_INTEGRITY'");
+        try {
+            // 沒有這個設定時為預設值
+            return !resultSet.next() || Boolean.parseBoolean(resultSet.getString(1));
+
+        } finally {
+            resultSet.close();
+        }
+    }
+
+    private void insertBatch(Connection connection, ITable table, Column[] columns,
+            DataType[] dataTypes) throws SQLException, DataSetException {
+        PreparedStatement statement = connection.prepareStatement("INSERT INTO "
+                + table.getTableMetaData().getTableName() + " (" + columnList(columns)
+                + ") VALUES (" + parameterList(columns.length) + ")");
+        try {
+            int rowCount = table.getRowCount();
+            for (int row = 0; row < rowCount; row++) {
+                for (int i = 0; i < columns.length; i++) {
+                    dataTypes[i].setSqlValue(table.getValue(row, columns[i].getColumnName()),
+                            i + 1, statement);
+                }
+                statement.addBatch();
+                if ((row + 1) % batchSize == 0) {
+                    statement.executeBatch();
+                }
+            }
+            if (rowCount % batchSize != 0) {
+                statement.executeBatch();
+            }
+
+        } finally {
+            statement.close();
+        }
+    }
+
+    private static void loadCsv(Statement statement, ITable table, Column[] columns,
+            DataType[] dataTypes) throws SQLException, DataSetException {
+        File file = null;
+        try {
+            file = File.createTempFile("cht-bulk-load-", ".csv");
+            writeCsv(file, table, columns, dataTypes);
+
+            String columnList = columnList(columns);
+            statement.execute("INSERT INTO " + table.getTableMetaData().getTableName() + " ("
+                    + columnList + ") SELECT * FROM CSVREAD('"
+                    + file.getAbsolutePath().replace("'", "''") + "', '" + columnList
+                    + "', 'charset=UTF-8')");
+
+        } catch (IOException e) {
+            throw new DataSetException("Failed to write CSV of "
+                    + table.getTableMetaData().getTableName(), e);
+
+        } finally {
+            if (file != null && !file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    private static void writeCsv(File file, ITable table, Column[] columns, DataType[] dataTypes)
+            throws IOException, DataSetException {
+        Writer writer = Files.newWriter(file, Charsets.UTF_8);
+        try {
+            int rowCount = table.getRowCount();
+            for (int row = 0; row < rowCount; row++) {
+                for (int i = 0; i < columns.length; i++) {
+                    if (i > 0) {
+                        writer.write(',');
+                    }
+                    // 沒有引號的空欄位是 NULL
+                    Object value = dataTypes[i].typeCast(table.getValue(row,
+                            columns[i].getColumnName()));
+                    if (value != null) {
+                        writer.write('"');
+                        writer.write(toCsvValue(value).replace("\"", "\"\""));
+                        writer.write('"');
+                    }
+                }
+                writer.write('\n');
+            }
+
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static String toCsvValue(Object value) {
+        if (value instanceof byte[]) {
+            return BaseEncoding.base16().encode((byte[]) value);
+        }
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).toPlainString();
+        }
+        return value.toString();
+    }
+
+    /**
+     * @return dataset 每個欄位在資料庫的型別。
+     */
+    private static DataType[] dataTypesOf(IDataSet database, ITableMetaData metaData)
+            throws DataSetException {
+        ITableMetaData databaseMetaData = database.getTableMetaData(metaData.getTableName());
+        Column[] databaseColumns = databaseMetaData.getColumns();
+        Column[] columns = metaData.getColumns();
+        DataType[] dataTypes = new DataType[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            dataTypes[i] = databaseColumns[databaseMetaData.getColumnIndex(columns[i]
+                    .getColumnName())].getDataType();
+        }
+        return dataTypes;
+    }
+
+    private static String columnList(Column[] columns) {
+        StringBuilder columnList = new StringBuilder();
+        for (Column column : columns) {
+            if (columnList.length() > 0) {
+                columnList.append(',');
+            }
+            columnList.append(column.getColumnName());
+        }
+        return columnList.toString();
+    }
+
+    private static String parameterList(int count) {
+        StringBuilder parameters = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            parameters.append(i == 0 ? "?" : ", ?");
+        }
+        return parameters.toString();
+    }
+}
@@ -1,7 +1,13 @@
 package com.cht.test.persistence;
 
+import java.io.IOException;
+import java.net.URL;
+import java.sql.Connection;
 import java.util.Calendar;
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.sql.DataSource;
 
@@ -10,18 +16,27 @@ import org.dbunit.database.DatabaseDataSourceConnection;
 import org.dbunit.database.IDatabaseConnection;
 import org.dbunit.dataset.IDataSet;
 import org.dbunit.dataset.ReplacementDataSet;
-import org.dbunit.dataset.xml.FlatXmlDataSetBuilder;
 import org.dbunit.ext.h2.H2DataTypeFactory;
 import org.dbunit.operation.DatabaseOperation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.core.io.UrlResource;
 import org.springframework.test.context.TestContext;
 import org.springframework.test.context.TestExecutionListener;
 import org.springframework.util.StringUtils;
 
 /**
  * 在單元測試前呼叫 DbUnit 進行資料庫資料準備作業的 {@link TestExecutionListener}。
+ * <p>
+ * 解析後的 dataset 與每個測試類別的 dataset 位置都會快取，同一個 dataset 在整個測試執行期間只解析一次；快取大小請參考
+ * system property <code>cht.test.dataSet.cacheMaxBytes</code>。
+ * <p>
+ * dataset 旁有 {@link BinaryDataSetWriter} 轉換的 <code>*-dataset.bin</code> 時(即使 <code>*-dataset.xml</code> 不存在)，會改以
+ * memory-mapped I/O 載入二進位 dataset，省去解析 XML 的時間；XML 在轉換之後被修改過時，仍然使用 XML。
+ * <p>
+ * 恢復資料庫的方式請參考 {@link DataSetLocation#reset()}。
  *
  * @author acogoluegnes
  * @see <a href=
@@ -33,55 +48,139 @@ public class CleanInsertTestExecutionListener implements TestExecutionListener {
     private static final Logger LOGGER = LoggerFactory
             .getLogger(CleanInsertTestExecutionListener.class);
 
+    private static final DataSetCache DATA_SETS = new DataSetCache();
+
+    private static final ConcurrentMap<Class<?>, String> DATA_SET_LOCATIONS = new ConcurrentHashMap<Class<?>, String>();
+
+    private static final ConcurrentMap<Class<?>, DatabaseSnapshot> SNAPSHOTS = new ConcurrentHashMap<Class<?>, DatabaseSnapshot>();
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void beforeTestMethod(TestContext testContext) throws Exception {
         // trying to find the DbUnit dataset
-        String dataSetResourcePath = null;
-
-        // first, the annotation on the test class
-        DataSetLocation dsLocation = testContext.getTestInstance().getClass()
-                .getAnnotation(DataSetLocation.class);
-        if (dsLocation != null) {
-            // found the annotation
-            dataSetResourcePath = dsLocation.value();
-            LOGGER.info("annotated test, using data set: {}", dataSetResourcePath);
-
-        } else {
-            // no annotation, let's try with the name of the test
-            String tempDsRes = testContext.getTestInstance().getClass().getName();
-            tempDsRes = StringUtils.replace(tempDsRes, ".", "/");
-            tempDsRes = "/" + tempDsRes + "-dataset.xml";
-            if (getClass().getResourceAsStream(tempDsRes) != null) {
-                LOGGER.info("detected default dataset: {}", tempDsRes);
-                dataSetResourcePath = tempDsRes;
-
-            } else {
-                LOGGER.info("no default dataset");
-            }
+        Class<?> testClass = testContext.getTestInstance().getClass();
+        String dataSetResourcePath = DATA_SET_LOCATIONS.get(testClass);
+        if (dataSetResourcePath == null) {
+            dataSetResourcePath = findDataSetLocation(testContext);
+            DATA_SET_LOCATIONS.putIfAbsent(testClass, dataSetResourcePath);
         }
 
-        if (dataSetResourcePath != null) {
-            Resource dataSetResource = testContext.getApplicationContext().getResource(
-                    dataSetResourcePath);
-            IDataSet dataSet = new FlatXmlDataSetBuilder().build(dataSetResource.getInputStream());
-            ReplacementDataSet replaceDataSet = new ReplacementDataSet(dataSet);
-            replaceDataSet.addReplacementObject("[NULL]", null);
-            Calendar cal = Calendar.getInstance(Locale.getDefault());
-            replaceDataSet.addReplacementObject("[NOW]", cal.getTime());
+        if (!dataSetResourcePath.isEmpty()) {
+            DataSetLocation dsLocation = testClass.getAnnotation(DataSetLocation.class);
+            ResetMode reset = dsLocation != null ? dsLocation.reset() : ResetMode.CLEAN_INSERT;
             IDatabaseConnection dbConn = new DatabaseDataSourceConnection(testContext
                     .getApplicationContext().getBean(DataSource.class));
-            DatabaseConfig config = dbConn.getConfig();
-            config.setProperty(DatabaseConfig.PROPERTY_DATATYPE_FACTORY, new H2DataTypeFactory());
-            DatabaseOperation.CLEAN_INSERT.execute(dbConn, replaceDataSet);
+            try {
+                DatabaseSnapshot snapshot = SNAPSHOTS.get(testClass);
+                if (snapshot != null && !snapshot.exists(dbConn.getConnection())) {
+                    // 資料庫在測試類別執行期間被重建，重新載入 dataset 並建立 snapshot
+                    LOGGER.info("snapshot of {} no longer exists, taking a new one",
+                            testClass.getName());
+                    SNAPSHOTS.remove(testClass, snapshot);
+                    snapshot.discard();
+                    snapshot = null;
+                }
+                if (reset == ResetMode.SNAPSHOT && snapshot != null) {
+                    snapshot.restore(dbConn.getConnection());
+                    return;
+                }
+                if (reset == ResetMode.DIRTY_TABLES && snapshot != null) {
+                    List<String> restored = snapshot.restoreDirtyTables(dbConn.getConnection());
+                    LOGGER.debug("restored tables: {}", restored);
+                    return;
+                }
+
+                Resource dataSetResource = testContext.getApplicationContext().getResource(
+                        dataSetResourcePath);
+                // 解析後的 dataset 會被快取，只有 [NOW] 等取代值需要在每個測試重新設定
+                IDataSet dataSet = DATA_SETS.get(dataSetResource);
+                ReplacementDataSet replaceDataSet = new ReplacementDataSet(dataSet);
+                replaceDataSet.addReplacementObject("[NULL]", null);
+                Calendar cal = Calendar.getInstance(Locale.getDefault());
+                replaceDataSet.addReplacementObject("[NOW]", cal.getTime());
+                DatabaseConfig config = dbConn.getConfig();
+                config.setProperty(DatabaseConfig.PROPERTY_DATATYPE_FACTORY,
+                        new H2DataTypeFactory());
+                DatabaseOperation operation = DatabaseOperation.CLEAN_INSERT;
+                if (dsLocation != null && dsLocation.bulkLoad()) {
+                    operation = new BulkLoadOperation(dsLocation.batchSize(),
+                            dsLocation.csvThreshold());
+                }
+                operation.execute(dbConn, replaceDataSet);
+
+                if (reset != ResetMode.CLEAN_INSERT) {
+                    SNAPSHOTS.put(testClass, DatabaseSnapshot.take(dbConn.getConnection(),
+                            dataSet.getTableNames(), reset == ResetMode.DIRTY_TABLES));
+                }
+
+            } finally {
+                dbConn.close();
+            }
 
         } else {
-            LOGGER.info("{} does not have any data set, no data injection", testContext
-                    .getTestInstance().getClass().getName());
+            LOGGER.debug("{} does not have any data set, no data injection", testClass.getName());
+        }
+
+    }
+
+    /**
+     * @return 測試類別使用的 dataset 位置，同目錄有 <code>*-dataset.bin</code> 時優先使用；沒有 dataset 時為空字串。
+     */
+    String findDataSetLocation(TestContext testContext) throws IOException {
+        Class<?> testClass = testContext.getTestInstance().getClass();
+        // first, the annotation on the test class
+        DataSetLocation dsLocation = testClass.getAnnotation(DataSetLocation.class);
+        if (dsLocation != null && !dsLocation.value().isEmpty()) {
+            // found the annotation
+            LOGGER.info("annotated test, using data set: {}", dsLocation.value());
+            String binary = BinaryDataSetReader.binaryLocationOf(dsLocation.value());
+            ResourceLoader loader = testContext.getApplicationContext();
+            if (binary != null
+                    && isUsable(loader.getResource(binary),
+                            loader.getResource(dsLocation.value()))) {
+                LOGGER.info("detected binary dataset: {}", binary);
+                return binary;
+            }
+            return dsLocation.value();
+        }
+
+        // no annotation, let's try with the name of the test
+        String tempDsRes = testClass.getName();
+        tempDsRes = StringUtils.replace(tempDsRes, ".", "/");
+        tempDsRes = "/" + tempDsRes + "-dataset.xml";
+        String binary = BinaryDataSetReader.binaryLocationOf(tempDsRes);
+        URL binaryUrl = getClass().getResource(binary);
+        URL xml = getClass().getResource(tempDsRes);
+        if (binaryUrl != null
+                && isUsable(new UrlResource(binaryUrl), xml != null ? new UrlResource(xml)
+                        : null)) {
+            LOGGER.info("detected default binary dataset: {}", binary);
+            return binary;
+        }
+        if (xml != null) {
+            LOGGER.info("detected default dataset: {}", tempDsRes);
+            return tempDsRes;
         }
 
+        LOGGER.info("{} does not have any data set, no data injection", testClass.getName());
+        return "";
+    }
+
+    /**
+     * @return 是否以二進位 dataset 取代 XML；XML 在轉換之後被修改過時使用 XML。
+     */
+    private static boolean isUsable(Resource binary, Resource xml) throws IOException {
+        if (!binary.exists()) {
+            return false;
+        }
+        if (xml == null || !xml.exists() || BinaryDataSetReader.isUpToDate(binary, xml)) {
+            return true;
+        }
+        LOGGER.warn("{} is out of date, using {} instead.", binary.getDescription(),
+                xml.getDescription());
+        return false;
     }
 
     /**
@@ -103,6 +202,16 @@ public class CleanInsertTestExecutionListener implements TestExecutionListener {
      */
     @Override
     public void afterTestMethod(TestContext testContext) throws Exception {
+        DataSetLocation dsLocation = testContext.getTestClass().getAnnotation(
+                DataSetLocation.class);
+        DatabaseSnapshot snapshot = SNAPSHOTS.get(testContext.getTestClass());
+        if (dsLocation == null || dsLocation.reset() != ResetMode.DIRTY_TABLES
+                || snapshot == null) {
+            return;
+        }
+
+        LOGGER.info("{}.{} dirtied tables: {}", testContext.getTestClass().getSimpleName(),
+                testContext.getTestMethod().getName(), snapshot.getDirtyTables());
     }
 
     /**
@@ -110,5 +219,16 @@ public class CleanInsertTestExecutionListener implements TestExecutionListener {
      */
     @Override
     public void afterTestClass(TestContext testContext) throws Exception {
+        DatabaseSnapshot snapshot = SNAPSHOTS.remove(testContext.getTestClass());
+        if (snapshot != null) {
+            Connection connection = testContext.getApplicationContext()
+                    .getBean(DataSource.class).getConnection();
+            try {
+                snapshot.drop(connection);
+
+            } finally {
+                connection.close();
+            }
+        }
     }
 }
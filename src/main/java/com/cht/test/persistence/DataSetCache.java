@@ -0,0 +1,199 @@
+package com.cht.test.persistence;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.dbunit.dataset.DataSetException;
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.ITable;
+import org.dbunit.dataset.ITableIterator;
+import org.dbunit.dataset.xml.FlatXmlDataSetBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+/**
+ * 快取解析後的 FlatXML 或二進位({@link BinaryDataSetWriter}) {@link IDataSet}，同一個 dataset 在整個測試執行期間只解析一次。
+ * <p>
+ * 快取的 key 是 dataset 的位置與最後修改時間，檔案變更後會重新解析；總大小超過 {@link #MAX_BYTES_PROPERTY} 時淘汰最久沒有使用的
+ * dataset。無法取得最後修改時間的 {@link Resource} 不會快取。
+ * <p>
+ * 解析後的 {@link IDataSet} 比檔案大得多(特別是壓縮過的二進位 dataset)，所以大小不是以檔案計算，而是估計 heap 的用量：二進位 dataset
+ * 以 header 中未壓縮內容的長度估算，FlatXML 以每個值 {@value #ESTIMATED_VALUE_BYTES} bytes 乘上資料列數與欄位數估算。這只是估計值，
+ * 實際的用量依值的長度而不同。
+ * <p>
+ * 快取的 {@link IDataSet} 由多個測試共用，<code>[NULL]</code>、<code>[NOW]</code> 等取代值請在每次使用時以
+ * {@link org.dbunit.dataset.ReplacementDataSet ReplacementDataSet} 包裝。
+ *
+ * @author <a href="mailto:beta@cht.com.tw">黃培棠</a>
+ */
+final class DataSetCache {
+
+    /**
+     * 快取的 dataset 估計總大小上限(bytes)的 system property 名稱，0 表示不快取。
+     */
+    static final String MAX_BYTES_PROPERTY = "cht.test.dataSet.cacheMaxBytes";
+
+    private static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+    /**
+     * FlatXML 每個值在 heap 上的估計大小，包含 {@link String} 物件本身與內容。
+     */
+    private static final int ESTIMATED_VALUE_BYTES = 64;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DataSetCache.class);
+
+    private final Cache<Key, Entry> cache;
+
+    DataSetCache() {
+        this(maxBytes());
+    }
+
+    DataSetCache(long maxBytes) {
+        this.cache = CacheBuilder.newBuilder().maximumWeight(maxBytes)
+                .weigher(new Weigher<Key, Entry>() {
+
+                    @Override
+                    public int weigh(Key key, Entry value) {
+                        return (int) Math.max(1, Math.min(value.estimatedBytes,
+                                Integer.MAX_VALUE));
+                    }
+                }).build();
+    }
+
+    /**
+     * @return <code>resource</code> 解析後的 {@link IDataSet}，已經解析過且檔案沒有變更時直接回傳快取。
+     */
+    IDataSet get(final Resource resource) throws IOException, DataSetException {
+        long lastModified;
+        long contentLength;
+        try {
+            lastModified = resource.lastModified();
+            contentLength = resource.contentLength();
+
+        } catch (IOException e) {
+            LOGGER.debug("{} is not cacheable: {}", resource.getDescription(), e.toString());
+            return parse(resource).dataSet;
+        }
+
+        Key key = new Key(resource.getDescription(), lastModified, contentLength);
+        try {
+            return cache.get(key, new Callable<Entry>() {
+
+                @Override
+                public Entry call() throws Exception {
+                    LOGGER.info("parsing data set: {}", resource.getDescription());
+                    return parse(resource);
+                }
+            }).dataSet;
+
+        } catch (ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause(), IOException.class, DataSetException.class);
+            throw new DataSetException(e.getCause());
+        }
+    }
+
+    /**
+     * 清除所有快取的 dataset。
+     */
+    void clear() {
+        cache.invalidateAll();
+    }
+
+    private static Entry parse(Resource resource) throws IOException, DataSetException {
+        if (BinaryDataSetReader.isBinary(resource.getFilename())) {
+            return new Entry(BinaryDataSetReader.read(resource),
+                    BinaryDataSetReader.bodyLengthOf(resource));
+        }
+
+        InputStream in = resource.getInputStream();
+        IDataSet dataSet;
+        try {
+            // FlatXmlDataSet 會把內容全部讀進記憶體，可以重複使用
+            dataSet = new FlatXmlDataSetBuilder().build(in);
+
+        } finally {
+            in.close();
+        }
+
+        long values = 0;
+        for (ITableIterator iterator = dataSet.iterator(); iterator.next();) {
+            ITable table = iterator.getTable();
+            values += (long) table.getRowCount() * table.getTableMetaData().getColumns().length;
+        }
+        return new Entry(dataSet, values * ESTIMATED_VALUE_BYTES);
+    }
+
+    private static long maxBytes() {
+        String value = System.getProperty(MAX_BYTES_PROPERTY);
+        if (value != null) {
+            try {
+                long maxBytes = Long.parseLong(value.trim());
+                if (maxBytes >= 0) {
+                    return maxBytes;
+                }
+            } catch (NumberFormatException e) {
+                // 使用預設值
+            }
+            LOGGER.warn("Illegal {}: \"{}\", use {} instead.", MAX_BYTES_PROPERTY, value,
+                    DEFAULT_MAX_BYTES);
+        }
+        return DEFAULT_MAX_BYTES;
+    }
+
+    /**
+     * 解析後的 dataset 與估計的 heap 用量，用來作為 {@link Weigher} 的權重。
+     */
+    private static final class Entry {
+
+        private final IDataSet dataSet;
+
+        private final long estimatedBytes;
+
+        Entry(IDataSet dataSet, long estimatedBytes) {
+            this.dataSet = dataSet;
+            this.estimatedBytes = estimatedBytes;
+        }
+    }
+
+    /**
+     * dataset 的位置與版本。
+     */
+    private static final class Key {
+
+        private final String location;
+
+        private final long lastModified;
+
+        private final long contentLength;
+
+        Key(String location, long lastModified, long contentLength) {
+            this.location = location;
+            this.lastModified = lastModified;
+            this.contentLength = contentLength;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return location.equals(other.location) && lastModified == other.lastModified
+                    && contentLength == other.contentLength;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(location, lastModified, contentLength);
+        }
+    }
+}
@@ -8,6 +8,8 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
 /**
+ * 指定測試類別使用的 DbUnit dataset 與資料庫的恢復方式。
+ *
  * @author acogoluegnes
  * @see <a href=
  *      "http://blog.zenika.com/index.php?post/2010/02/05/Testing-SQL-queries-with-Spring-and-DbUnit%2C-part-2"
@@ -19,5 +21,29 @@ import java.lang.annotation.Target;
 @Documented
 public @interface DataSetLocation {
 
-    public String value();
+    /**
+     * @return dataset 的位置；空字串表示依測試類別名稱尋找同目錄的 <code>*-dataset.xml</code>。
+     */
+    public String value() default "";
+
+    /**
+     * @return 每個測試方法執行前恢復資料庫的方式，資料量大的測試類別可以使用 {@link ResetMode#SNAPSHOT}。
+     */
+    public ResetMode reset() default ResetMode.CLEAN_INSERT;
+
+    /**
+     * @return 是否以 {@link BulkLoadOperation} 取代 DbUnit 逐筆新增 dataset 的資料，資料量大時可以大幅縮短載入時間。
+     */
+    public boolean bulkLoad() default false;
+
+    /**
+     * @return {@link #bulkLoad()} 時每次送出的 JDBC batch 大小。
+     */
+    public int batchSize() default BulkLoadOperation.DEFAULT_BATCH_SIZE;
+
+    /**
+     * @return {@link #bulkLoad()} 時，資料列數量達到多少的資料表改以 H2 的 <code>CSVREAD</code> 新增，0 表示不使用
+     *         <code>CSVREAD</code>。
+     */
+    public int csvThreshold() default 100000;
 }
@@ -0,0 +1,365 @@
+package com.cht.test.persistence;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link ResetMode#SNAPSHOT} 與 {@link ResetMode#DIRTY_TABLES} 使用的 snapshot，把 dataset 裡的資料表複製到獨立的 schema，每個測試類別
+ * 各自使用一個 schema，名稱為 <code>CHT_SNAPSHOT_&lt;UUID&gt;</code>。
+ * <p>
+ * 追蹤異動時，會在每個資料表建立 {@link DirtyTableTrigger}，把異動的資料表記錄在 JVM 的記憶體中，不會在測試的交易中寫入資料庫，
+ * 也就不會與測試互相鎖定；之後 rollback 的異動仍然會被當作異動過，多恢復一次而已。trigger 只有在同一個 JVM 的 H2(例如 in-memory
+ * database)才能記錄，建立 snapshot 時會先確認，無法記錄時每次都恢復所有資料表。
+ * <p>
+ * H2 的 <code>TRUNCATE TABLE</code> 不會觸發 trigger，恢復前會比對沒有異動紀錄的資料表的資料筆數，筆數與 snapshot 不同時也一併恢復。
+ *
+ * @author <a href="mailto:beta@cht.com.tw">黃培棠</a>
+ */
+final class DatabaseSnapshot {
+
+    static final String SCHEMA_PREFIX = "CHT_SNAPSHOT_";
+
+    static final String TRIGGER_PREFIX = "CHT_DIRTY_";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseSnapshot.class);
+
+    /**
+     * 每個追蹤中的 snapshot 異動過的資料表，由 {@link DirtyTableTrigger} 記錄；BitSet 存取時需要 synchronized。
+     */
+    private static final ConcurrentMap<String, BitSet> DIRTY = new ConcurrentHashMap<String, BitSet>();
+
+    /**
+     * snapshot 的 schema 與 trigger 名稱中的識別碼，以 UUID 產生，不會與其他 JVM 或之前遺留在資料庫的 snapshot 重複。
+     */
+    private final String id;
+
+    private final String schema;
+
+    private final String[] tableNames;
+
+    private final boolean tracking;
+
+    /**
+     * trigger 是否確實可以記錄異動。
+     */
+    private boolean tracked;
+
+    /**
+     * 每個資料表被 dataset 裡哪些資料表(包含間接)以 foreign key 參照。
+     */
+    private final BitSet[] referencedBy;
+
+    /**
+     * 每個資料表在 snapshot 中的資料筆數。
+     */
+    private final long[] rowCounts;
+
+    private DatabaseSnapshot(String[] tableNames, boolean tracking) {
+        this.id = UUID.randomUUID().toString().replace("-", "").toUpperCase();
+        this.schema = SCHEMA_PREFIX + id;
+        this.tableNames = tableNames;
+        this.tracking = tracking;
+        this.referencedBy = new BitSet[tableNames.length];
+        this.rowCounts = new long[tableNames.length];
+    }
+
+    /**
+     * 把 <code>tableNames</code> 目前的資料複製到新的 snapshot。
+     *
+     * @param tableNames
+     *            依 dataset 順序排列的資料表名稱，恢復時依此順序新增、反向順序刪除，與 <code>CLEAN_INSERT</code> 相同。
+     * @param tracking
+     *            是否追蹤異動的資料表，請參考 {@link #restoreDirtyTables(Connection)}。
+     */
+    static DatabaseSnapshot take(Connection connection, String[] tableNames, boolean tracking)
+            throws SQLException {
+        DatabaseSnapshot snapshot = new DatabaseSnapshot(tableNames.clone(), tracking);
+        Statement statement = connection.createStatement();
+        try {
+            statement.execute("CREATE SCHEMA " + snapshot.schema);
+            for (int i = 0; i < tableNames.length; i++) {
+                statement.execute("CREATE TABLE " + snapshot.copyOf(tableNames[i])
+                        + " AS SELECT * FROM " + tableNames[i]);
+                snapshot.rowCounts[i] = countRows(statement, snapshot.copyOf(tableNames[i]));
+            }
+
+            if (tracking) {
+                DIRTY.put(snapshot.id, new BitSet());
+                for (int i = 0; i < tableNames.length; i++) {
+                    statement.execute("CREATE TRIGGER " + snapshot.triggerOf(i)
+                            + " AFTER INSERT, UPDATE, DELETE ON " + tableNames[i]
+                            + " FOR EACH STATEMENT CALL \"" + DirtyTableTrigger.class.getName()
+                            + "\"");
+                }
+                snapshot.findReferences(connection.getMetaData());
+                snapshot.tracked = tableNames.length == 0 || snapshot.verifyTracking(statement);
+            }
+
+        } finally {
+            statement.close();
+        }
+        LOGGER.debug("took snapshot {} of {} tables", snapshot.schema, tableNames.length);
+        return snapshot;
+    }
+
+    /**
+     * 把所有資料表恢復成 snapshot 的內容。
+     */
+    void restore(Connection connection) throws SQLException {
+        restore(connection, all());
+    }
+
+    /**
+     * 由 {@link DirtyTableTrigger} 呼叫，記錄 <code>id</code> 的 snapshot 中第 <code>tableIndex</code> 個資料表被異動過。
+     */
+    static void markDirty(String id, int tableIndex) {
+        BitSet dirty = DIRTY.get(id);
+        if (dirty != null) {
+            synchronized (dirty) {
+                dirty.set(tableIndex);
+            }
+        }
+    }
+
+    /**
+     * @return 在上次恢復之後 trigger 記錄到異動的資料表(包含 rollback 的異動)，依 dataset 的順序排列。
+     */
+    List<String> getDirtyTables() {
+        return namesOf(tracked ? dirtyTables() : all());
+    }
+
+    /**
+     * 只把異動過的資料表，以及以 foreign key 參照到這些資料表的資料表恢復成 snapshot 的內容。
+     *
+     * @return 恢復的資料表，依 dataset 的順序排列。
+     */
+    List<String> restoreDirtyTables(Connection connection) throws SQLException {
+        BitSet dirty = tracked ? findDirtyTables(connection) : all();
+        BitSet restoring = new BitSet();
+        for (int i = dirty.nextSetBit(0); i >= 0; i = dirty.nextSetBit(i + 1)) {
+            // 參照的資料表也要先刪除，否則刪除被參照的資料會違反 foreign key
+            restoring.set(i);
+            restoring.or(referencedBy[i]);
+        }
+        restore(connection, restoring);
+        return namesOf(restoring);
+    }
+
+    /**
+     * @return snapshot 的 schema 是否還在資料庫中；例如 <code>@DirtiesContext</code> 重建 embedded database 之後就不存在了。
+     */
+    boolean exists(Connection connection) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(
+                "SELECT COUNT(*) FROM INFORMATION_SCHEMA.SCHEMATA WHERE SCHEMA_NAME = ?");
+        try {
+            statement.setString(1, schema);
+            ResultSet resultSet = statement.executeQuery();
+            try {
+                resultSet.next();
+                return resultSet.getLong(1) > 0;
+
+            } finally {
+                resultSet.close();
+            }
+
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * 捨棄已經不在資料庫中的 snapshot，只清除記憶體中的異動紀錄。
+     */
+    void discard() {
+        DIRTY.remove(id);
+    }
+
+    /**
+     * 刪除 snapshot。
+     */
+    void drop(Connection connection) throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            if (tracking) {
+                for (int i = 0; i < tableNames.length; i++) {
+                    statement.execute("DROP TRIGGER IF EXISTS " + triggerOf(i));
+                }
+                DIRTY.remove(id);
+            }
+            for (String tableName : tableNames) {
+                statement.execute("DROP TABLE IF EXISTS " + copyOf(tableName));
+            }
+            statement.execute("DROP SCHEMA IF EXISTS " + schema);
+
+        } finally {
+            statement.close();
+        }
+    }
+
+    private void restore(Connection connection, BitSet tables) throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            for (int i = tables.length() - 1; i >= 0; i--) {
+                if (tables.get(i)) {
+                    statement.execute("DELETE FROM " + tableNames[i]);
+                }
+            }
+            for (int i = tables.nextSetBit(0); i >= 0; i = tables.nextSetBit(i + 1)) {
+                statement.execute("INSERT INTO " + tableNames[i] + " SELECT * FROM "
+                        + copyOf(tableNames[i]));
+            }
+            if (tracking) {
+                // 恢復時的異動也會被記錄
+                clearDirtyTables();
+            }
+
+        } finally {
+            statement.close();
+        }
+    }
+
+    private BitSet findDirtyTables(Connection connection) throws SQLException {
+        BitSet dirty = dirtyTables();
+        Statement statement = connection.createStatement();
+        try {
+            // TRUNCATE TABLE 不會觸發 trigger
+            for (int i = dirty.nextClearBit(0); i < tableNames.length; i = dirty
+                    .nextClearBit(i + 1)) {
+                if (countRows(statement, tableNames[i]) != rowCounts[i]) {
+                    dirty.set(i);
+                }
+            }
+
+        } finally {
+            statement.close();
+        }
+        return dirty;
+    }
+
+    /**
+     * 以不會異動資料的 <code>DELETE</code> 確認 trigger 可以記錄到這個 JVM。
+     */
+    private boolean verifyTracking(Statement statement) throws SQLException {
+        statement.execute("DELETE FROM " + tableNames[0] + " WHERE 1 = 0");
+        boolean fired = dirtyTables().get(0);
+        clearDirtyTables();
+        if (!fired) {
+            LOGGER.warn("Triggers of {} are not fired in this JVM, all tables will be restored.",
+                    schema);
+        }
+        return fired;
+    }
+
+    private BitSet dirtyTables() {
+        BitSet dirty = DIRTY.get(id);
+        synchronized (dirty) {
+            return (BitSet) dirty.clone();
+        }
+    }
+
+    private void clearDirtyTables() {
+        BitSet dirty = DIRTY.get(id);
+        synchronized (dirty) {
+            dirty.clear();
+        }
+    }
+
+    private static long countRows(Statement statement, String tableName) throws SQLException {
+        ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM " + tableName);
+        try {
+            resultSet.next();
+            return resultSet.getLong(1);
+
+        } finally {
+            resultSet.close();
+        }
+    }
+
+    private void findReferences(DatabaseMetaData metaData) throws SQLException {
+        BitSet[] direct = new BitSet[tableNames.length];
+        for (int i = 0; i < tableNames.length; i++) {
+            direct[i] = new BitSet();
+            String tableName = tableNames[i];
+            int dot = tableName.lastIndexOf('.');
+            ResultSet resultSet = metaData.getExportedKeys(null, dot < 0 ? null : tableName
+                    .substring(0, dot).toUpperCase(), tableName.substring(dot + 1).toUpperCase());
+            try {
+                while (resultSet.next()) {
+                    int index = indexOf(resultSet.getString("FKTABLE_NAME"));
+                    if (index >= 0 && index != i) {
+                        direct[i].set(index);
+                    }
+                }
+
+            } finally {
+                resultSet.close();
+            }
+        }
+
+        // 間接參照的資料表也要一起恢復
+        for (int i = 0; i < tableNames.length; i++) {
+            BitSet closure = new BitSet();
+            BitSet pending = (BitSet) direct[i].clone();
+            while (!pending.isEmpty()) {
+                int next = pending.nextSetBit(0);
+                pending.clear(next);
+                if (!closure.get(next)) {
+                    closure.set(next);
+                    pending.or(direct[next]);
+                }
+            }
+            closure.clear(i);
+            referencedBy[i] = closure;
+        }
+    }
+
+    private int indexOf(String tableName) {
+        for (int i = 0; i < tableNames.length; i++) {
+            String name = tableNames[i].substring(tableNames[i].lastIndexOf('.') + 1);
+            if (name.equalsIgnoreCase(tableName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private BitSet all() {
+        BitSet all = new BitSet();
+        all.set(0, tableNames.length);
+        return all;
+    }
+
+    private List<String> namesOf(BitSet tables) {
+        List<String> names = new ArrayList<String>();
+        for (int i = tables.nextSetBit(0); i >= 0; i = tables.nextSetBit(i + 1)) {
+            names.add(tableNames[i]);
+        }
+        return names;
+    }
+
+    private String copyOf(String tableName) {
+        // dataset 裡的資料表名稱可能包含 schema
+        return schema + "." + tableName.replace('.', '_');
+    }
+
+    private String triggerOf(int index) {
+        // trigger 必須與資料表在同一個 schema；DirtyTableTrigger 由名稱得知 snapshot 與資料表
+        String tableName = tableNames[index];
+        int dot = tableName.lastIndexOf('.');
+        return (dot < 0 ? "" : tableName.substring(0, dot + 1)) + TRIGGER_PREFIX + id + "_"
+                + index;
+    }
+}
@@ -0,0 +1,54 @@
+package com.cht.test.persistence;
+
+import java.sql.Connection;
+
+import org.h2.api.Trigger;
+
+/**
+ * {@link ResetMode#DIRTY_TABLES} 在 dataset 的每個資料表建立的 H2 trigger，在資料表異動時記錄到 JVM 記憶體中的
+ * {@link DatabaseSnapshot}；只供 H2 建立 trigger 使用。
+ * <p>
+ * trigger 名稱的格式為 <code>CHT_DIRTY_&lt;snapshot 識別碼&gt;_&lt;資料表在 dataset 的順序&gt;</code>。記錄時不會存取資料庫，不會在測試的
+ * 交易中鎖定任何資料。
+ *
+ * @author <a href="mailto:beta@cht.com.tw">黃培棠</a>
+ */
+public final class DirtyTableTrigger implements Trigger {
+
+    private String snapshotId;
+
+    private int tableIndex;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void init(Connection conn, String schemaName, String triggerName, String tableName,
+            boolean before, int type) {
+        String[] ids = triggerName.substring(DatabaseSnapshot.TRIGGER_PREFIX.length()).split("_");
+        snapshotId = ids[0];
+        tableIndex = Integer.parseInt(ids[1]);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void fire(Connection conn, Object[] oldRow, Object[] newRow) {
+        DatabaseSnapshot.markDirty(snapshotId, tableIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void remove() {
+    }
+}
@@ -0,0 +1,34 @@
+package com.cht.test.persistence;
+
+/**
+ * 每個測試方法執行前，把資料庫恢復成 dataset 內容的方式。
+ *
+ * @author <a href="mailto:beta@cht.com.tw">黃培棠</a>
+ * @see DataSetLocation#reset()
+ */
+public enum ResetMode {
+
+    /**
+     * 每個測試方法都以 DbUnit 的 <code>CLEAN_INSERT</code> 刪除 dataset 裡所有資料表的資料，再逐筆新增 dataset 的資料。
+     */
+    CLEAN_INSERT,
+
+    /**
+     * 只在測試類別的第一個測試方法執行 <code>CLEAN_INSERT</code>，並把 dataset 裡的資料表複製到另一個 schema 作為 snapshot；之後的測試方法
+     * 直接在資料庫裡以 <code>DELETE</code> 與 <code>INSERT ... SELECT</code> 從 snapshot 恢復，適合資料量大的測試類別。
+     * <p>
+     * 因為資料只載入一次，<code>[NOW]</code> 在整個測試類別都是第一個測試方法開始時的時間。
+     * 資料庫在測試類別執行期間被重建時(例如 method 層級的 <code>@DirtiesContext</code>)，會重新執行 <code>CLEAN_INSERT</code> 並建立
+     * snapshot。
+     */
+    SNAPSHOT,
+
+    /**
+     * 與 {@link #SNAPSHOT} 相同，但以 H2 trigger 記錄測試方法異動過的資料表，下一個測試方法執行前只恢復這些資料表，以及以 foreign key
+     * 參照到它們的資料表，適合資料表多、每個測試只異動少數資料表的測試類別。
+     * <p>
+     * 每個測試方法異動過的資料表(包含之後 rollback 的異動)會以 INFO 等級記錄在 log。trigger 只能在與測試同一個 JVM 的 H2 記錄異動，
+     * 否則每次都會恢復所有資料表；<code>TRUNCATE TABLE</code> 不會觸發 trigger，以資料筆數是否與 snapshot 相同判斷。
+     */
+    DIRTY_TABLES
+}
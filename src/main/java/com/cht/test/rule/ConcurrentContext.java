@@ -0,0 +1,220 @@
+package com.cht.test.rule;
+
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Phaser;
+
+/**
+ * {@link com.cht.test.annotation.Concurrent Concurrent} 測試中，每個 Thread 的執行資訊與協調工具，在測試內容中以
+ * {@link #current()} 取得。
+ * <p>
+ * 同一次測試的所有 Thread 共用同一個 {@link Phaser}、{@link CyclicBarrier} 與 {@link #getSharedState() 共用狀態}，可以讓所有
+ * Thread 在測試內容的多個地方會合，增加交錯執行的機會，例如:
+ *
+ * <pre>
+ * &#064;Test
+ * &#064;Concurrent(8)
+ * public void readThenWrite() throws InterruptedException {
+ *     ConcurrentContext context = ConcurrentContext.current();
+ *     int value = account.getBalance();
+ *     context.awaitPhase(); // 所有 Thread 都讀完
+ *     account.setBalance(value + context.getIndex());
+ *     context.awaitPhase(); // 所有 Thread 都寫完
+ *     ...
+ * }
+ * </pre>
+ *
+ * Thread 的工作結束(包括失敗)時會自動離開 {@link Phaser}，所以不會讓其他 Thread 一直等待；{@link CyclicBarrier} 則需要所有
+ * Thread 呼叫相同的次數。測試失敗而取消其他 Thread 時，等待中的 Thread 會被 interrupt。
+ * <p>
+ * 請注意執行測試的 {@link java.util.concurrent.ExecutorService ExecutorService} 無法同時執行所有 Thread 時(例如
+ * {@link ExecutorStrategies#using(java.util.concurrent.ExecutorService)} 提供的 Thread pool 小於同步等級，或是其中的 Thread
+ * 正被其他工作佔用)，超過的 Thread 要等前面的結束才會開始，使用 {@link Phaser} 或 {@link CyclicBarrier} 會互相等待，因此會直接丟出
+ * {@link IllegalStateException}。同時執行的 Thread 數量依測試開始時 {@link ExecutorStrategy} 實際保留或閒置的 Thread 計算；
+ * {@link ExecutorStrategies#shared()} 與 {@link ExecutorStrategies#pooled(int, java.util.concurrent.ThreadFactory) pooled}
+ * 保留不到足夠的 Thread 時會改用專屬的 Thread pool，所以不會有這個問題。
+ *
+ * @author <a href="mailto:beta@cht.com.tw">黃培棠</a>
+ */
+public final class ConcurrentContext {
+
+    /**
+     * {@link Phaser} 最多可以註冊的 Thread 數量。
+     */
+    private static final int MAX_PHASER_PARTIES = 65535;
+
+    private static final ThreadLocal<ConcurrentContext> CURRENT = new ThreadLocal<ConcurrentContext>();
+
+    private final int index;
+
+    private final Shared shared;
+
+    private long iteration;
+
+    private ConcurrentContext(int index, Shared shared) {
+        this.index = index;
+        this.shared = shared;
+    }
+
+    /**
+     * @return 目前 Thread 的 {@code ConcurrentContext}。
+     * @throws IllegalStateException
+     *             表示目前的 Thread 不是在執行 {@link com.cht.test.annotation.Concurrent Concurrent} 測試。
+     */
+    public static ConcurrentContext current() {
+        ConcurrentContext context = CURRENT.get();
+        if (context == null) {
+            throw new IllegalStateException("Not running in a @Concurrent test.");
+        }
+        return context;
+    }
+
+    /**
+     * 建立同一次測試所有 Thread 共用的部分。
+     */
+    static Shared share(int concurrency, int capacity) {
+        return new Shared(concurrency, capacity);
+    }
+
+    /**
+     * 讓目前的 Thread 以第 <code>index</code> 個 Thread 的身分執行。
+     */
+    static ConcurrentContext open(int index, Shared shared) {
+        ConcurrentContext context = new ConcurrentContext(index, shared);
+        CURRENT.set(context);
+        return context;
+    }
+
+    /**
+     * 結束目前 Thread 的工作，並離開 {@link Phaser}。
+     */
+    void close() {
+        CURRENT.remove();
+        if (shared.phaser != null) {
+            shared.phaser.arriveAndDeregister();
+        }
+    }
+
+    void nextIteration() {
+        iteration++;
+    }
+
+    /**
+     * @return 目前 Thread 的序號，由 0 開始。
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return 同步等級。
+     */
+    public int getConcurrency() {
+        return shared.concurrency;
+    }
+
+    /**
+     * @return 目前 Thread 已經執行完畢的次數(包含暖機)，第一次執行時為 0。
+     */
+    public long getIteration() {
+        return iteration;
+    }
+
+    /**
+     * @return 所有 Thread 共用的 {@link Phaser}，每個 Thread 開始時都已經註冊。
+     * @throws IllegalStateException
+     *             表示同步等級超過 {@value #MAX_PHASER_PARTIES}，或是無法同時執行所有 Thread。
+     */
+    public Phaser getPhaser() {
+        checkCapacity();
+        if (shared.phaser == null) {
+            throw new IllegalStateException("Phaser supports at most " + MAX_PHASER_PARTIES
+                    + " threads.");
+        }
+        return shared.phaser;
+    }
+
+    /**
+     * @return 所有 Thread 共用的 {@link CyclicBarrier}，parties 為同步等級。
+     * @throws IllegalStateException
+     *             表示無法同時執行所有 Thread。
+     */
+    public CyclicBarrier getBarrier() {
+        checkCapacity();
+        return shared.barrier;
+    }
+
+    /**
+     * 等待所有還在執行的 Thread 都到達這裡。
+     *
+     * @return 下一個 phase 的編號。
+     * @throws InterruptedException
+     *             表示測試被取消。
+     */
+    public int awaitPhase() throws InterruptedException {
+        Phaser phaser = getPhaser();
+        return phaser.awaitAdvanceInterruptibly(phaser.arrive());
+    }
+
+    /**
+     * 以 {@link CyclicBarrier} 等待所有 Thread 都到達這裡。
+     *
+     * @return 到達的順序，<code>getConcurrency() - 1</code> 表示第一個到達，0 表示最後一個。
+     * @throws InterruptedException
+     *             表示測試被取消。
+     * @throws BrokenBarrierException
+     *             表示其他 Thread 在等待時被取消。
+     */
+    public int awaitBarrier() throws InterruptedException, BrokenBarrierException {
+        return getBarrier().await();
+    }
+
+    /**
+     * @return 同一次測試所有 Thread 共用的狀態，測試結束後就會丟棄。
+     */
+    public ConcurrentMap<String, Object> getSharedState() {
+        return shared.state;
+    }
+
+    private void checkCapacity() {
+        if (shared.capacity < shared.concurrency) {
+            throw new IllegalStateException("The executor runs at most " + shared.capacity
+                    + " of " + shared.concurrency + " threads at once, threads waiting for each "
+                    + "other would never proceed. Use ExecutorStrategies.perTest() instead.");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrentContext[" + index + "/" + shared.concurrency + ", iteration="
+                + iteration + "]";
+    }
+
+    /**
+     * 同一次測試所有 Thread 共用的部分。
+     */
+    static final class Shared {
+
+        private final int concurrency;
+
+        /**
+         * 執行測試的 {@link java.util.concurrent.ExecutorService ExecutorService} 最多可以同時執行的 Thread 數量。
+         */
+        private final int capacity;
+
+        private final Phaser phaser;
+
+        private final CyclicBarrier barrier;
+
+        private final ConcurrentMap<String, Object> state = new ConcurrentHashMap<String, Object>();
+
+        Shared(int concurrency, int capacity) {
+            this.concurrency = concurrency;
+            this.capacity = capacity;
+            this.phaser = concurrency > MAX_PHASER_PARTIES ? null : new Phaser(concurrency);
+            this.barrier = new CyclicBarrier(concurrency);
+        }
+    }
+}
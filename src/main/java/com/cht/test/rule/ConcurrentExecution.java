@@ -0,0 +1,835 @@
+package com.cht.test.rule;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * 以多個 Thread 同時執行同一個測試的引擎，{@link ConcurrentRule} 只負責把 JUnit 的 Statement 接到這裡。
+ * <p>
+ * 所有工作會先在 {@link CountDownLatch} 前等待，全部送出後才同時開始；工作中可以由 {@link ConcurrentContext} 取得序號並與其他工作
+ * 會合。任一工作失敗時預設會取消(interrupt)其他工作；超過時限時會記錄所有工作的 stack trace 並取消其他工作。最後丟出第一個例外，
+ * 其他工作的例外則加到 suppressed 中。
+ * <p>
+ * 開啟 {@link #diagnostics()} 時，會以 {@link ThreadMonitor} 收集工作 Thread 的 lock 競爭、CPU 與記憶體配置，並且每
+ * {@value #DEADLOCK_CHECK_MILLIS} ms 檢查一次 deadlock，發生時取消所有工作並以 deadlock 的說明讓測試失敗。
+ * 測試結束後會依 {@link ThreadLeakPolicy} 檢查測試過程中建立、但還沒結束的 Thread；以 virtual thread 執行時也可以檢查是否有
+ * pin 住 carrier thread 的情形。
+ * <p>
+ * 每個工作的執行時間會記錄在 {@link LatencyHistogram}，為了減少競爭，工作依序分配到最多 {@value #MAX_RECORDERS} 個
+ * {@link LatencyHistogram.Recorder}，結束時合併成 {@link ConcurrentResult}。
+ * <p>
+ * 每個工作可以重複執行固定次數或固定時間；開始前可以先暖機(不列入記錄)，也可以在 ramp-up 時間內依序錯開每個工作的開始時間。
+ * <p>
+ * 指定 {@link #rate(double)} 時改為 open-loop: 第 k 次呼叫預定在 <code>k / rate</code> 秒時開始，由閒置的工作領取並等到預定時間才執行；
+ * 所有工作都在忙時，呼叫會延後開始，延遲時間由預定時間開始計算，才不會漏掉排隊的時間(coordinated omission)。
+ *
+ * @author <a href="mailto:beta@cht.com.tw">黃培棠</a>
+ */
+final class ConcurrentExecution {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConcurrentExecution.class);
+
+    /**
+     * 檢查 Thread 洩漏前，等待測試建立的 Thread 自行結束的時間。
+     */
+    private static final long LEAK_GRACE_MILLIS = 100;
+
+    private static final int LEAK_STACK_DEPTH = 5;
+
+    private static final int MAX_RECORDERS = 64;
+
+    /**
+     * 取消工作後，等待執行中的工作結束的時間。
+     */
+    private static final long CANCEL_GRACE_MILLIS = 1000;
+
+    /**
+     * 等待 open-loop 呼叫的預定時間時，最後這段時間以 {@link Thread#yield()} 等待，避免 park 的誤差。
+     */
+    private static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private static final long DEADLOCK_CHECK_MILLIS = 500;
+
+    /**
+     * 要同時執行的工作。
+     */
+    interface Task {
+
+        void run() throws Throwable;
+    }
+
+    private final String name;
+
+    private final int concurrency;
+
+    private final ExecutorStrategy executorStrategy;
+
+    private final ThreadLeakPolicy leakPolicy;
+
+    private boolean monitorPinning;
+
+    private boolean failOnPinning;
+
+    private double maxP99Millis;
+
+    private int iterations = 1;
+
+    private long durationNanos;
+
+    private int warmupIterations;
+
+    private long warmupNanos;
+
+    private long rampUpNanos;
+
+    private boolean failFast = true;
+
+    private long timeoutNanos;
+
+    private double rate;
+
+    private boolean diagnostics;
+
+    /**
+     * 收集 Thread 統計資料與檢查 deadlock，沒有開啟 {@link #diagnostics()} 時為 <code>null</code>。
+     */
+    private ThreadMonitor monitor;
+
+    /**
+     * open-loop 的呼叫排程，closed-loop 時為 <code>null</code>。
+     */
+    private Schedule schedule;
+
+    /**
+     * 所有工作開始的時間，在 {@link CountDownLatch} 放行前設定。
+     */
+    private long origin;
+
+    /**
+     * 工作已經被取消，重複執行的工作要停止，之後的例外也不算是失敗。
+     */
+    private volatile boolean cancelled;
+
+    private final List<ConcurrentResultListener> listeners = new ArrayList<ConcurrentResultListener>();
+
+    private ConcurrentResult result;
+
+    ConcurrentExecution(String name, int concurrency, ExecutorStrategy executorStrategy,
+            ThreadLeakPolicy leakPolicy) {
+        this.name = name;
+        this.concurrency = concurrency;
+        this.executorStrategy = executorStrategy;
+        this.leakPolicy = leakPolicy;
+    }
+
+    /**
+     * 記錄 virtual thread pin 住 carrier thread 的情形。
+     *
+     * @param fail
+     *            發生時是否讓測試失敗，否則只記錄 warning log。
+     * @return 自己。
+     */
+    ConcurrentExecution monitorPinning(boolean fail) {
+        this.monitorPinning = true;
+        this.failOnPinning = fail;
+        return this;
+    }
+
+    /**
+     * 每個工作重複執行 <code>task</code> 的次數或時間。
+     *
+     * @param iterations
+     *            執行次數。
+     * @param durationMillis
+     *            執行時間(ms)，大於 0 時忽略 <code>iterations</code>，由每個工作暖機結束時開始計算。
+     * @return 自己。
+     */
+    ConcurrentExecution load(int iterations, long durationMillis) {
+        Assert.isTrue(iterations > 0, "\"iterations\" must be positive.");
+        Assert.isTrue(durationMillis >= 0, "\"durationMillis\" must not be negative.");
+        this.iterations = iterations;
+        this.durationNanos = TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        return this;
+    }
+
+    /**
+     * 每個工作在記錄前先執行 <code>task</code> 至少 <code>iterations</code> 次並且至少 <code>millis</code> ms。
+     *
+     * @return 自己。
+     */
+    ConcurrentExecution warmup(int iterations, long millis) {
+        Assert.isTrue(iterations >= 0, "\"warmupIterations\" must not be negative.");
+        Assert.isTrue(millis >= 0, "\"warmupMillis\" must not be negative.");
+        this.warmupIterations = iterations;
+        this.warmupNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+        return this;
+    }
+
+    /**
+     * 在 <code>millis</code> ms 內平均錯開每個工作的開始時間，第 i 個工作在 <code>i * millis / concurrency</code> ms 後開始。
+     *
+     * @return 自己。
+     */
+    ConcurrentExecution rampUp(long millis) {
+        Assert.isTrue(millis >= 0, "\"rampUpMillis\" must not be negative.");
+        Assert.isTrue(millis == 0 || rate == 0,
+                "\"rampUpMillis\" is not supported with \"ratePerSecond\".");
+        this.rampUpNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+        return this;
+    }
+
+    /**
+     * 改為 open-loop，以固定的速率呼叫 <code>task</code>，<code>concurrency</code> 個工作只是執行呼叫的 Thread。呼叫的總次數為
+     * <code>rate * durationMillis / 1000</code>，沒有指定執行時間時為 <code>concurrency * iterations</code>；暖機的呼叫則排在最前面。
+     *
+     * @param rate
+     *            每秒呼叫次數，0 表示 closed-loop。
+     * @return 自己。
+     */
+    ConcurrentExecution rate(double rate) {
+        Assert.isTrue(rate >= 0, "\"ratePerSecond\" must not be negative.");
+        Assert.isTrue(rate == 0 || rampUpNanos == 0,
+                "\"rampUpMillis\" is not supported with \"ratePerSecond\".");
+        this.rate = rate;
+        return this;
+    }
+
+    /**
+     * 收集工作 Thread 的 {@link ThreadStatistics}，並在執行期間檢查 deadlock。
+     *
+     * @return 自己。
+     */
+    ConcurrentExecution diagnostics() {
+        this.diagnostics = true;
+        return this;
+    }
+
+    /**
+     * @param failFast
+     *            任一工作失敗時是否取消其他工作，預設為 <code>true</code>。
+     * @return 自己。
+     */
+    ConcurrentExecution failFast(boolean failFast) {
+        this.failFast = failFast;
+        return this;
+    }
+
+    /**
+     * 所有工作必須在 <code>millis</code> ms 內結束，否則記錄執行中工作的 stack trace，取消所有工作並丟出 {@link AssertionError}。
+     *
+     * @param millis
+     *            時限(ms)，0 表示沒有時限。
+     * @return 自己。
+     */
+    ConcurrentExecution timeout(long millis) {
+        Assert.isTrue(millis >= 0, "\"timeoutMillis\" must not be negative.");
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+        return this;
+    }
+
+    /**
+     * 檢查延遲時間的第 99 百分位數。
+     *
+     * @param maxP99Millis
+     *            p99 的上限(ms)，小於或等於 0 時不檢查。
+     * @return 自己。
+     */
+    ConcurrentExecution maxP99Millis(double maxP99Millis) {
+        this.maxP99Millis = maxP99Millis;
+        return this;
+    }
+
+    /**
+     * 所有工作結束後，把 {@link ConcurrentResult} 交給 <code>listener</code>。
+     *
+     * @return 自己。
+     */
+    ConcurrentExecution listener(ConcurrentResultListener listener) {
+        listeners.add(listener);
+        return this;
+    }
+
+    /**
+     * 同時以 <code>concurrency</code> 個工作執行 <code>task</code>，並等待所有工作結束。
+     *
+     * @return 執行結果。
+     * @throws Throwable
+     *             第一個失敗的工作丟出的例外(其他例外在 suppressed 中)，或是逾時、p99 超過上限、Thread 洩漏時的
+     *             {@link AssertionError}。
+     */
+    ConcurrentResult execute(final Task task) throws Throwable {
+        // 先取得 ExecutorService，無法取得時(例如不支援 virtual thread)不會留下開始記錄的 JFR
+        ExecutorService executor = executorStrategy.acquire(name, concurrency);
+        Set<Thread> workers = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+
+        Throwable throwable;
+        boolean released;
+        Set<Thread> before = null;
+        VirtualThreads.PinningMonitor pinningMonitor = null;
+        List<String> pinnings = null;
+        try {
+            // JFR 的 Thread 是在開始記錄時建立的，要在記錄目前的 Thread 之前開始，才不會被當成洩漏
+            if (monitorPinning) {
+                pinningMonitor = VirtualThreads.monitorPinning(threadPrefix());
+            }
+            if (leakPolicy != ThreadLeakPolicy.IGNORE) {
+                before = liveThreads();
+            }
+            throwable = run(executor, task, workers);
+
+        } finally {
+            try {
+                released = executorStrategy.release(executor);
+
+            } finally {
+                if (pinningMonitor != null) {
+                    pinnings = pinningMonitor.stop();
+                }
+            }
+        }
+
+        LOGGER.info(result.toString());
+        for (ConcurrentResultListener listener : listeners) {
+            listener.onResult(result);
+        }
+        if (maxP99Millis > 0 && result.getP99Millis() > maxP99Millis) {
+            AssertionError slow = new AssertionError(String.format(
+                    "p99 latency of %s is %.3f ms, exceeds %s ms.", name, result.getP99Millis(),
+                    maxP99Millis));
+            if (throwable == null) {
+                throwable = slow;
+
+            } else {
+                throwable.addSuppressed(slow);
+            }
+        }
+
+        if (pinnings != null && !pinnings.isEmpty()) {
+            AssertionError pinned = pinned(pinnings);
+            if (!failOnPinning) {
+                LOGGER.warn(pinned.getMessage());
+
+            } else if (throwable == null) {
+                throwable = pinned;
+
+            } else {
+                throwable.addSuppressed(pinned);
+            }
+        }
+
+        if (before != null) {
+            AssertionError leak = checkLeaks(before, workers, released);
+            if (leak != null) {
+                if (leakPolicy == ThreadLeakPolicy.WARN) {
+                    LOGGER.warn(leak.getMessage());
+
+                } else if (throwable == null) {
+                    throwable = leak;
+
+                } else {
+                    throwable.addSuppressed(leak);
+                }
+            }
+        }
+        if (throwable != null) {
+            throw throwable;
+        }
+        return result;
+    }
+
+    /**
+     * @return <code>executor</code> 現在可以同時執行的工作數量：共用 Thread pool 為這次測試保留的 Thread 數量，其他
+     *         Thread pool 為扣掉執行中工作後剩下的 Thread 數量；無法得知時視為沒有上限。
+     */
+    private static int capacityOf(ExecutorService executor) {
+        if (executor instanceof ExecutorStrategies.Reservation) {
+            return ((ExecutorStrategies.Reservation) executor).getThreads();
+        }
+        if (executor instanceof ThreadPoolExecutor) {
+            // 有 queue 的 Thread pool 要等 queue 滿了才會超過 core pool size
+            ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+            int threads = pool.getQueue().remainingCapacity() == 0 ? pool.getMaximumPoolSize()
+                    : pool.getCorePoolSize();
+            return Math.max(threads - pool.getActiveCount(), 0);
+        }
+        if (executor instanceof ForkJoinPool) {
+            ForkJoinPool pool = (ForkJoinPool) executor;
+            return Math.max(pool.getParallelism() - pool.getActiveThreadCount(), 0);
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    private Throwable run(ExecutorService executor, final Task task, final Set<Thread> workers)
+            throws InterruptedException {
+        // create a completion service to get jobs in the order they
+        // finish, to be able to cancel remaining jobs as fast as
+        // possible if an exception occurs
+        CompletionService<Void> completionService = new ExecutorCompletionService<Void>(executor);
+        // latch used to pause all threads and start all of them
+        // (nearly) at the same time
+        final CountDownLatch go = new CountDownLatch(1);
+        final LatencyHistogram.Recorder[] recorders = new LatencyHistogram.Recorder[Math.min(
+                concurrency, MAX_RECORDERS)];
+        for (int i = 0; i < recorders.length; i++) {
+            recorders[i] = new LatencyHistogram.Recorder();
+        }
+        final AtomicInteger failures = new AtomicInteger();
+        final AtomicLong measured = new AtomicLong(Long.MAX_VALUE);
+        final Set<Thread> running = Collections
+                .newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+        final ConcurrentContext.Shared shared = ConcurrentContext.share(concurrency,
+                capacityOf(executor));
+        List<Future<Void>> futures = new ArrayList<Future<Void>>(concurrency);
+        if (rate > 0) {
+            schedule = new Schedule();
+        }
+        List<Throwable> throwables = new ArrayList<Throwable>();
+        AssertionError timeout = null;
+        AssertionError deadlock = null;
+        ThreadStatistics statistics = null;
+        try {
+            // 開啟 JVM 全域的 contention monitoring，一定要在 finally 中停止
+            if (diagnostics) {
+                monitor = new ThreadMonitor();
+            }
+            // create the tasks
+            for (int i = 0; i < concurrency; i++) {
+                final int index = i;
+                final String threadName = threadPrefix() + i;
+                final LatencyHistogram.Recorder recorder = recorders[i % recorders.length];
+                futures.add(completionService.submit(new Callable<Void>() {
+
+                    @Override
+                    public Void call() throws Exception {
+                        Thread current = Thread.currentThread();
+                        workers.add(current);
+                        running.add(current);
+                        String originalName = current.getName();
+                        if (!originalName.startsWith(threadPrefix())) {
+                            current.setName(threadName);
+                        }
+                        final ConcurrentContext context = ConcurrentContext.open(index, shared);
+                        ThreadMonitor.Sample sample = null;
+                        try {
+                            go.await();
+                            if (monitor != null) {
+                                sample = monitor.begin();
+                            }
+                            runTask(index, new Task() {
+                                @Override
+                                public void run() throws Throwable {
+                                    try {
+                                        task.run();
+
+                                    } finally {
+                                        context.nextIteration();
+                                    }
+                                }
+                            }, recorder, failures, measured);
+
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+
+                        } catch (Exception exception) {
+                            throw exception;
+
+                        } catch (Error error) {
+                            throw error;
+
+                        } catch (Throwable throwable) {
+                            // case of exceptions directly subclassing
+                            // Throwable (should not occur - bad
+                            // programming)
+                            RuntimeException e = new RuntimeException(throwable // NOPMD
+                                    .getMessage(), throwable);
+                            throw e;
+
+                        } finally {
+                            if (sample != null) {
+                                monitor.end(sample);
+                            }
+                            context.close();
+                            current.setName(originalName);
+                            running.remove(current);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            origin = System.nanoTime();
+            if (schedule != null) {
+                measured.set(origin + schedule.offsetOf(schedule.first));
+            }
+            go.countDown();
+
+            long deadline = origin + timeoutNanos;
+            for (int i = 0; i < concurrency;) {
+                Future<Void> future;
+                if (!cancelled && (timeoutNanos > 0 || monitor != null)) {
+                    long wait = timeoutNanos > 0 ? deadline - System.nanoTime() : Long.MAX_VALUE;
+                    if (monitor != null) {
+                        wait = Math.min(wait, TimeUnit.MILLISECONDS.toNanos(DEADLOCK_CHECK_MILLIS));
+                    }
+                    future = completionService.poll(wait, TimeUnit.NANOSECONDS);
+                    if (future == null) {
+                        if (timeoutNanos > 0 && deadline - System.nanoTime() <= 0) {
+                            timeout = timedOut(running);
+                            cancel(futures);
+
+                        } else if (monitor != null) {
+                            deadlock = monitor.findDeadlock(name, workers);
+                            if (deadlock != null) {
+                                cancel(futures);
+                            }
+                        }
+                        continue;
+                    }
+                } else {
+                    future = completionService.take();
+                }
+                i++;
+
+                try {
+                    future.get();
+
+                } catch (CancellationException e) {
+                    // 被取消的工作，原因已經記錄在其他例外中
+
+                } catch (ExecutionException e) {
+                    throwables.add(e.getCause());
+                    if (failFast) {
+                        cancel(futures);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            cancel(futures);
+            throw e;
+
+        } finally {
+            if (monitor != null) {
+                statistics = monitor.stop();
+            }
+        }
+
+        if (cancelled) {
+            AssertionError stuck = awaitStopped(running);
+            if (stuck != null) {
+                throwables.add(stuck);
+            }
+        }
+
+        long end = System.nanoTime();
+        long start = Math.min(measured.get(), end);
+        result = new ConcurrentResult(name, concurrency, failures.get(), end - start,
+                LatencyHistogram.merge(recorders), rate, schedule == null ? 0 : schedule.late.get(),
+                schedule == null ? 0 : schedule.total - schedule.first - schedule.started.get(),
+                statistics);
+
+        Throwable throwable = timeout != null ? timeout : deadlock;
+        for (Throwable each : throwables) {
+            if (throwable == null) {
+                throwable = each;
+
+            } else if (each != throwable) {
+                throwable.addSuppressed(each);
+            }
+        }
+        return throwable;
+    }
+
+    /**
+     * 取消所有還沒結束的工作，執行中的工作會被 interrupt。
+     */
+    private void cancel(List<Future<Void>> futures) {
+        cancelled = true;
+        for (Future<Void> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    private AssertionError timedOut(Set<Thread> running) {
+        StringBuilder message = new StringBuilder();
+        message.append(name).append(" timed out after ")
+                .append(TimeUnit.NANOSECONDS.toMillis(timeoutNanos)).append(" ms, running threads:");
+        for (Thread thread : running) {
+            appendThread(message, thread, Integer.MAX_VALUE);
+        }
+        return new AssertionError(message.toString());
+    }
+
+    /**
+     * 等待被取消的工作結束，最多等待 {@value #CANCEL_GRACE_MILLIS} ms。
+     *
+     * @return 仍未結束的工作說明，全部結束時為 <code>null</code>。
+     */
+    private AssertionError awaitStopped(Set<Thread> running) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + CANCEL_GRACE_MILLIS;
+        while (!running.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        if (running.isEmpty()) {
+            return null;
+        }
+
+        StringBuilder message = new StringBuilder();
+        message.append("Threads of ").append(name).append(" did not stop after cancellation:");
+        for (Thread thread : running) {
+            appendThread(message, thread, LEAK_STACK_DEPTH);
+        }
+        return new AssertionError(message.toString());
+    }
+
+    /**
+     * 依照 ramp-up 等待開始時間，暖機後重複執行 <code>task</code> 並記錄每次的執行時間；<code>task</code> 失敗或工作被取消時就不再執行。
+     *
+     * @param measured
+     *            所有工作中最早開始記錄的時間。
+     */
+    private void runTask(int index, Task task, LatencyHistogram.Recorder recorder,
+            AtomicInteger failures, AtomicLong measured) throws Throwable {
+        if (schedule != null) {
+            runScheduled(task, recorder, failures);
+            return;
+        }
+        if (rampUpNanos > 0) {
+            long delay = origin + rampUpNanos * index / concurrency - System.nanoTime();
+            if (delay > 0) {
+                TimeUnit.NANOSECONDS.sleep(delay);
+            }
+        }
+
+        long warmupDeadline = System.nanoTime() + warmupNanos;
+        for (int i = 0; !cancelled
+                && (i < warmupIterations || System.nanoTime() - warmupDeadline < 0); i++) {
+            task.run();
+        }
+
+        long first = System.nanoTime();
+        long current = measured.get();
+        while (first < current && !measured.compareAndSet(current, first)) {
+            current = measured.get();
+        }
+
+        long deadline = first + durationNanos;
+        long count = 0;
+        do {
+            measure(task, recorder, failures, System.nanoTime());
+            count++;
+        } while (!cancelled
+                && (durationNanos > 0 ? System.nanoTime() - deadline < 0 : count < iterations));
+    }
+
+    /**
+     * 依照 {@link Schedule} 領取下一次呼叫，等到預定時間後執行，直到所有呼叫都領取完畢。
+     */
+    private void runScheduled(Task task, LatencyHistogram.Recorder recorder,
+            AtomicInteger failures) throws Throwable {
+        long k = schedule.next.getAndIncrement();
+        for (; !cancelled && k < schedule.total; k = schedule.next.getAndIncrement()) {
+            long intended = origin + schedule.offsetOf(k);
+            awaitUntil(intended);
+            if (k < schedule.first) {
+                task.run();
+
+            } else {
+                schedule.started.incrementAndGet();
+                if (System.nanoTime() - intended > schedule.periodNanos) {
+                    schedule.late.incrementAndGet();
+                }
+                measure(task, recorder, failures, intended);
+            }
+        }
+    }
+
+    /**
+     * 執行一次 <code>task</code>，並記錄由 <code>from</code> 開始到結束的時間。
+     */
+    private void measure(Task task, LatencyHistogram.Recorder recorder, AtomicInteger failures,
+            long from) throws Throwable {
+        try {
+            task.run();
+
+        } catch (Throwable throwable) {
+            if (!cancelled) {
+                recorder.record(System.nanoTime() - from);
+                failures.incrementAndGet();
+            }
+            throw throwable;
+        }
+        recorder.record(System.nanoTime() - from);
+    }
+
+    private static void awaitUntil(long deadline) throws InterruptedException {
+        for (long remaining = deadline - System.nanoTime(); remaining > 0; remaining = deadline
+                - System.nanoTime()) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (remaining > SPIN_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_NANOS);
+
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * open-loop 的呼叫排程，所有工作共用。
+     */
+    private final class Schedule {
+
+        /**
+         * 兩次呼叫的間隔，開始時間比預定時間晚超過一個間隔就算是延遲。
+         */
+        final long periodNanos = (long) (NANOS_PER_SECOND / rate);
+
+        /**
+         * 第一個列入記錄的呼叫，之前的都是暖機。
+         */
+        final long first = Math.max(warmupIterations, (long) Math.ceil(warmupNanos * rate
+                / NANOS_PER_SECOND));
+
+        final long total = first
+                + (durationNanos > 0 ? (long) Math.ceil(durationNanos * rate / NANOS_PER_SECOND)
+                        : (long) concurrency * iterations);
+
+        final AtomicLong next = new AtomicLong();
+
+        final AtomicLong started = new AtomicLong();
+
+        final AtomicLong late = new AtomicLong();
+
+        /**
+         * @return 第 <code>k</code> 次呼叫預定開始的時間與 {@link ConcurrentExecution#origin origin} 的差距。
+         */
+        long offsetOf(long k) {
+            return (long) (k * NANOS_PER_SECOND / rate);
+        }
+    }
+
+    private String threadPrefix() {
+        return name + "-thread-";
+    }
+
+    private AssertionError pinned(List<String> pinnings) {
+        StringBuilder message = new StringBuilder();
+        message.append(name).append(" pinned carrier threads ").append(pinnings.size())
+                .append(" time(s):");
+        for (String pinning : pinnings) {
+            message.append("\n  ").append(pinning);
+        }
+        return new AssertionError(message.toString());
+    }
+
+    /**
+     * 找出測試過程中建立、在等待 {@value #LEAK_GRACE_MILLIS} ms 後仍未結束的 Thread；同時執行的其他測試建立的 Thread 也會包含在內。
+     */
+    private AssertionError checkLeaks(Set<Thread> before, Set<Thread> workers, boolean released)
+            throws InterruptedException {
+        List<Thread> leaked = new ArrayList<Thread>();
+        for (Thread thread : liveThreads()) {
+            if (!before.contains(thread) && !workers.contains(thread) && !isPoolThread(thread)) {
+                leaked.add(thread);
+            }
+        }
+
+        long deadline = System.currentTimeMillis() + LEAK_GRACE_MILLIS;
+        for (Thread thread : leaked) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining > 0) {
+                thread.join(remaining);
+            }
+        }
+
+        StringBuilder message = new StringBuilder();
+        if (!released) {
+            message.append("Executor of ").append(name).append(" did not terminate in time.");
+        }
+        for (Thread thread : leaked) {
+            if (thread.isAlive()) {
+                if (message.length() == 0) {
+                    message.append("Threads started by ").append(name)
+                            .append(" are still running:");
+                }
+                appendThread(message, thread, LEAK_STACK_DEPTH);
+            }
+        }
+        return message.length() == 0 ? null : new AssertionError(message.toString());
+    }
+
+    private static void appendThread(StringBuilder message, Thread thread, int depth) {
+        message.append("\n  \"").append(thread.getName()).append("\" ").append(thread.getState());
+        StackTraceElement[] stackTrace = thread.getStackTrace();
+        for (int i = 0; i < stackTrace.length && i < depth; i++) {
+            message.append("\n      at ").append(stackTrace[i]);
+        }
+    }
+
+    /**
+     * JVM 自己的 Thread(不在 main 之下的 ThreadGroup)以及共用 Thread pool 的 Thread 本來就會一直存在，不算是洩漏。
+     */
+    private static boolean isPoolThread(Thread thread) {
+        ThreadGroup group = thread.getThreadGroup();
+        return group == null || topLevel(group) != topLevel(Thread.currentThread().getThreadGroup())
+                || thread instanceof ForkJoinWorkerThread
+                || ConcurrentThreadFactory.isPoolThread(thread);
+    }
+
+    /**
+     * @return <code>group</code> 在 root ThreadGroup(system)之下的祖先，例如 main。
+     */
+    private static ThreadGroup topLevel(ThreadGroup group) {
+        ThreadGroup current = group;
+        while (current.getParent() != null && current.getParent().getParent() != null) {
+            current = current.getParent();
+        }
+        return current;
+    }
+
+    private static Set<Thread> liveThreads() {
+        ThreadGroup root = Thread.currentThread().getThreadGroup();
+        while (root.getParent() != null) {
+            root = root.getParent();
+        }
+
+        Thread[] threads;
+        int count;
+        do {
+            threads = new Thread[root.activeCount() * 2 + 16];
+            count = root.enumerate(threads, true);
+        } while (count == threads.length);
+
+        Set<Thread> live = new HashSet<Thread>();
+        for (int i = 0; i < count; i++) {
+            live.add(threads[i]);
+        }
+        return live;
+    }
+}
@@ -0,0 +1,247 @@
+package com.cht.test.rule;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.InvocationInterceptor;
+import org.junit.jupiter.api.extension.ParameterContext;
+import org.junit.jupiter.api.extension.ParameterResolver;
+import org.junit.jupiter.api.extension.ReflectiveInvocationContext;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.util.ReflectionUtils;
+
+import com.cht.test.annotation.Concurrent;
+
+/**
+ * 處理 {@link Concurrent} 標註的 JUnit Jupiter Extension，功能與 {@link ConcurrentRule} 相同。
+ *
+ * 用法如下:
+ *
+ * <pre>
+ * &#064;ExtendWith(ConcurrentExtension.class)
+ * public class ConcurrentTest {
+ *
+ *     &#064;Test
+ *     &#064;Concurrent(15)
+ *     public void myTestMethod(ConcurrentContext context) throws InterruptedException {
+ *         System.out.println(&quot;Thread &quot; + context.getIndex() + &quot; started !&quot;);
+ *     }
+ * }
+ * </pre>
+ *
+ * 需要指定 {@link ExecutorStrategy} 或其他設定時，請以 <code>&#064;RegisterExtension</code> 註冊:
+ *
+ * <pre>
+ * &#064;RegisterExtension
+ * static ConcurrentExtension concurrent = new ConcurrentExtension(ExecutorStrategies.perTest(null))
+ *         .threadLeakPolicy(ThreadLeakPolicy.FAIL);
+ * </pre>
+ *
+ * 測試類別(包含父類別，例如 {@link com.cht.test.AbstractJupiterTests AbstractJupiterTests})同時以
+ * <code>&#064;ExtendWith</code> 註冊時，只有 <code>&#064;RegisterExtension</code> 欄位上的 {@code ConcurrentExtension} 會執行測試及
+ * 提供 {@link ConcurrentContext} 參數，其他的 {@code ConcurrentExtension} 都不會作用，不會重複執行或互相競爭。
+ *
+ * 與 {@link ConcurrentRule} 不同的是，Jupiter 的 <code>&#064;BeforeEach</code> 與 <code>&#064;AfterEach</code> 只會在主要的
+ * Thread 執行一次，同時執行的只有測試方法本身；測試方法的 {@link ConcurrentContext} 參數會在每個 Thread 換成該 Thread 的
+ * {@link ConcurrentContext#current()}。<code>&#064;RepeatedTest</code> 與 <code>&#064;ParameterizedTest</code> 的每次執行也都會
+ * 依照 {@link Concurrent} 同時執行。
+ * <p>
+ * 搭配 <code>junit.jupiter.execution.parallel.enabled=true</code> 時，不同的測試類別或方法可以同時執行，每個測試方法再依照
+ * {@link Concurrent} 在自己的 Thread 上執行；共用的 Thread pool 請參考 {@link ExecutorStrategies#MAX_THREADS_PROPERTY}。
+ * 這時無法分辨 Thread 是由哪個測試建立的，{@link ThreadLeakPolicy#FAIL} 會當成 {@link ThreadLeakPolicy#WARN}，只記錄 warning log。
+ *
+ * @author <a href="mailto:beta@cht.com.tw">黃培棠</a>
+ */
+public final class ConcurrentExtension implements InvocationInterceptor, ParameterResolver {
+
+    /**
+     * 開啟 Jupiter parallel execution 的設定。
+     */
+    static final String PARALLEL_ENABLED = "junit.jupiter.execution.parallel.enabled";
+
+    private final ConcurrentRule rule;
+
+    /**
+     * 使用 {@link ExecutorStrategies#shared()} 執行測試。
+     */
+    public ConcurrentExtension() {
+        this(ExecutorStrategies.shared());
+    }
+
+    /**
+     * @param executorStrategy
+     *            決定測試在哪些 Thread 上執行。
+     */
+    public ConcurrentExtension(ExecutorStrategy executorStrategy) {
+        this.rule = new ConcurrentRule(executorStrategy);
+    }
+
+    /**
+     * @see ConcurrentRule#threadLeakPolicy(ThreadLeakPolicy)
+     */
+    public ConcurrentExtension threadLeakPolicy(ThreadLeakPolicy threadLeakPolicy) {
+        rule.threadLeakPolicy(threadLeakPolicy);
+        return this;
+    }
+
+    /**
+     * @see ConcurrentRule#resultListener(ConcurrentResultListener)
+     */
+    public ConcurrentExtension resultListener(ConcurrentResultListener listener) {
+        rule.resultListener(listener);
+        return this;
+    }
+
+    /**
+     * @see ConcurrentRule#reportDirectory(File)
+     */
+    public ConcurrentExtension reportDirectory(File reportDirectory) {
+        rule.reportDirectory(reportDirectory);
+        return this;
+    }
+
+    /**
+     * @see ConcurrentRule#getLastResult()
+     */
+    public ConcurrentResult getLastResult() {
+        return rule.getLastResult();
+    }
+
+    /**
+     * @see ConcurrentRule#getLastSweep()
+     */
+    public ConcurrentSweep getLastSweep() {
+        return rule.getLastSweep();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void interceptTestMethod(Invocation<Void> invocation,
+            ReflectiveInvocationContext<Method> invocationContext,
+            ExtensionContext extensionContext) throws Throwable {
+        intercept(invocation, invocationContext, extensionContext);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void interceptTestTemplateMethod(Invocation<Void> invocation,
+            ReflectiveInvocationContext<Method> invocationContext,
+            ExtensionContext extensionContext) throws Throwable {
+        intercept(invocation, invocationContext, extensionContext);
+    }
+
+    private void intercept(Invocation<Void> invocation,
+            ReflectiveInvocationContext<Method> invocationContext,
+            ExtensionContext extensionContext) throws Throwable {
+        final Method method = invocationContext.getExecutable();
+        Concurrent concurrent = method.getAnnotation(Concurrent.class);
+        if (concurrent == null || !isActive(extensionContext)) {
+            invocation.proceed();
+            return;
+        }
+
+        // 測試方法會由每個 Thread 各自呼叫，原本的呼叫只能略過
+        invocation.skip();
+        ReflectionUtils.makeAccessible(method);
+        final Object target = invocationContext.getTarget().orElse(null);
+        final List<Object> arguments = invocationContext.getArguments();
+        ThreadLeakPolicy leakPolicy = rule.getThreadLeakPolicy();
+        if (leakPolicy == ThreadLeakPolicy.FAIL && isParallel(extensionContext)) {
+            // 同時執行的其他測試建立的 Thread 也會被當成洩漏
+            leakPolicy = ThreadLeakPolicy.WARN;
+        }
+        rule.execute(extensionContext.getRequiredTestClass().getName(), method.getName(),
+                concurrent, leakPolicy, new ConcurrentExecution.Task() {
+                    @Override
+                    public void run() throws Throwable {
+                        invoke(method, target, arguments);
+                    }
+                });
+    }
+
+    /**
+     * @return 這個 {@code ConcurrentExtension} 是否負責執行測試；測試類別有以 <code>&#064;RegisterExtension</code> 註冊的
+     *         {@code ConcurrentExtension} 時，只有該欄位上的會作用。
+     */
+    boolean isActive(ExtensionContext extensionContext) {
+        Object testInstance = extensionContext.getTestInstance().orElse(null);
+        boolean registered = false;
+        for (Class<?> klass = extensionContext.getRequiredTestClass(); klass != null
+                && klass != Object.class; klass = klass.getSuperclass()) {
+            for (Field field : klass.getDeclaredFields()) {
+                if (!field.isAnnotationPresent(RegisterExtension.class)) {
+                    continue;
+                }
+
+                boolean isStatic = Modifier.isStatic(field.getModifiers());
+                if (!isStatic && testInstance == null) {
+                    continue;
+                }
+                ReflectionUtils.makeAccessible(field);
+                Object extension = ReflectionUtils.getField(field, isStatic ? null : testInstance);
+                if (extension == this) {
+                    return true;
+                }
+                registered |= extension instanceof ConcurrentExtension;
+            }
+        }
+        return !registered;
+    }
+
+    private static boolean isParallel(ExtensionContext extensionContext) {
+        Optional<String> parallel = extensionContext.getConfigurationParameter(PARALLEL_ENABLED);
+        return parallel.isPresent() && Boolean.parseBoolean(parallel.get().trim());
+    }
+
+    private static void invoke(Method method, Object target, List<Object> arguments)
+            throws Throwable {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        Object[] args = arguments.toArray();
+        for (int i = 0; i < args.length; i++) {
+            if (parameterTypes[i] == ConcurrentContext.class) {
+                args[i] = ConcurrentContext.current();
+            }
+        }
+
+        try {
+            method.invoke(target, args);
+
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return {@link Concurrent} 測試方法的 {@link ConcurrentContext} 參數。
+     */
+    @Override
+    public boolean supportsParameter(ParameterContext parameterContext,
+            ExtensionContext extensionContext) {
+        return parameterContext.getParameter().getType() == ConcurrentContext.class
+                && parameterContext.getDeclaringExecutable().isAnnotationPresent(Concurrent.class)
+                && isActive(extensionContext);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return <code>null</code>，每個 Thread 呼叫測試方法時才會換成該 Thread 的 {@link ConcurrentContext}。
+     */
+    @Override
+    public Object resolveParameter(ParameterContext parameterContext,
+            ExtensionContext extensionContext) {
+        return null;
+    }
+}
@@ -0,0 +1,249 @@
+package com.cht.test.rule;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一次 {@link com.cht.test.annotation.Concurrent Concurrent} 測試的執行結果，包含每次呼叫的延遲時間分佈與整體的 throughput。
+ * <p>
+ * 延遲時間是每個工作執行測試內容(含 <code>&#064;Before</code> 與 <code>&#064;After</code>)的 wall time，失敗的呼叫也會列入；
+ * throughput 是呼叫次數除以從所有工作同時開始到最後一個工作結束的時間。
+ * <p>
+ * open-loop(<code>&#064;Concurrent(ratePerSecond = ...)</code>)時，延遲時間由每次呼叫預定開始的時間計算，並另外記錄開始時間比預定時間
+ * 晚超過一個間隔的呼叫次數，以及因為測試失敗或逾時而沒有執行的呼叫次數。
+ *
+ * @author <a href="mailto:beta@cht.com.tw">黃培棠</a>
+ * @see ConcurrentResultListener
+ */
+public final class ConcurrentResult {
+
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final String name;
+
+    private final int concurrency;
+
+    private final int failures;
+
+    private final long elapsedNanos;
+
+    private final LatencyHistogram latency;
+
+    private final double targetRate;
+
+    private final long late;
+
+    private final long dropped;
+
+    private final ThreadStatistics threadStatistics;
+
+    ConcurrentResult(String name, int concurrency, int failures, long elapsedNanos,
+            LatencyHistogram latency, double targetRate, long late, long dropped,
+            ThreadStatistics threadStatistics) {
+        this.name = name;
+        this.concurrency = concurrency;
+        this.failures = failures;
+        this.elapsedNanos = elapsedNanos;
+        this.latency = latency;
+        this.targetRate = targetRate;
+        this.late = late;
+        this.dropped = dropped;
+        this.threadStatistics = threadStatistics;
+    }
+
+    /**
+     * @return 測試名稱。
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return 同步等級。
+     */
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * @return 呼叫測試內容的次數。
+     */
+    public long getOperations() {
+        return latency.getTotalCount();
+    }
+
+    /**
+     * @return 失敗的呼叫次數。
+     */
+    public int getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return 從所有工作同時開始到最後一個工作結束的時間(ms)。
+     */
+    public double getElapsedMillis() {
+        return elapsedNanos / NANOS_PER_MILLI;
+    }
+
+    /**
+     * @return 每秒的呼叫次數。
+     */
+    public double getThroughput() {
+        return elapsedNanos == 0 ? 0 : getOperations() * NANOS_PER_SECOND / elapsedNanos;
+    }
+
+    /**
+     * @return open-loop 的目標速率(每秒呼叫次數)，closed-loop 時為 0；實際的速率請參考 {@link #getThroughput()}。
+     */
+    public double getTargetRate() {
+        return targetRate;
+    }
+
+    /**
+     * @return open-loop 時開始時間比預定時間晚超過一個間隔的呼叫次數。
+     */
+    public long getLate() {
+        return late;
+    }
+
+    /**
+     * @return open-loop 時預定要執行、但因為測試失敗或逾時而沒有執行的呼叫次數。
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * @return 工作 Thread 的統計資料，沒有開啟 <code>&#064;Concurrent(diagnostics = true)</code> 時為 <code>null</code>。
+     */
+    public ThreadStatistics getThreadStatistics() {
+        return threadStatistics;
+    }
+
+    /**
+     * @return 每次呼叫的延遲時間分佈(ns)。
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * @param percentile
+     *            百分位數，介於 0 到 100 之間。
+     * @return 延遲時間的百分位數(ms)。
+     */
+    public double getLatencyMillis(double percentile) {
+        return latency.getValueAtPercentile(percentile) / NANOS_PER_MILLI;
+    }
+
+    /**
+     * @return 延遲時間的中位數(ms)。
+     */
+    public double getP50Millis() {
+        return getLatencyMillis(50);
+    }
+
+    /**
+     * @return 延遲時間的第 90 百分位數(ms)。
+     */
+    public double getP90Millis() {
+        return getLatencyMillis(90);
+    }
+
+    /**
+     * @return 延遲時間的第 99 百分位數(ms)。
+     */
+    public double getP99Millis() {
+        return getLatencyMillis(99);
+    }
+
+    /**
+     * @return 最大的延遲時間(ms)。
+     */
+    public double getMaxMillis() {
+        return latency.getMaxValue() / NANOS_PER_MILLI;
+    }
+
+    /**
+     * @return 平均的延遲時間(ms)。
+     */
+    public double getMeanMillis() {
+        return latency.getMean() / NANOS_PER_MILLI;
+    }
+
+    /**
+     * @return JSON 格式的結果，時間單位為 ms。
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{");
+        json.append("\"name\":");
+        appendString(json, name);
+        json.append(",\"concurrency\":").append(concurrency);
+        json.append(",\"operations\":").append(getOperations());
+        json.append(",\"failures\":").append(failures);
+        json.append(",\"elapsedMillis\":").append(format(getElapsedMillis()));
+        json.append(",\"throughput\":").append(format(getThroughput()));
+        if (targetRate > 0) {
+            json.append(",\"targetRate\":").append(format(targetRate));
+            json.append(",\"late\":").append(late);
+            json.append(",\"dropped\":").append(dropped);
+        }
+        json.append(",\"latencyMillis\":{");
+        json.append("\"min\":").append(format(latency.getMinValue() / NANOS_PER_MILLI));
+        json.append(",\"mean\":").append(format(getMeanMillis()));
+        json.append(",\"p50\":").append(format(getP50Millis()));
+        json.append(",\"p90\":").append(format(getP90Millis()));
+        json.append(",\"p99\":").append(format(getP99Millis()));
+        json.append(",\"max\":").append(format(getMaxMillis())).append('}');
+        if (threadStatistics != null) {
+            json.append(",\"threadStatistics\":").append(threadStatistics.toJson());
+        }
+        return json.append('}').toString();
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    @Override
+    public String toString() {
+        String summary = summary();
+        return threadStatistics == null ? summary : summary + "; " + threadStatistics;
+    }
+
+    private String summary() {
+        if (targetRate > 0) {
+            return String.format(Locale.ROOT,
+                    "%s: %d ops by %d threads in %.1f ms (%.1f/%.1f ops/s, %d late, %d dropped,"
+                            + " %d failed), latency p50=%.3f ms, p90=%.3f ms, p99=%.3f ms,"
+                            + " max=%.3f ms", name, getOperations(), concurrency,
+                    getElapsedMillis(), getThroughput(), targetRate, late, dropped, failures,
+                    getP50Millis(), getP90Millis(), getP99Millis(), getMaxMillis());
+        }
+        return String.format(Locale.ROOT,
+                "%s: %d ops by %d threads in %.1f ms (%.1f ops/s, %d failed),"
+                        + " latency p50=%.3f ms, p90=%.3f ms, p99=%.3f ms, max=%.3f ms", name,
+                getOperations(), concurrency, getElapsedMillis(), getThroughput(), failures,
+                getP50Millis(), getP90Millis(), getP99Millis(), getMaxMillis());
+    }
+}
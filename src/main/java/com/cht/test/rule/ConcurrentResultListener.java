@@ -0,0 +1,18 @@
+package com.cht.test.rule;
+
+/**
+ * 接收 {@link ConcurrentResult} 的 listener，以 {@link ConcurrentRule#resultListener(ConcurrentResultListener)} 註冊。
+ * 測試失敗時仍會收到結果。
+ *
+ * @author <a href="mailto:beta@cht.com.tw">黃培棠</a>
+ */
+public interface ConcurrentResultListener {
+
+    /**
+     * 在測試的所有工作結束後呼叫。
+     *
+     * @param result
+     *            執行結果。
+     */
+    void onResult(ConcurrentResult result);
+}
@@ -1,19 +1,27 @@
 package com.cht.test.rule;
 
-import java.util.concurrent.Callable;
-import java.util.concurrent.CompletionService;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executor;
-import java.util.concurrent.ExecutorCompletionService;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.junit.rules.MethodRule;
 import org.junit.rules.TestRule;
 import org.junit.runner.Description;
 import org.junit.runners.model.FrameworkMethod;
 import org.junit.runners.model.Statement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
 
 import com.cht.test.annotation.Concurrent;
+import com.cht.test.annotation.Concurrent.ThreadKind;
 
 /**
  * 處理 {@link Concurrent} 標註的 {@code TestRule}。
@@ -38,6 +46,53 @@ import com.cht.test.annotation.Concurrent;
  * }
  * </pre>
  *
+ * 預設在所有測試共用的 daemon Thread pool 上執行({@link ExecutorStrategies#shared()})，Thread 會在測試之間重複使用；
+ * 需要其他執行方式時可以指定 {@link ExecutorStrategy}，例如:
+ *
+ * <pre>
+ * &#064;Rule
+ * public ConcurrentRule concurrentRule = new ConcurrentRule(ExecutorStrategies.perTest(null))
+ *         .threadLeakPolicy(ThreadLeakPolicy.FAIL);
+ * </pre>
+ *
+ * 測試結束後，測試過程中建立但仍在執行的 Thread 預設會記錄 warning log，請參考 {@link ThreadLeakPolicy}。
+ * <p>
+ * 在 Java 21 以上可以用 <code>&#064;Concurrent(value = 10000, threads = ThreadKind.VIRTUAL)</code> 以 virtual thread
+ * 執行測試，同時會以 JFR 檢查測試內容是否 pin 住 carrier thread。
+ * <p>
+ * 每次測試都會記錄每個呼叫的延遲時間與 throughput({@link ConcurrentResult})並寫入 info log，可以用
+ * <code>&#064;Concurrent(value = 50, maxP99Millis = 20)</code> 檢查延遲時間，或以
+ * {@link #resultListener(ConcurrentResultListener)} 取得結果；指定 {@link #reportDirectory(File)} 或 System Property
+ * {@value #REPORT_DIRECTORY_PROPERTY} 時，結果會以 JSON 格式寫入 <code>類別名稱.方法名稱.json</code>。
+ * <p>
+ * 每個 Thread 可以重複執行測試內容固定次數或固定時間，作為持續的負載測試，例如:
+ *
+ * <pre>
+ * &#064;Test
+ * &#064;Concurrent(value = 32, durationMillis = 30000, warmupMillis = 5000, rampUpMillis = 3000)
+ * public void soak() {
+ *     ...
+ * }
+ * </pre>
+ *
+ * 注意每次執行都包含 <code>&#064;Before</code> 與 <code>&#064;After</code>，而且同一個測試物件會被所有 Thread 共用。
+ * <p>
+ * 測試延遲時間的 SLO 時，請以 <code>&#064;Concurrent(value = 64, ratePerSecond = 2000, durationMillis = 10000)</code>
+ * 以固定的速率呼叫(open-loop)，延遲時間會包含系統跟不上時排隊的時間。
+ * <p>
+ * 測試內容可以由 {@link ConcurrentContext#current()} 取得目前 Thread 的序號、共用的 {@link java.util.concurrent.Phaser
+ * Phaser}/{@link java.util.concurrent.CyclicBarrier CyclicBarrier} 與共用狀態，讓所有 Thread 分階段會合。
+ * <p>
+ * 要了解 throughput 隨 Thread 數量的變化時，可以用 <code>&#064;Concurrent(levels = {1, 2, 4, 8, 16}, durationMillis = 5000,
+ * minSpeedup = 8)</code> 依序以每個同步等級執行，結果({@link ConcurrentSweep})會以表格寫入 info log，並以 CSV 格式寫入
+ * <code>類別名稱.方法名稱.csv</code>；<code>minSpeedup</code> 檢查最高同步等級的 throughput 至少是最低同步等級的幾倍。
+ * <p>
+ * 測試變慢時，可以用 <code>&#064;Concurrent(diagnostics = true)</code> 收集 lock 競爭、CPU 與記憶體配置的統計資料
+ * ({@link ThreadStatistics})，同時檢查 deadlock。
+ * <p>
+ * 任一 Thread 失敗時預設會取消其他 Thread，並把其他 Thread 的例外加到第一個例外的 suppressed 中；可以用
+ * <code>&#064;Concurrent(timeoutMillis = ...)</code> 避免卡住的 Thread 讓整個 build 停住。
+ *
  * @author <a href="mathieu.carbou@gmail.com">Mathieu Carbou</a>
  * @author <a href="mailto:beta@cht.com.tw">黃培棠</a>
  * @see <a href=
@@ -46,6 +101,102 @@ import com.cht.test.annotation.Concurrent;
  */
 public final class ConcurrentRule implements TestRule, MethodRule {
 
+    /**
+     * 寫入 JSON 報告的目錄，未以 {@link #reportDirectory(File)} 指定時使用。
+     */
+    public static final String REPORT_DIRECTORY_PROPERTY = "cht.test.concurrent.reportDirectory";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConcurrentRule.class);
+
+    private final ExecutorStrategy executorStrategy;
+
+    private ThreadLeakPolicy threadLeakPolicy = ThreadLeakPolicy.WARN;
+
+    private final List<ConcurrentResultListener> resultListeners = new CopyOnWriteArrayList<ConcurrentResultListener>();
+
+    private File reportDirectory;
+
+    private volatile ConcurrentResult lastResult;
+
+    private volatile ConcurrentSweep lastSweep;
+
+    /**
+     * 使用 {@link ExecutorStrategies#shared()} 執行測試。
+     */
+    public ConcurrentRule() {
+        this(ExecutorStrategies.shared());
+    }
+
+    /**
+     * @param executorStrategy
+     *            決定測試在哪些 Thread 上執行。
+     */
+    public ConcurrentRule(ExecutorStrategy executorStrategy) {
+        Assert.notNull(executorStrategy, "\"executorStrategy\" must be specified.");
+        this.executorStrategy = executorStrategy;
+    }
+
+    /**
+     * 設定測試結束後仍有 Thread 在執行時的處理方式，預設為 {@link ThreadLeakPolicy#WARN}。同時執行其他測試時(例如 Jupiter 的
+     * parallel execution)無法分辨 Thread 是由哪個測試建立的，請參考 {@link ThreadLeakPolicy}。
+     *
+     * @param threadLeakPolicy
+     *            Thread 洩漏時的處理方式。
+     * @return 自己。
+     */
+    public ConcurrentRule threadLeakPolicy(ThreadLeakPolicy threadLeakPolicy) {
+        Assert.notNull(threadLeakPolicy, "\"threadLeakPolicy\" must be specified.");
+        this.threadLeakPolicy = threadLeakPolicy;
+        return this;
+    }
+
+    /**
+     * @return 測試結束後仍有 Thread 在執行時的處理方式。
+     */
+    ThreadLeakPolicy getThreadLeakPolicy() {
+        return threadLeakPolicy;
+    }
+
+    /**
+     * 註冊接收每次測試結果的 listener。
+     *
+     * @param listener
+     *            接收 {@link ConcurrentResult} 的 listener。
+     * @return 自己。
+     */
+    public ConcurrentRule resultListener(ConcurrentResultListener listener) {
+        Assert.notNull(listener, "\"listener\" must be specified.");
+        resultListeners.add(listener);
+        return this;
+    }
+
+    /**
+     * 把每次測試的結果以 JSON 格式寫入 <code>reportDirectory</code>，目錄不存在時會自動建立。
+     *
+     * @param reportDirectory
+     *            寫入 JSON 報告的目錄。
+     * @return 自己。
+     */
+    public ConcurrentRule reportDirectory(File reportDirectory) {
+        Assert.notNull(reportDirectory, "\"reportDirectory\" must be specified.");
+        this.reportDirectory = reportDirectory;
+        return this;
+    }
+
+    /**
+     * @return 最近一次 {@link Concurrent} 測試的結果，還沒有執行過時為 <code>null</code>。
+     */
+    public ConcurrentResult getLastResult() {
+        return lastResult;
+    }
+
+    /**
+     * @return 最近一次以 {@link Concurrent#levels()} 執行的測試結果，還沒有執行過時為 <code>null</code>。
+     */
+    public ConcurrentSweep getLastSweep() {
+        return lastSweep;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -54,82 +205,123 @@ public final class ConcurrentRule implements TestRule, MethodRule {
         return new Statement() {
             @Override
             public void evaluate() throws Throwable {
-                final Concurrent concurrent = description.getAnnotation(Concurrent.class);
+                Concurrent concurrent = description.getAnnotation(Concurrent.class);
                 if (concurrent == null) {
                     base.evaluate();
 
                 } else {
-                    // create an executor which simply spawns threads to execute
-                    // runnables
-                    Executor executor = new Executor() {
-                        private final String name = description.getMethodName();
-                        private int count = 0;
-
-                        @Override
-                        public void execute(Runnable command) {
-                            Thread thread = new Thread(command, name + "-thread-" + count++);
-                            thread.start();
-                        }
-                    };
-                    // create a completion service to get jobs in the order they
-                    // finish, to be able to cancel remaining jobs as fast as
-                    // possible if an exception occurs
-                    CompletionService<Void> completionService;
-                    completionService = new ExecutorCompletionService<Void>(executor);
-                    // latch used to pause all threads and start all of them
-                    // (nearly) at the same time
-                    final CountDownLatch go = new CountDownLatch(1);
-                    // create the tasks
-                    for (int i = 0; i < concurrent.value(); i++) {
-                        completionService.submit(new Callable<Void>() {
-
-                            @Override
-                            public Void call() throws Exception {
-                                try {
-                                    go.await();
+                    execute(description.getClassName(), description.getMethodName(), concurrent,
+                            new ConcurrentExecution.Task() {
+                                @Override
+                                public void run() throws Throwable {
                                     base.evaluate();
+                                }
+                            });
+                }
+            }
+        };
+    }
 
-                                } catch (InterruptedException e) {
-                                    Thread.currentThread().interrupt();
+    /**
+     * 依照 <code>concurrent</code> 的設定執行 <code>task</code>；指定 {@link Concurrent#levels()} 時依序以每個同步等級執行。
+     *
+     * @param className
+     *            測試類別名稱，用於報告的檔名。
+     * @param methodName
+     *            測試方法名稱。
+     */
+    void execute(String className, String methodName, Concurrent concurrent,
+            ConcurrentExecution.Task task) throws Throwable {
+        execute(className, methodName, concurrent, threadLeakPolicy, task);
+    }
 
-                                } catch (Exception exception) {
-                                    throw exception;
+    /**
+     * 以 <code>leakPolicy</code> 取代 {@link #threadLeakPolicy(ThreadLeakPolicy)} 的設定執行 <code>task</code>。
+     */
+    void execute(String className, String methodName, Concurrent concurrent,
+            ThreadLeakPolicy leakPolicy, ConcurrentExecution.Task task) throws Throwable {
+        int[] levels = concurrent.levels();
+        if (levels.length == 0) {
+            execute(className, methodName, concurrent, concurrent.value(), leakPolicy, task);
+            return;
+        }
 
-                                } catch (Error error) {
-                                    throw error;
+        // 重複的同步等級會讓報表與 speedup 無法分辨，執行前先檢查
+        Set<Integer> distinct = new HashSet<Integer>();
+        for (int level : levels) {
+            Assert.isTrue(level > 0, "\"levels\" must be positive.");
+            Assert.isTrue(distinct.add(level), "\"levels\" must be distinct.");
+        }
 
-                                } catch (Throwable throwable) {
-                                    // case of exceptions directly subclassing
-                                    // Throwable (should not occur - bad
-                                    // programming)
-                                    RuntimeException e = new RuntimeException(throwable // NOPMD
-                                            .getMessage(), throwable);
-                                    throw e;
-                                }
-                                return null;
-                            }
-                        });
-                    }
-                    go.countDown();
-                    Throwable throwable = null;
-                    for (int i = 0; i < concurrent.value(); i++) {
-                        try {
-                            completionService.take().get();
-
-                        } catch (ExecutionException e) {
-                            // only keep the first exception, but wait for all
-                            // threads to finish
-                            if (throwable == null) {
-                                throwable = e.getCause();
-                            }
-                        }
-                    }
-                    if (throwable != null) {
-                        throw throwable;
-                    }
+        List<ConcurrentResult> results = new ArrayList<ConcurrentResult>(levels.length);
+        for (int level : levels) {
+            results.add(execute(className, methodName + "[" + level + "]", concurrent, level,
+                    leakPolicy, task));
+        }
+        ConcurrentSweep sweep = new ConcurrentSweep(methodName, results);
+        lastSweep = sweep;
+        LOGGER.info(sweep.toString());
+        report(className + "." + methodName + ".csv", sweep.toCsv());
+
+        int last = levels[levels.length - 1];
+        if (concurrent.minSpeedup() > 0 && sweep.getSpeedup(last) < concurrent.minSpeedup()) {
+            throw new AssertionError(String.format(
+                    "Throughput of %s at %d threads is %.2fx of %d thread(s), expected at least %sx.",
+                    methodName, last, sweep.getSpeedup(last), levels[0], concurrent.minSpeedup()));
+        }
+    }
+
+    private ConcurrentResult execute(final String className, String name, Concurrent concurrent,
+            int concurrency, ThreadLeakPolicy leakPolicy, ConcurrentExecution.Task task)
+            throws Throwable {
+        ExecutorStrategy strategy = concurrent.threads() == ThreadKind.VIRTUAL ? ExecutorStrategies
+                .virtual() : executorStrategy;
+        ConcurrentExecution execution = new ConcurrentExecution(name, concurrency, strategy,
+                leakPolicy);
+        if (concurrent.diagnostics()) {
+            execution.diagnostics();
+        }
+        if (ExecutorStrategies.isVirtual(strategy)) {
+            execution.monitorPinning(concurrent.failOnPinning());
+        }
+        execution.load(concurrent.iterations(), concurrent.durationMillis())
+                .warmup(concurrent.warmupIterations(), concurrent.warmupMillis())
+                .rampUp(concurrent.rampUpMillis()).rate(concurrent.ratePerSecond())
+                .failFast(concurrent.failFast()).timeout(concurrent.timeoutMillis());
+        execution.maxP99Millis(concurrent.maxP99Millis()).listener(new ConcurrentResultListener() {
+            @Override
+            public void onResult(ConcurrentResult result) {
+                lastResult = result;
+                report(className + "." + result.getName() + ".json", result.toJson());
+                for (ConcurrentResultListener listener : resultListeners) {
+                    listener.onResult(result);
                 }
             }
-        };
+        });
+        return execution.execute(task);
+    }
+
+    private void report(String fileName, String content) {
+        File directory = reportDirectory;
+        if (directory == null) {
+            String property = System.getProperty(REPORT_DIRECTORY_PROPERTY);
+            if (property == null || property.trim().isEmpty()) {
+                return;
+            }
+            directory = new File(property.trim());
+        }
+
+        File file = new File(directory, fileName);
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Cannot create directory " + directory + ".");
+            }
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
+                writer.write(content);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Cannot write concurrent report {}: {}", file, e.toString());
+        }
     }
 
     /**
@@ -0,0 +1,99 @@
+package com.cht.test.rule;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 以 <code>&#064;Concurrent(levels = {...})</code> 依序在多個同步等級執行同一個測試的結果，用來找出 throughput 不再隨 Thread 數量增加的
+ * 轉折點。
+ * <p>
+ * 每個同步等級的加速比(speedup)是該等級的 throughput 除以第一個同步等級的 throughput。
+ *
+ * @author <a href="mailto:beta@cht.com.tw">黃培棠</a>
+ */
+public final class ConcurrentSweep {
+
+    private static final String CSV_HEADER = "concurrency,operations,failures,throughput,speedup,"
+            + "p50Millis,p90Millis,p99Millis,maxMillis";
+
+    private final String name;
+
+    private final List<ConcurrentResult> results;
+
+    ConcurrentSweep(String name, List<ConcurrentResult> results) {
+        this.name = name;
+        this.results = Collections.unmodifiableList(new ArrayList<ConcurrentResult>(results));
+    }
+
+    /**
+     * @return 測試名稱。
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return 依執行順序排列的每個同步等級的結果。
+     */
+    public List<ConcurrentResult> getResults() {
+        return results;
+    }
+
+    /**
+     * @param concurrency
+     *            同步等級。
+     * @return 該同步等級的結果。
+     * @throws IllegalArgumentException
+     *             表示沒有以 <code>concurrency</code> 執行。
+     */
+    public ConcurrentResult getResult(int concurrency) {
+        for (ConcurrentResult result : results) {
+            if (result.getConcurrency() == concurrency) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("No result of " + name + " at concurrency "
+                + concurrency + ".");
+    }
+
+    /**
+     * @param concurrency
+     *            同步等級。
+     * @return 該同步等級的 throughput 是第一個同步等級的幾倍。
+     */
+    public double getSpeedup(int concurrency) {
+        double baseline = results.get(0).getThroughput();
+        return baseline == 0 ? 0 : getResult(concurrency).getThroughput() / baseline;
+    }
+
+    /**
+     * @return CSV 格式的結果，第一行是欄位名稱，時間單位為 ms。
+     */
+    public String toCsv() {
+        StringBuilder csv = new StringBuilder(CSV_HEADER).append('\n');
+        for (ConcurrentResult result : results) {
+            csv.append(String.format(Locale.ROOT, "%d,%d,%d,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f\n",
+                    result.getConcurrency(), result.getOperations(), result.getFailures(),
+                    result.getThroughput(), getSpeedup(result.getConcurrency()),
+                    result.getP50Millis(), result.getP90Millis(), result.getP99Millis(),
+                    result.getMaxMillis()));
+        }
+        return csv.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder table = new StringBuilder(name).append(" scalability:\n");
+        table.append(String.format(Locale.ROOT, "%8s %12s %8s %10s %10s %10s\n", "threads",
+                "ops/s", "speedup", "p50 ms", "p99 ms", "max ms"));
+        for (ConcurrentResult result : results) {
+            table.append(String.format(Locale.ROOT, "%8d %12.1f %8.2f %10.3f %10.3f %10.3f\n",
+                    result.getConcurrency(), result.getThroughput(),
+                    getSpeedup(result.getConcurrency()), result.getP50Millis(),
+                    result.getP99Millis(), result.getMaxMillis()));
+        }
+        return table.toString();
+    }
+}
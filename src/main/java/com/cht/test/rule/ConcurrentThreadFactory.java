@@ -0,0 +1,62 @@
+package com.cht.test.rule;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.util.Assert;
+
+/**
+ * 依照固定的名稱前綴與 daemon 設定建立 Thread 的 {@link ThreadFactory}，Thread 名稱為
+ * <code>前綴-流水號</code>。
+ *
+ * @author <a href="mailto:beta@cht.com.tw">黃培棠</a>
+ */
+public final class ConcurrentThreadFactory implements ThreadFactory {
+
+    private final String prefix;
+
+    private final boolean daemon;
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    /**
+     * @param prefix
+     *            Thread 名稱的前綴。
+     * @param daemon
+     *            是否為 daemon Thread；daemon Thread 不會阻止 JVM 結束。
+     */
+    public ConcurrentThreadFactory(String prefix, boolean daemon) {
+        Assert.hasText(prefix, "\"prefix\" must be specified.");
+        this.prefix = prefix;
+        this.daemon = daemon;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+        Thread thread = new PoolThread(runnable, prefix + "-" + count.getAndIncrement());
+        thread.setDaemon(daemon);
+        return thread;
+    }
+
+    /**
+     * @return 是否為 {@code ConcurrentThreadFactory} 建立的 Thread。
+     */
+    static boolean isPoolThread(Thread thread) {
+        return thread instanceof PoolThread;
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrentThreadFactory[" + prefix + (daemon ? ", daemon]" : "]");
+    }
+
+    /**
+     * 用來辨認 Thread pool 的 Thread，檢查 Thread 洩漏時不會列入。
+     */
+    private static final class PoolThread extends Thread {
+
+        PoolThread(Runnable runnable, String name) {
+            super(runnable, name);
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package com.cht.test.rule;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * 內建的 {@link ExecutorStrategy}。
+ * <ul>
+ * <li>{@link #shared()}: 所有測試共用的 daemon Thread pool，{@link ConcurrentRule} 預設使用。</li>
+ * <li>{@link #pooled(int, ThreadFactory)}: 自行指定大小與 {@link ThreadFactory} 的共用 Thread pool。</li>
+ * <li>{@link #perTest(ThreadFactory)}: 每次測試建立新的 Thread pool，測試結束時關閉。</li>
+ * <li>{@link #using(ExecutorService)}: 使用呼叫端提供的 {@link ExecutorService}，由呼叫端負責關閉。</li>
+ * <li>{@link #virtual()}: 每個工作一個 virtual thread，需要 Java 21 以上。</li>
+ * </ul>
+ * 共用的 Thread pool 最多只會建立 <code>maxThreads</code> 個 Thread，閒置 {@value #KEEP_ALIVE_SECONDS} 秒後才會結束，所以
+ * 連續執行多個 {@link com.cht.test.annotation.Concurrent Concurrent} 測試時可以重複使用。每個測試開始前會先保留
+ * <code>concurrency</code> 個共用的 Thread，測試結束時才歸還；剩下的 Thread 不夠時(<code>concurrency</code> 超過上限，或是
+ * 平行執行的其他測試正在使用)不會排隊等待，而是建立剛好 <code>concurrency</code> 個 Thread 的 Thread pool，測試結束時關閉，
+ * 確保所有 Thread 確實同時執行。
+ *
+ * @author <a href="mailto:beta@cht.com.tw">黃培棠</a>
+ */
+public final class ExecutorStrategies {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExecutorStrategies.class);
+
+    /**
+     * 共用 Thread pool 的 Thread 數量上限，可以由 System Property 調整，預設為 {@value #DEFAULT_MAX_THREADS}。
+     */
+    public static final String MAX_THREADS_PROPERTY = "cht.test.concurrent.maxThreads";
+
+    private static final int DEFAULT_MAX_THREADS = 256;
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    /**
+     * 關閉每次測試建立的 Thread pool 時，最多等待的秒數。
+     */
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    private ExecutorStrategies() {
+    }
+
+    /**
+     * 所有測試共用的 daemon Thread pool，第一次使用時才會建立，JVM 結束前都不會關閉。
+     *
+     * @return 共用 Thread pool 的策略。
+     * @see #MAX_THREADS_PROPERTY
+     */
+    public static ExecutorStrategy shared() {
+        return SharedHolder.SHARED;
+    }
+
+    /**
+     * 最多 <code>maxThreads</code> 個 Thread 的共用 Thread pool，在第一次取得時建立，並在所有使用這個策略的測試間共用；
+     * 無法保留 <code>concurrency</code> 個共用 Thread 的測試改用專屬的 Thread pool。
+     *
+     * @param maxThreads
+     *            Thread 數量上限。
+     * @param threadFactory
+     *            建立 Thread 的 {@link ThreadFactory}，例如 {@link ConcurrentThreadFactory}。
+     * @return 共用 Thread pool 的策略。
+     */
+    public static ExecutorStrategy pooled(int maxThreads, ThreadFactory threadFactory) {
+        Assert.isTrue(maxThreads > 0, "\"maxThreads\" must be positive.");
+        Assert.notNull(threadFactory, "\"threadFactory\" must be specified.");
+        return new PooledStrategy(maxThreads, threadFactory);
+    }
+
+    /**
+     * 每次測試建立剛好 <code>concurrency</code> 個 Thread，測試結束時關閉並等待所有 Thread 結束。
+     *
+     * @param threadFactory
+     *            建立 Thread 的 {@link ThreadFactory}，<code>null</code> 時以測試名稱命名 non-daemon Thread。
+     * @return 每次測試建立 Thread pool 的策略。
+     */
+    public static ExecutorStrategy perTest(final ThreadFactory threadFactory) {
+        return new ExecutorStrategy() {
+            @Override
+            public ExecutorService acquire(String name, int concurrency) {
+                ThreadFactory factory = threadFactory == null ? new ConcurrentThreadFactory(name
+                        + "-thread", false) : threadFactory;
+                return new ThreadPoolExecutor(concurrency, concurrency, 0, TimeUnit.MILLISECONDS,
+                        new LinkedBlockingQueue<Runnable>(), factory);
+            }
+
+            @Override
+            public boolean release(ExecutorService executor) throws InterruptedException {
+                return shutdown(executor);
+            }
+
+            @Override
+            public String toString() {
+                return "ExecutorStrategies.perTest(" + threadFactory + ")";
+            }
+        };
+    }
+
+    /**
+     * 使用呼叫端提供的 {@link ExecutorService}，測試結束時不會關閉。
+     *
+     * @param executor
+     *            執行測試的 {@link ExecutorService}，請在所有測試結束後自行關閉。
+     * @return 使用 <code>executor</code> 的策略。
+     */
+    public static ExecutorStrategy using(final ExecutorService executor) {
+        Assert.notNull(executor, "\"executor\" must be specified.");
+        return new ExecutorStrategy() {
+            @Override
+            public ExecutorService acquire(String name, int concurrency) {
+                return executor;
+            }
+
+            @Override
+            public boolean release(ExecutorService executor) {
+                return true;
+            }
+
+            @Override
+            public String toString() {
+                return "ExecutorStrategies.using(" + executor + ")";
+            }
+        };
+    }
+
+    /**
+     * 每個工作使用一個新的 virtual thread，測試結束時關閉並等待所有 Thread 結束。適合模擬大量呼叫端同時使用 blocking I/O
+     * 的情形，不會受到 OS Thread 數量的限制；使用這個策略時，{@link ConcurrentRule} 會同時檢查 virtual thread 是否 pin 住
+     * carrier thread。
+     *
+     * @return virtual thread 的策略，執行環境不支援時，在測試開始時會丟出 {@link IllegalStateException}。
+     */
+    public static ExecutorStrategy virtual() {
+        return VirtualStrategy.VIRTUAL;
+    }
+
+    /**
+     * @return <code>strategy</code> 是否以 virtual thread 執行。
+     */
+    static boolean isVirtual(ExecutorStrategy strategy) {
+        return strategy instanceof VirtualStrategy;
+    }
+
+    private static boolean shutdown(ExecutorService executor) throws InterruptedException {
+        executor.shutdown();
+        if (executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            return true;
+        }
+        executor.shutdownNow();
+        return false;
+    }
+
+    private static int maxThreads() {
+        String value = System.getProperty(MAX_THREADS_PROPERTY);
+        if (value != null) {
+            try {
+                int maxThreads = Integer.parseInt(value.trim());
+                if (maxThreads > 0) {
+                    return maxThreads;
+                }
+            } catch (NumberFormatException e) {
+                // 使用預設值
+            }
+            LOGGER.warn("Illegal {}: \"{}\", use {} instead.", MAX_THREADS_PROPERTY, value,
+                    DEFAULT_MAX_THREADS);
+        }
+        return DEFAULT_MAX_THREADS;
+    }
+
+    /**
+     * 延遲建立 {@link #shared()} 的 Thread pool。
+     */
+    private static final class SharedHolder {
+
+        static final ExecutorStrategy SHARED = new PooledStrategy(maxThreads(),
+                new ConcurrentThreadFactory("concurrent-rule", true));
+    }
+
+    /**
+     * 共用固定大小 Thread pool 的策略，Thread 會在閒置後自動結束；每個測試以 {@link Semaphore} 保留需要的 Thread，
+     * 保留不到的測試各自使用 Thread pool。
+     */
+    private static final class PooledStrategy implements ExecutorStrategy {
+
+        private final int maxThreads;
+
+        private final ThreadFactory threadFactory;
+
+        /**
+         * 共用 Thread pool 中還沒有被測試保留的 Thread 數量。
+         */
+        private final Semaphore available;
+
+        private volatile ThreadPoolExecutor executor;
+
+        PooledStrategy(int maxThreads, ThreadFactory threadFactory) {
+            this.maxThreads = maxThreads;
+            this.threadFactory = threadFactory;
+            this.available = new Semaphore(maxThreads);
+        }
+
+        @Override
+        public ExecutorService acquire(String name, int concurrency) {
+            if (!available.tryAcquire(concurrency)) {
+                // 共用的 Thread 不夠時，這次測試改用剛好 concurrency 個 Thread 的 Thread pool，測試結束時關閉
+                LOGGER.info("{} requests {} threads but only {} of {} pooled threads are "
+                        + "available, use a dedicated pool instead.", name, concurrency,
+                        available.availablePermits(), maxThreads);
+                return new ThreadPoolExecutor(concurrency, concurrency, 0, TimeUnit.MILLISECONDS,
+                        new LinkedBlockingQueue<Runnable>(), threadFactory);
+            }
+
+            ThreadPoolExecutor current = executor;
+            if (current == null) {
+                synchronized (this) {
+                    current = executor;
+                    if (current == null) {
+                        current = new ThreadPoolExecutor(maxThreads, maxThreads,
+                                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                                new LinkedBlockingQueue<Runnable>(), threadFactory);
+                        current.allowCoreThreadTimeOut(true);
+                        executor = current;
+                    }
+                }
+            }
+            return new Reservation(current, concurrency);
+        }
+
+        @Override
+        public boolean release(ExecutorService executor) throws InterruptedException {
+            if (executor instanceof Reservation) {
+                Reservation reservation = (Reservation) executor;
+                if (reservation.released.compareAndSet(false, true)) {
+                    available.release(reservation.threads);
+                }
+                return true;
+            }
+            return shutdown(executor);
+        }
+
+        @Override
+        public String toString() {
+            return "ExecutorStrategies.pooled(" + maxThreads + ", " + threadFactory + ")";
+        }
+    }
+
+    /**
+     * 一次測試在共用 Thread pool 中保留的 Thread，工作都交給共用的 Thread pool 執行；歸還後就不再接受新的工作。
+     */
+    static final class Reservation extends AbstractExecutorService {
+
+        private final ExecutorService pool;
+
+        private final int threads;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Reservation(ExecutorService pool, int threads) {
+            this.pool = pool;
+            this.threads = threads;
+        }
+
+        /**
+         * @return 保留的 Thread 數量，也就是最多可以同時執行的工作數量。
+         */
+        int getThreads() {
+            return threads;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            if (released.get()) {
+                throw new RejectedExecutionException("Reserved threads have been released.");
+            }
+            pool.execute(command);
+        }
+
+        @Override
+        public void shutdown() {
+            // 共用的 Thread pool 不會關閉，由 ExecutorStrategy.release(ExecutorService) 歸還
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return released.get();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return released.get();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return released.get();
+        }
+
+        @Override
+        public String toString() {
+            return "Reservation[" + threads + " threads of " + pool + "]";
+        }
+    }
+
+    /**
+     * 每個工作一個 virtual thread 的策略。
+     */
+    private static final class VirtualStrategy implements ExecutorStrategy {
+
+        static final ExecutorStrategy VIRTUAL = new VirtualStrategy();
+
+        @Override
+        public ExecutorService acquire(String name, int concurrency) {
+            return VirtualThreads.newExecutor(name + "-thread");
+        }
+
+        @Override
+        public boolean release(ExecutorService executor) throws InterruptedException {
+            return shutdown(executor);
+        }
+
+        @Override
+        public String toString() {
+            return "ExecutorStrategies.virtual()";
+        }
+    }
+}
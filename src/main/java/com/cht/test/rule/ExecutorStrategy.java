@@ -0,0 +1,33 @@
+package com.cht.test.rule;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 決定 {@link ConcurrentRule} 要在哪些 Thread 上執行測試，內建的實作請參考 {@link ExecutorStrategies}。
+ *
+ * @author <a href="mailto:beta@cht.com.tw">黃培棠</a>
+ */
+public interface ExecutorStrategy {
+
+    /**
+     * 取得執行一次測試用的 {@link ExecutorService}。
+     *
+     * @param name
+     *            測試名稱，可以用來命名 Thread。
+     * @param concurrency
+     *            同時要執行的工作數量。
+     * @return 執行工作的 {@link ExecutorService}，測試結束後會交給 {@link #release(ExecutorService)}。
+     */
+    ExecutorService acquire(String name, int concurrency);
+
+    /**
+     * 測試結束後歸還 {@link #acquire(String, int)} 取得的 {@link ExecutorService}，由策略決定要關閉或是留給下一個測試使用。
+     *
+     * @param executor
+     *            {@link #acquire(String, int)} 取得的 {@link ExecutorService}。
+     * @return 是否正常歸還；例如需要關閉的 {@link ExecutorService} 在時限內沒有結束時應回傳 <code>false</code>。
+     * @throws InterruptedException
+     *             表示等待關閉時被中斷。
+     */
+    boolean release(ExecutorService executor) throws InterruptedException;
+}
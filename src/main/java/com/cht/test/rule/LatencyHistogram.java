@@ -0,0 +1,183 @@
+package com.cht.test.rule;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 記錄延遲時間(nanoseconds)分佈的 histogram，是 {@link ConcurrentResult} 的一部分。
+ * <p>
+ * 與 HdrHistogram 一樣使用 log-linear 的 bucket: 每個 2 的次方區間再等分成 {@value #HALF_SUB_BUCKETS} 格，所以任何數值的誤差都不超過
+ * 1/{@value #HALF_SUB_BUCKETS}，而 bucket 數量固定，記錄時不需要配置記憶體。超過 2<sup>{@value #MAX_EXPONENT}</sup> ns(約 2.4
+ * 小時)的數值會算在最後一格。
+ * <p>
+ * 測試過程中由多個 {@link Recorder} 分散記錄(lock-free)，結束時才合併成不可變的 {@code LatencyHistogram}。
+ *
+ * @author <a href="mailto:beta@cht.com.tw">黃培棠</a>
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+
+    private static final int MAX_EXPONENT = 43;
+
+    private static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS)
+            * HALF_SUB_BUCKETS;
+
+    private final long[] counts;
+
+    private final long totalCount;
+
+    private final long minValue;
+
+    private final long maxValue;
+
+    private final long totalValue;
+
+    private LatencyHistogram(long[] counts, long totalCount, long minValue, long maxValue,
+            long totalValue) {
+        this.counts = counts;
+        this.totalCount = totalCount;
+        this.minValue = minValue;
+        this.maxValue = maxValue;
+        this.totalValue = totalValue;
+    }
+
+    /**
+     * 合併多個 {@link Recorder} 的記錄。
+     */
+    static LatencyHistogram merge(Recorder... recorders) {
+        long[] counts = new long[BUCKETS];
+        long totalCount = 0;
+        long minValue = Long.MAX_VALUE;
+        long maxValue = 0;
+        long totalValue = 0;
+        for (Recorder recorder : recorders) {
+            for (int i = 0; i < BUCKETS; i++) {
+                long count = recorder.counts.get(i);
+                counts[i] += count;
+                totalCount += count;
+            }
+            minValue = Math.min(minValue, recorder.minValue.get());
+            maxValue = Math.max(maxValue, recorder.maxValue.get());
+            totalValue += recorder.totalValue.get();
+        }
+        return new LatencyHistogram(counts, totalCount, totalCount == 0 ? 0 : minValue, maxValue,
+                totalValue);
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return value < 0 ? 0 : (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        int index = SUB_BUCKETS + (shift - 1) * HALF_SUB_BUCKETS
+                + (int) (value >>> shift) - HALF_SUB_BUCKETS;
+        return Math.min(index, BUCKETS - 1);
+    }
+
+    /**
+     * @return 落在第 <code>index</code> 格的最大數值。
+     */
+    static long highestValueOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int offset = index - SUB_BUCKETS;
+        int shift = offset / HALF_SUB_BUCKETS + 1;
+        long subBucket = offset % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * @return 記錄的數量。
+     */
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * @return 最小值(ns)，沒有記錄時為 0。
+     */
+    public long getMinValue() {
+        return minValue;
+    }
+
+    /**
+     * @return 最大值(ns)，沒有記錄時為 0。
+     */
+    public long getMaxValue() {
+        return maxValue;
+    }
+
+    /**
+     * @return 平均值(ns)，沒有記錄時為 0。
+     */
+    public double getMean() {
+        return totalCount == 0 ? 0 : (double) totalValue / totalCount;
+    }
+
+    /**
+     * @param percentile
+     *            百分位數，介於 0 到 100 之間，例如 99 表示 p99。
+     * @return 至少有 <code>percentile</code>% 的記錄小於或等於的數值(ns)，誤差在 1/{@value #HALF_SUB_BUCKETS} 以內；
+     *         沒有記錄時為 0。
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("\"percentile\" must be between 0 and 100.");
+        }
+        if (totalCount == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+        long cumulative = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            cumulative += counts[i];
+            if (cumulative >= rank) {
+                return Math.max(minValue, Math.min(highestValueOf(i), maxValue));
+            }
+        }
+        return maxValue;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LatencyHistogram[count=%d, min=%d, p50=%d, p99=%d, max=%d]",
+                totalCount, minValue, getValueAtPercentile(50), getValueAtPercentile(99),
+                maxValue);
+    }
+
+    /**
+     * 測試過程中記錄延遲時間，可以由多個 Thread 同時使用而不需要 lock；為了減少競爭，每個工作會分配到不同的
+     * {@code Recorder}。
+     */
+    static final class Recorder {
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+        private final AtomicLong minValue = new AtomicLong(Long.MAX_VALUE);
+
+        private final AtomicLong maxValue = new AtomicLong();
+
+        private final AtomicLong totalValue = new AtomicLong();
+
+        void record(long value) {
+            counts.incrementAndGet(indexOf(value));
+            totalValue.addAndGet(value);
+
+            long min = minValue.get();
+            while (value < min && !minValue.compareAndSet(min, value)) {
+                min = minValue.get();
+            }
+            long max = maxValue.get();
+            while (value > max && !maxValue.compareAndSet(max, value)) {
+                max = maxValue.get();
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.cht.test.rule;
+
+/**
+ * 測試結束後，仍有測試過程中建立的 Thread 還在執行時的處理方式。執行測試的 Thread pool 本身不算在內。
+ * <p>
+ * 檢查時比較的是測試前後整個 JVM 的 Thread，無法分辨 Thread 是由哪個測試建立的；同時執行的其他測試建立的 Thread 也會被當成洩漏，
+ * 因此不支援 <code>junit.jupiter.execution.parallel.enabled=true</code>，這時 {@link ConcurrentExtension} 會把 {@link #FAIL}
+ * 當成 {@link #WARN}。
+ *
+ * @author <a href="mailto:beta@cht.com.tw">黃培棠</a>
+ */
+public enum ThreadLeakPolicy {
+
+    /**
+     * 不檢查。
+     */
+    IGNORE,
+
+    /**
+     * 記錄 warning log。
+     */
+    WARN,
+
+    /**
+     * 丟出 {@link AssertionError} 讓測試失敗。
+     */
+    FAIL
+}
@@ -0,0 +1,254 @@
+package com.cht.test.rule;
+
+import java.lang.management.LockInfo;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MonitorInfo;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 以 {@link ThreadMXBean} 收集工作 Thread 的 {@link ThreadStatistics}，並檢查 deadlock。
+ * <p>
+ * lock 競爭的時間需要開啟 JVM 全域的 contention monitoring，同時執行的測試會共用，最後一個結束的測試才會恢復原本的設定。
+ *
+ * @author <a href="mailto:beta@cht.com.tw">黃培棠</a>
+ */
+final class ThreadMonitor {
+
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    private static final Object CONTENTION_LOCK = new Object();
+
+    private static int contentionUsers;
+
+    private static boolean contentionEnabledByUs;
+
+    private final AtomicInteger threads = new AtomicInteger();
+
+    private final AtomicLong blockedCount = new AtomicLong();
+
+    private final AtomicLong blockedMillis = new AtomicLong();
+
+    private final AtomicLong waitedCount = new AtomicLong();
+
+    private final AtomicLong waitedMillis = new AtomicLong();
+
+    private final AtomicLong cpuNanos = new AtomicLong();
+
+    private final AtomicLong wallNanos = new AtomicLong();
+
+    private final AtomicLong allocatedBytes = new AtomicLong();
+
+    private final boolean contention;
+
+    private volatile boolean cpuSupported = true;
+
+    private volatile boolean allocationSupported = true;
+
+    private boolean stopped;
+
+    /**
+     * 開始收集，請在結束時呼叫 {@link #stop()}。
+     */
+    ThreadMonitor() {
+        contention = THREAD_MX_BEAN.isThreadContentionMonitoringSupported();
+        if (contention) {
+            synchronized (CONTENTION_LOCK) {
+                if (contentionUsers++ == 0
+                        && !THREAD_MX_BEAN.isThreadContentionMonitoringEnabled()) {
+                    THREAD_MX_BEAN.setThreadContentionMonitoringEnabled(true);
+                    contentionEnabledByUs = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * 在工作 Thread 開始時記錄目前的數值。
+     *
+     * @return 目前 Thread 的起始數值，不支援的 Thread(例如 virtual thread)為 <code>null</code>。
+     */
+    Sample begin() {
+        Thread thread = Thread.currentThread();
+        ThreadInfo info = THREAD_MX_BEAN.getThreadInfo(thread.getId());
+        if (info == null) {
+            return null;
+        }
+        return new Sample(thread.getId(), info, currentCpuTime(), allocatedBytes(thread.getId()));
+    }
+
+    /**
+     * 在同一個 Thread 結束工作時，把與 <code>sample</code> 的差異加到統計資料。
+     */
+    void end(Sample sample) {
+        if (sample == null) {
+            return;
+        }
+        long wall = System.nanoTime() - sample.wall;
+        ThreadInfo info = THREAD_MX_BEAN.getThreadInfo(sample.id);
+        if (info == null) {
+            return;
+        }
+        long cpu = currentCpuTime();
+        long allocated = allocatedBytes(sample.id);
+
+        threads.incrementAndGet();
+        wallNanos.addAndGet(wall);
+        blockedCount.addAndGet(info.getBlockedCount() - sample.blockedCount);
+        waitedCount.addAndGet(info.getWaitedCount() - sample.waitedCount);
+        if (info.getBlockedTime() >= 0 && sample.blockedTime >= 0) {
+            blockedMillis.addAndGet(info.getBlockedTime() - sample.blockedTime);
+            waitedMillis.addAndGet(info.getWaitedTime() - sample.waitedTime);
+        }
+        if (cpu < 0 || sample.cpu < 0) {
+            cpuSupported = false;
+
+        } else {
+            cpuNanos.addAndGet(cpu - sample.cpu);
+        }
+        if (allocated < 0 || sample.allocated < 0) {
+            allocationSupported = false;
+
+        } else {
+            allocatedBytes.addAndGet(allocated - sample.allocated);
+        }
+    }
+
+    /**
+     * 結束收集，並恢復 contention monitoring 的設定。
+     *
+     * @return 所有工作 Thread 的統計資料。
+     */
+    ThreadStatistics stop() {
+        if (contention && !stopped) {
+            synchronized (CONTENTION_LOCK) {
+                if (--contentionUsers == 0 && contentionEnabledByUs) {
+                    THREAD_MX_BEAN.setThreadContentionMonitoringEnabled(false);
+                    contentionEnabledByUs = false;
+                }
+            }
+        }
+        stopped = true;
+        return new ThreadStatistics(threads.get(), blockedCount.get(), contention ? blockedMillis
+                .get() : -1, waitedCount.get(), contention ? waitedMillis.get() : -1,
+                cpuSupported ? cpuNanos.get() : -1, wallNanos.get(),
+                allocationSupported ? allocatedBytes.get() : -1);
+    }
+
+    /**
+     * 檢查 <code>workers</code> 是否有 deadlock。
+     *
+     * @return 說明 deadlock 中每個 Thread 等待的 lock、持有 lock 的 Thread 與 stack trace；沒有 deadlock 時為
+     *         <code>null</code>。
+     */
+    AssertionError findDeadlock(String name, Set<Thread> workers) {
+        long[] ids = THREAD_MX_BEAN.isSynchronizerUsageSupported() ? THREAD_MX_BEAN
+                .findDeadlockedThreads() : THREAD_MX_BEAN.findMonitorDeadlockedThreads();
+        if (ids == null) {
+            return null;
+        }
+
+        Set<Long> workerIds = new HashSet<Long>();
+        for (Thread worker : workers) {
+            workerIds.add(worker.getId());
+        }
+        boolean involved = false;
+        for (long id : ids) {
+            involved |= workerIds.contains(id);
+        }
+        if (!involved) {
+            return null;
+        }
+
+        StringBuilder message = new StringBuilder();
+        message.append(name).append(" deadlocked:");
+        for (ThreadInfo info : THREAD_MX_BEAN.getThreadInfo(ids,
+                THREAD_MX_BEAN.isObjectMonitorUsageSupported(),
+                THREAD_MX_BEAN.isSynchronizerUsageSupported())) {
+            if (info != null) {
+                appendThreadInfo(message, info);
+            }
+        }
+        return new AssertionError(message.toString());
+    }
+
+    private static void appendThreadInfo(StringBuilder message, ThreadInfo info) {
+        message.append("\n  \"").append(info.getThreadName()).append("\" ")
+                .append(info.getThreadState()).append(" on ").append(info.getLockName())
+                .append(" held by \"").append(info.getLockOwnerName()).append('"');
+        StackTraceElement[] stackTrace = info.getStackTrace();
+        MonitorInfo[] monitors = info.getLockedMonitors();
+        for (int i = 0; i < stackTrace.length; i++) {
+            message.append("\n      at ").append(stackTrace[i]);
+            for (MonitorInfo monitor : monitors) {
+                if (monitor.getLockedStackDepth() == i) {
+                    message.append("\n      - locked ").append(monitor);
+                }
+            }
+        }
+        for (LockInfo synchronizer : info.getLockedSynchronizers()) {
+            message.append("\n      - locked ").append(synchronizer);
+        }
+    }
+
+    private static long currentCpuTime() {
+        try {
+            return THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported() ? THREAD_MX_BEAN
+                    .getCurrentThreadCpuTime() : -1;
+
+        } catch (UnsupportedOperationException e) {
+            return -1;
+        }
+    }
+
+    private static long allocatedBytes(long id) {
+        if (THREAD_MX_BEAN instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean mxBean;
+            mxBean = (com.sun.management.ThreadMXBean) THREAD_MX_BEAN;
+            try {
+                return mxBean.isThreadAllocatedMemoryEnabled() ? mxBean
+                        .getThreadAllocatedBytes(id) : -1;
+
+            } catch (UnsupportedOperationException e) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 工作 Thread 開始時的數值。
+     */
+    static final class Sample {
+
+        private final long id;
+
+        private final long wall = System.nanoTime();
+
+        private final long blockedCount;
+
+        private final long blockedTime;
+
+        private final long waitedCount;
+
+        private final long waitedTime;
+
+        private final long cpu;
+
+        private final long allocated;
+
+        Sample(long id, ThreadInfo info, long cpu, long allocated) {
+            this.id = id;
+            this.blockedCount = info.getBlockedCount();
+            this.blockedTime = info.getBlockedTime();
+            this.waitedCount = info.getWaitedCount();
+            this.waitedTime = info.getWaitedTime();
+            this.cpu = cpu;
+            this.allocated = allocated;
+        }
+    }
+}
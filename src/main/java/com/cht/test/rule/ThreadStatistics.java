@@ -0,0 +1,128 @@
+package com.cht.test.rule;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <code>&#064;Concurrent(diagnostics = true)</code> 時，由 {@link java.lang.management.ThreadMXBean ThreadMXBean}
+ * 收集的所有工作 Thread 的統計資料(加總)，用來判斷測試變慢的原因是 lock 競爭、GC(配置的記憶體)還是 CPU。
+ * <p>
+ * 執行環境不支援的項目為 -1；virtual thread 不列入統計。
+ *
+ * @author <a href="mailto:beta@cht.com.tw">黃培棠</a>
+ * @see ConcurrentResult#getThreadStatistics()
+ */
+public final class ThreadStatistics {
+
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final int threads;
+
+    private final long blockedCount;
+
+    private final long blockedMillis;
+
+    private final long waitedCount;
+
+    private final long waitedMillis;
+
+    private final long cpuNanos;
+
+    private final long wallNanos;
+
+    private final long allocatedBytes;
+
+    ThreadStatistics(int threads, long blockedCount, long blockedMillis, long waitedCount,
+            long waitedMillis, long cpuNanos, long wallNanos, long allocatedBytes) {
+        this.threads = threads;
+        this.blockedCount = blockedCount;
+        this.blockedMillis = blockedMillis;
+        this.waitedCount = waitedCount;
+        this.waitedMillis = waitedMillis;
+        this.cpuNanos = cpuNanos;
+        this.wallNanos = wallNanos;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    /**
+     * @return 列入統計的 Thread 數量。
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @return 等待進入 <code>synchronized</code> 區塊的次數。
+     */
+    public long getBlockedCount() {
+        return blockedCount;
+    }
+
+    /**
+     * @return 等待進入 <code>synchronized</code> 區塊的時間(ms)。
+     */
+    public long getBlockedMillis() {
+        return blockedMillis;
+    }
+
+    /**
+     * @return <code>wait</code>、<code>join</code>、<code>park</code> 等待的次數。
+     */
+    public long getWaitedCount() {
+        return waitedCount;
+    }
+
+    /**
+     * @return <code>wait</code>、<code>join</code>、<code>park</code> 等待的時間(ms)。
+     */
+    public long getWaitedMillis() {
+        return waitedMillis;
+    }
+
+    /**
+     * @return 使用的 CPU 時間(ms)。
+     */
+    public double getCpuMillis() {
+        return cpuNanos < 0 ? -1 : cpuNanos / NANOS_PER_MILLI;
+    }
+
+    /**
+     * @return 執行的 wall time(ms)。
+     */
+    public double getWallMillis() {
+        return wallNanos / NANOS_PER_MILLI;
+    }
+
+    /**
+     * @return CPU 時間佔 wall time 的比例，接近 1 表示 CPU bound，接近 0 表示大多在等待。
+     */
+    public double getCpuRatio() {
+        return cpuNanos < 0 || wallNanos == 0 ? -1 : (double) cpuNanos / wallNanos;
+    }
+
+    /**
+     * @return 配置的記憶體(bytes)。
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * @return JSON 格式的統計資料，時間單位為 ms。
+     */
+    public String toJson() {
+        return String.format(Locale.ROOT, "{\"threads\":%d,\"blockedCount\":%d,"
+                + "\"blockedMillis\":%d,\"waitedCount\":%d,\"waitedMillis\":%d,"
+                + "\"cpuMillis\":%.3f,\"wallMillis\":%.3f,\"cpuRatio\":%.3f,"
+                + "\"allocatedBytes\":%d}", threads, blockedCount, blockedMillis, waitedCount,
+                waitedMillis, getCpuMillis(), getWallMillis(), getCpuRatio(), allocatedBytes);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%d threads blocked %d times (%d ms), waited %d times"
+                + " (%d ms), cpu %.1f ms / wall %.1f ms, allocated %d bytes", threads,
+                blockedCount, blockedMillis, waitedCount, waitedMillis, getCpuMillis(),
+                getWallMillis(), allocatedBytes);
+    }
+}
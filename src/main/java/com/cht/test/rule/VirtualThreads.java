@@ -0,0 +1,196 @@
+package com.cht.test.rule;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 以 Reflection 使用 Java 21 的 virtual thread 與 JFR event streaming，讓專案本身仍可以在較舊的 JDK 上編譯與執行。
+ *
+ * @author <a href="mailto:beta@cht.com.tw">黃培棠</a>
+ */
+final class VirtualThreads {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VirtualThreads.class);
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    private static final Method OF_VIRTUAL;
+
+    private static final Method BUILDER_NAME;
+
+    private static final Method BUILDER_FACTORY;
+
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+    static {
+        Method ofVirtual = null;
+        Method builderName = null;
+        Method builderFactory = null;
+        Method newThreadPerTaskExecutor = null;
+        try {
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            builderName = builder.getMethod("name", String.class, long.class);
+            builderFactory = builder.getMethod("factory");
+            newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor",
+                    ThreadFactory.class);
+
+        } catch (ClassNotFoundException e) {
+            LOGGER.debug("Virtual threads are not supported.");
+
+        } catch (NoSuchMethodException e) {
+            LOGGER.debug("Virtual threads are not supported.");
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_FACTORY = builderFactory;
+        NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+    }
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return 執行環境是否支援 virtual thread。
+     */
+    static boolean isSupported() {
+        return OF_VIRTUAL != null && NEW_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * 建立每個工作一個 virtual thread 的 {@link ExecutorService}，Thread 名稱為 <code>prefix-流水號</code>。
+     *
+     * @throws IllegalStateException
+     *             表示執行環境不支援 virtual thread。
+     */
+    static ExecutorService newExecutor(String prefix) {
+        if (!isSupported()) {
+            throw new IllegalStateException("Virtual threads require Java 21 or later, current: "
+                    + System.getProperty("java.version") + ".");
+        }
+        try {
+            Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), prefix + "-", 0L);
+            ThreadFactory factory = (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+            return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, factory);
+
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getTargetException());
+        }
+    }
+
+    /**
+     * 開始記錄名稱以 <code>threadPrefix</code> 開頭的 virtual thread 被 pin 住 carrier thread 的事件。
+     *
+     * @return 記錄中的 {@link PinningMonitor}；執行環境不支援 JFR event streaming 時，回傳不會記錄任何事件的實體。
+     */
+    static PinningMonitor monitorPinning(String threadPrefix) {
+        try {
+            return new PinningMonitor(threadPrefix);
+
+        } catch (Exception e) {
+            LOGGER.warn("Cannot detect pinned virtual threads: {}", e.toString());
+            return new PinningMonitor();
+        }
+    }
+
+    /**
+     * 以 <code>jdk.jfr.consumer.RecordingStream</code> 收集 <code>jdk.VirtualThreadPinned</code> 事件。
+     */
+    static final class PinningMonitor {
+
+        private final Object stream;
+
+        private final List<String> pinnings = Collections.synchronizedList(new ArrayList<String>());
+
+        PinningMonitor() {
+            this.stream = null;
+        }
+
+        PinningMonitor(final String threadPrefix) throws Exception {
+            Class<?> streamClass = Class.forName("jdk.jfr.consumer.RecordingStream");
+            Object stream = streamClass.getConstructor().newInstance();
+            try {
+                Object settings = streamClass.getMethod("enable", String.class).invoke(stream,
+                        PINNED_EVENT);
+                // 實際的類別不一定是 public，一律由公開的型態取得 method
+                Class<?> settingsClass = Class.forName("jdk.jfr.EventSettings");
+                settingsClass.getMethod("withThreshold", Duration.class).invoke(settings,
+                        Duration.ZERO);
+                settingsClass.getMethod("withStackTrace").invoke(settings);
+
+                Consumer<Object> consumer = new Consumer<Object>() {
+                    @Override
+                    public void accept(Object event) {
+                        record(event, threadPrefix);
+                    }
+                };
+                streamClass.getMethod("onEvent", String.class, Consumer.class).invoke(stream,
+                        PINNED_EVENT, consumer);
+                streamClass.getMethod("startAsync").invoke(stream);
+
+            } catch (Exception e) {
+                ((AutoCloseable) stream).close();
+                throw e;
+            }
+            this.stream = stream;
+        }
+
+        private void record(Object event, String threadPrefix) {
+            try {
+                Class<?> eventClass = Class.forName("jdk.jfr.consumer.RecordedEvent");
+                Object thread = eventClass.getMethod("getThread").invoke(event);
+                String name = thread == null ? null : (String) Class
+                        .forName("jdk.jfr.consumer.RecordedThread").getMethod("getJavaName")
+                        .invoke(thread);
+                if (name != null && name.startsWith(threadPrefix)) {
+                    Object stackTrace = eventClass.getMethod("getStackTrace").invoke(event);
+                    pinnings.add("\"" + name + "\" pinned its carrier thread"
+                            + (stackTrace == null ? "." : ":\n" + stackTrace));
+                }
+            } catch (Exception e) {
+                LOGGER.debug("Cannot read {} event.", PINNED_EVENT, e);
+            }
+        }
+
+        /**
+         * 停止記錄，並等待已發生的事件都處理完畢。
+         *
+         * @return 每次 pin 住 carrier thread 的說明，包含 Thread 名稱與 stack trace。
+         */
+        List<String> stop() {
+            if (stream != null) {
+                try {
+                    stream.getClass().getMethod("stop").invoke(stream);
+
+                } catch (Exception e) {
+                    LOGGER.debug("Cannot stop JFR stream.", e);
+
+                } finally {
+                    try {
+                        ((AutoCloseable) stream).close();
+
+                    } catch (Exception e) {
+                        LOGGER.debug("Cannot close JFR stream.", e);
+                    }
+                }
+            }
+            synchronized (pinnings) {
+                return new ArrayList<String>(pinnings);
+            }
+        }
+    }
+}
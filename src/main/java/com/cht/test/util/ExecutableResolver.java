@@ -0,0 +1,296 @@
+package com.cht.test.util;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Executable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 依據實際參數挑選要呼叫的 method 或 constructor，規則比照 JLS 15.12.2 的三個階段:
+ * <ol>
+ * <li>只允許 subtype 的轉換。</li>
+ * <li>允許 boxing、un-boxing 及 primitive widening。</li>
+ * <li>允許 varargs。</li>
+ * </ol>
+ * 每個階段只要有符合的候選者就不再往下一階段找，並從中挑出最精確(most specific)的一個；<code>null</code>
+ * 參數可以對應到任何非 primitive 的型態。
+ *
+ * @author <a href="mailto:beta@cht.com.tw">黃培棠</a>
+ */
+final class ExecutableResolver {
+
+    private static final Map<Class<?>, Class<?>> PRIMITIVES = new HashMap<Class<?>, Class<?>>();
+
+    private static final Map<Class<?>, Set<Class<?>>> WIDENINGS = new HashMap<Class<?>, Set<Class<?>>>();
+
+    static {
+        PRIMITIVES.put(Boolean.class, boolean.class);
+        PRIMITIVES.put(Byte.class, byte.class);
+        PRIMITIVES.put(Character.class, char.class);
+        PRIMITIVES.put(Short.class, short.class);
+        PRIMITIVES.put(Integer.class, int.class);
+        PRIMITIVES.put(Long.class, long.class);
+        PRIMITIVES.put(Float.class, float.class);
+        PRIMITIVES.put(Double.class, double.class);
+
+        widens(byte.class, short.class, int.class, long.class, float.class, double.class);
+        widens(short.class, int.class, long.class, float.class, double.class);
+        widens(char.class, int.class, long.class, float.class, double.class);
+        widens(int.class, long.class, float.class, double.class);
+        widens(long.class, float.class, double.class);
+        widens(float.class, double.class);
+    }
+
+    private static void widens(Class<?> from, Class<?>... to) {
+        Set<Class<?>> targets = new HashSet<Class<?>>();
+        for (Class<?> type : to) {
+            targets.add(type);
+        }
+        WIDENINGS.put(from, targets);
+    }
+
+    private ExecutableResolver() {
+    }
+
+    /**
+     * 挑選結果。
+     *
+     * @param <E>
+     *            Method 或 Constructor。
+     */
+    static final class Resolution<E extends Executable> {
+
+        private final E executable;
+
+        private final boolean varArgsCall;
+
+        Resolution(E executable, boolean varArgsCall) {
+            this.executable = executable;
+            this.varArgsCall = varArgsCall;
+        }
+
+        E getExecutable() {
+            return executable;
+        }
+
+        /**
+         * @return 是否以 varargs 的方式呼叫，也就是多出來的參數要包成陣列。
+         */
+        boolean isVarArgsCall() {
+            return varArgsCall;
+        }
+
+        /**
+         * 將呼叫端的參數轉成實際呼叫時使用的參數，以 varargs 方式呼叫時會把多出來的參數包成陣列。
+         */
+        Object[] adapt(Object[] args) {
+            if (!varArgsCall) {
+                return args;
+            }
+
+            Class<?>[] parameterTypes = executable.getParameterTypes();
+            int fixed = parameterTypes.length - 1;
+            Object varArgs = Array.newInstance(parameterTypes[fixed].getComponentType(),
+                    args.length - fixed);
+            for (int i = fixed; i < args.length; i++) {
+                Array.set(varArgs, i - fixed, args[i]);
+            }
+
+            Object[] adapted = new Object[parameterTypes.length];
+            System.arraycopy(args, 0, adapted, 0, fixed);
+            adapted[fixed] = varArgs;
+            return adapted;
+        }
+    }
+
+    /**
+     * 由 <code>candidates</code> 中挑出最適合 <code>argTypes</code> 的一個。
+     *
+     * @param candidates
+     *            候選者，同樣簽名的只應該出現一次(例如子類別覆寫的 method 不應該再列入父類別的版本)。
+     * @param argTypes
+     *            參數的型態，<code>null</code> 參數以 <code>null</code> 表示。
+     * @return 挑選結果，沒有適用的候選者時回傳 <code>null</code>。
+     * @throws IllegalArgumentException
+     *             表示有多個適用的候選者，但無法判斷哪一個最精確。
+     */
+    static <E extends Executable> Resolution<E> resolve(List<E> candidates, Class<?>[] argTypes) {
+        for (Phase phase : Phase.values()) {
+            List<E> applicable = new ArrayList<E>();
+            for (E candidate : candidates) {
+                if (phase.isApplicable(candidate, argTypes)) {
+                    applicable.add(candidate);
+                }
+            }
+
+            if (!applicable.isEmpty()) {
+                E selected = mostSpecific(applicable, argTypes.length, phase == Phase.VARARGS);
+                if (selected == null) {
+                    throw new IllegalArgumentException("\"params\""
+                            + " cannot be determined as a possible arguments array, candidates: "
+                            + applicable + ". Cast the null or boxed arguments to"
+                            + " describe the desired signature explicitly.");
+                }
+                return new Resolution<E>(selected, phase == Phase.VARARGS);
+            }
+        }
+        return null;
+    }
+
+    private enum Phase {
+        STRICT {
+            @Override
+            boolean isApplicable(Executable executable, Class<?>[] argTypes) {
+                return isApplicable(executable.getParameterTypes(), argTypes, false);
+            }
+        },
+        LOOSE {
+            @Override
+            boolean isApplicable(Executable executable, Class<?>[] argTypes) {
+                return isApplicable(executable.getParameterTypes(), argTypes, true);
+            }
+        },
+        VARARGS {
+            @Override
+            boolean isApplicable(Executable executable, Class<?>[] argTypes) {
+                if (!executable.isVarArgs()) {
+                    return false;
+                }
+
+                Class<?>[] parameterTypes = executable.getParameterTypes();
+                int fixed = parameterTypes.length - 1;
+                if (argTypes.length < fixed) {
+                    return false;
+                }
+                for (int i = 0; i < fixed; i++) {
+                    if (!isConvertible(argTypes[i], parameterTypes[i], true)) {
+                        return false;
+                    }
+                }
+                Class<?> componentType = parameterTypes[fixed].getComponentType();
+                for (int i = fixed; i < argTypes.length; i++) {
+                    if (!isConvertible(argTypes[i], componentType, true)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        };
+
+        abstract boolean isApplicable(Executable executable, Class<?>[] argTypes);
+
+        static boolean isApplicable(Class<?>[] parameterTypes, Class<?>[] argTypes, boolean loose) {
+            if (parameterTypes.length != argTypes.length) {
+                return false;
+            }
+            for (int i = 0; i < parameterTypes.length; i++) {
+                if (!isConvertible(argTypes[i], parameterTypes[i], loose)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 判斷型態為 <code>argType</code> 的參數能不能傳給型態為 <code>parameterType</code> 的參數。
+     */
+    static boolean isConvertible(Class<?> argType, Class<?> parameterType, boolean loose) {
+        if (argType == null) {
+            return !parameterType.isPrimitive();
+        }
+        if (parameterType.isAssignableFrom(argType)) {
+            return true;
+        }
+        if (!loose) {
+            return false;
+        }
+
+        if (parameterType.isPrimitive()) {
+            // un-boxing 後再 widening，例如 Integer -> int -> long
+            Class<?> primitive = argType.isPrimitive() ? argType : PRIMITIVES.get(argType);
+            return primitive != null && isPrimitiveAssignable(primitive, parameterType);
+        }
+        // boxing 後再轉成父類別，例如 int -> Integer -> Number
+        return argType.isPrimitive() && parameterType.isAssignableFrom(wrapperOf(argType));
+    }
+
+    private static boolean isPrimitiveAssignable(Class<?> from, Class<?> to) {
+        if (from == to) {
+            return true;
+        }
+        Set<Class<?>> targets = WIDENINGS.get(from);
+        return targets != null && targets.contains(to);
+    }
+
+    private static Class<?> wrapperOf(Class<?> primitive) {
+        for (Map.Entry<Class<?>, Class<?>> entry : PRIMITIVES.entrySet()) {
+            if (entry.getValue() == primitive) {
+                return entry.getKey();
+            }
+        }
+        return primitive;
+    }
+
+    private static <E extends Executable> E mostSpecific(List<E> applicable, int arity,
+            boolean varArgs) {
+        if (applicable.size() == 1) {
+            return applicable.get(0);
+        }
+
+        E selected = null;
+        for (E candidate : applicable) {
+            boolean maximal = true;
+            for (E other : applicable) {
+                if (other != candidate && !isMoreSpecific(candidate, other, arity, varArgs)) {
+                    maximal = false;
+                    break;
+                }
+            }
+            if (maximal) {
+                if (selected != null) {
+                    return null;
+                }
+                selected = candidate;
+            }
+        }
+        return selected;
+    }
+
+    private static boolean isMoreSpecific(Executable candidate, Executable other, int arity,
+            boolean varArgs) {
+        Class<?>[] candidateTypes = expand(candidate, arity, varArgs);
+        Class<?>[] otherTypes = expand(other, arity, varArgs);
+        for (int i = 0; i < candidateTypes.length; i++) {
+            if (!otherTypes[i].isAssignableFrom(candidateTypes[i])
+                    && !(candidateTypes[i].isPrimitive() && isPrimitiveAssignable(
+                            candidateTypes[i], otherTypes[i]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * varargs 比較時，把最後一個陣列參數展開成 <code>arity</code> 個 component type。
+     */
+    private static Class<?>[] expand(Executable executable, int arity, boolean varArgs) {
+        Class<?>[] parameterTypes = executable.getParameterTypes();
+        if (!varArgs) {
+            return parameterTypes;
+        }
+
+        int length = Math.max(arity, parameterTypes.length);
+        Class<?>[] expanded = new Class<?>[length];
+        int fixed = parameterTypes.length - 1;
+        System.arraycopy(parameterTypes, 0, expanded, 0, fixed);
+        for (int i = fixed; i < length; i++) {
+            expanded[i] = parameterTypes[fixed].getComponentType();
+        }
+        return expanded;
+    }
+}
@@ -0,0 +1,515 @@
+package com.cht.test.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.WrongMethodTypeException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/**
+ * 以 {@link MethodHandle} 實作、可重複使用的欄位存取器，由 {@link ObjectRobber#accessor(Class, String)} 取得。
+ * <p>
+ * 欄位只在建立存取器時解析一次，之後的 {@link #get(Object)}、{@link #set(Object, Object)} 都是直接呼叫
+ * MethodHandle，不會再切換 {@code setAccessible}，可以安全的在多個 Thread 間共用。primitive 型態的欄位請使用
+ * {@link #getInt(Object)}、{@link #setInt(Object, int)} 等對應的函式，就不會有 boxing 的成本。
+ * <p>
+ * 類別欄位(靜態欄位)的 <code>target</code> 參數會被忽略，傳入 <code>null</code> 即可。
+ *
+ * <pre>
+ * FieldAccessor&lt;Integer&gt; count = ObjectRobber.accessor(Counter.class, &quot;count&quot;);
+ * count.setInt(counter, 10);
+ * int value = count.getInt(counter);
+ * </pre>
+ *
+ * @param <V>
+ *            欄位的型態，primitive 型態請使用其 Wrapper 類別。
+ * @author <a href="mailto:beta@cht.com.tw">黃培棠</a>
+ */
+public final class FieldAccessor<V> {
+
+    private final Field field;
+
+    /** (Object)Object */
+    private final MethodHandle getter;
+
+    /** (Object,Object)void，final 的類別欄位無法設值，此時為 <code>null</code>。 */
+    private final MethodHandle setter;
+
+    private final MethodHandle booleanGetter;
+    private final MethodHandle byteGetter;
+    private final MethodHandle charGetter;
+    private final MethodHandle shortGetter;
+    private final MethodHandle intGetter;
+    private final MethodHandle longGetter;
+    private final MethodHandle floatGetter;
+    private final MethodHandle doubleGetter;
+
+    private final MethodHandle booleanSetter;
+    private final MethodHandle byteSetter;
+    private final MethodHandle charSetter;
+    private final MethodHandle shortSetter;
+    private final MethodHandle intSetter;
+    private final MethodHandle longSetter;
+    private final MethodHandle floatSetter;
+    private final MethodHandle doubleSetter;
+
+    private FieldAccessor(Field field, MethodHandle rawGetter, MethodHandle rawSetter) {
+        this.field = field;
+        this.getter = rawGetter.asType(MethodType.methodType(Object.class, Object.class));
+        this.setter = rawSetter == null ? null : rawSetter.asType(MethodType.methodType(
+                void.class, Object.class, Object.class));
+
+        // primitive 欄位另外準備不需要 boxing 的版本，允許 widening，例如 int 欄位可以用 getLong 取值
+        boolean primitive = field.getType().isPrimitive();
+        this.booleanGetter = primitive ? getterAs(rawGetter, boolean.class) : null;
+        this.byteGetter = primitive ? getterAs(rawGetter, byte.class) : null;
+        this.charGetter = primitive ? getterAs(rawGetter, char.class) : null;
+        this.shortGetter = primitive ? getterAs(rawGetter, short.class) : null;
+        this.intGetter = primitive ? getterAs(rawGetter, int.class) : null;
+        this.longGetter = primitive ? getterAs(rawGetter, long.class) : null;
+        this.floatGetter = primitive ? getterAs(rawGetter, float.class) : null;
+        this.doubleGetter = primitive ? getterAs(rawGetter, double.class) : null;
+
+        boolean settable = primitive && rawSetter != null;
+        this.booleanSetter = settable ? setterAs(rawSetter, boolean.class) : null;
+        this.byteSetter = settable ? setterAs(rawSetter, byte.class) : null;
+        this.charSetter = settable ? setterAs(rawSetter, char.class) : null;
+        this.shortSetter = settable ? setterAs(rawSetter, short.class) : null;
+        this.intSetter = settable ? setterAs(rawSetter, int.class) : null;
+        this.longSetter = settable ? setterAs(rawSetter, long.class) : null;
+        this.floatSetter = settable ? setterAs(rawSetter, float.class) : null;
+        this.doubleSetter = settable ? setterAs(rawSetter, double.class) : null;
+    }
+
+    /**
+     * 由已設為可存取的欄位建立存取器。
+     */
+    static <V> FieldAccessor<V> of(Field field) throws IllegalAccessException {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodHandle rawGetter = lookup.unreflectGetter(field);
+        MethodHandle rawSetter = null;
+        boolean isStatic = Modifier.isStatic(field.getModifiers());
+        if (!(isStatic && Modifier.isFinal(field.getModifiers()))) {
+            rawSetter = lookup.unreflectSetter(field);
+        }
+
+        // 統一成第一個參數為 target 的形式，類別欄位就忽略該參數
+        if (isStatic) {
+            rawGetter = MethodHandles.dropArguments(rawGetter, 0, Object.class);
+            if (rawSetter != null) {
+                rawSetter = MethodHandles.dropArguments(rawSetter, 0, Object.class);
+            }
+        }
+        return new FieldAccessor<V>(field, rawGetter, rawSetter);
+    }
+
+    private static MethodHandle getterAs(MethodHandle rawGetter, Class<?> type) {
+        try {
+            return rawGetter.asType(MethodType.methodType(type, Object.class));
+
+        } catch (WrongMethodTypeException e) {
+            return null;
+        }
+    }
+
+    private static MethodHandle setterAs(MethodHandle rawSetter, Class<?> type) {
+        try {
+            return rawSetter.asType(MethodType.methodType(void.class, Object.class, type));
+
+        } catch (WrongMethodTypeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return 存取的欄位。
+     */
+    public Field getField() {
+        return field;
+    }
+
+    /**
+     * @return 欄位的型態。
+     */
+    public Class<?> getType() {
+        return field.getType();
+    }
+
+    /**
+     * 取得欄位的數值。
+     *
+     * @param target
+     *            包含取值對象的實體物件，類別欄位可為 <code>null</code>。
+     * @return 該欄位的內容，如果是 primitive 數值，則會回傳其 Wrapper 類別。
+     * @throws ClassCastException
+     *             表示 <code>target</code> 不是該欄位所屬類別的實體。
+     */
+    @SuppressWarnings("unchecked")
+    public V get(Object target) {
+        try {
+            return (V) (Object) getter.invokeExact(target);
+
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * 將欄位的數值設為 <code>value</code>。
+     *
+     * @param target
+     *            包含設值對象的實體物件，類別欄位可為 <code>null</code>。
+     * @param value
+     *            要指定的數值，primitive 欄位會自動 un-boxing。
+     * @throws ClassCastException
+     *             表示 <code>target</code> 或 <code>value</code> 的型態不符。
+     * @throws UnsupportedOperationException
+     *             表示該欄位是 final 的類別欄位，無法設值。
+     */
+    public void set(Object target, V value) {
+        try {
+            checkSettable(setter).invokeExact(target, (Object) value);
+
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * 取得 <code>boolean</code> 欄位的數值。
+     *
+     * @param target
+     *            包含取值對象的實體物件，類別欄位可為 <code>null</code>。
+     * @return 欄位的數值。
+     * @throws IllegalArgumentException
+     *             表示欄位的型態不是 <code>boolean</code>。
+     */
+    public boolean getBoolean(Object target) {
+        try {
+            return (boolean) checkGettable(booleanGetter, boolean.class).invokeExact(target);
+
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * 取得 <code>byte</code> 欄位的數值。
+     *
+     * @param target
+     *            包含取值對象的實體物件，類別欄位可為 <code>null</code>。
+     * @return 欄位的數值。
+     * @throws IllegalArgumentException
+     *             表示欄位的型態無法轉換為 <code>byte</code>。
+     */
+    public byte getByte(Object target) {
+        try {
+            return (byte) checkGettable(byteGetter, byte.class).invokeExact(target);
+
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * 取得 <code>char</code> 欄位的數值。
+     *
+     * @param target
+     *            包含取值對象的實體物件，類別欄位可為 <code>null</code>。
+     * @return 欄位的數值。
+     * @throws IllegalArgumentException
+     *             表示欄位的型態無法轉換為 <code>char</code>。
+     */
+    public char getChar(Object target) {
+        try {
+            return (char) checkGettable(charGetter, char.class).invokeExact(target);
+
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * 取得 <code>short</code> 欄位的數值。
+     *
+     * @param target
+     *            包含取值對象的實體物件，類別欄位可為 <code>null</code>。
+     * @return 欄位的數值。
+     * @throws IllegalArgumentException
+     *             表示欄位的型態無法轉換為 <code>short</code>。
+     */
+    public short getShort(Object target) {
+        try {
+            return (short) checkGettable(shortGetter, short.class).invokeExact(target);
+
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * 取得 <code>int</code> 欄位的數值。
+     *
+     * @param target
+     *            包含取值對象的實體物件，類別欄位可為 <code>null</code>。
+     * @return 欄位的數值。
+     * @throws IllegalArgumentException
+     *             表示欄位的型態無法轉換為 <code>int</code>。
+     */
+    public int getInt(Object target) {
+        try {
+            return (int) checkGettable(intGetter, int.class).invokeExact(target);
+
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * 取得 <code>long</code> 欄位的數值。
+     *
+     * @param target
+     *            包含取值對象的實體物件，類別欄位可為 <code>null</code>。
+     * @return 欄位的數值。
+     * @throws IllegalArgumentException
+     *             表示欄位的型態無法轉換為 <code>long</code>。
+     */
+    public long getLong(Object target) {
+        try {
+            return (long) checkGettable(longGetter, long.class).invokeExact(target);
+
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * 取得 <code>float</code> 欄位的數值。
+     *
+     * @param target
+     *            包含取值對象的實體物件，類別欄位可為 <code>null</code>。
+     * @return 欄位的數值。
+     * @throws IllegalArgumentException
+     *             表示欄位的型態無法轉換為 <code>float</code>。
+     */
+    public float getFloat(Object target) {
+        try {
+            return (float) checkGettable(floatGetter, float.class).invokeExact(target);
+
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * 取得 <code>double</code> 欄位的數值。
+     *
+     * @param target
+     *            包含取值對象的實體物件，類別欄位可為 <code>null</code>。
+     * @return 欄位的數值。
+     * @throws IllegalArgumentException
+     *             表示欄位的型態無法轉換為 <code>double</code>。
+     */
+    public double getDouble(Object target) {
+        try {
+            return (double) checkGettable(doubleGetter, double.class).invokeExact(target);
+
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * 設定 <code>boolean</code> 欄位的數值。
+     *
+     * @param target
+     *            包含設值對象的實體物件，類別欄位可為 <code>null</code>。
+     * @param value
+     *            要指定的數值。
+     * @throws IllegalArgumentException
+     *             表示欄位的型態不是 <code>boolean</code>。
+     */
+    public void setBoolean(Object target, boolean value) {
+        try {
+            checkSettable(booleanSetter, boolean.class).invokeExact(target, value);
+
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * 設定欄位的數值，<code>byte</code> 以及可以 widening 的欄位都適用。
+     *
+     * @param target
+     *            包含設值對象的實體物件，類別欄位可為 <code>null</code>。
+     * @param value
+     *            要指定的數值。
+     * @throws IllegalArgumentException
+     *             表示欄位的型態無法接受 <code>byte</code>。
+     */
+    public void setByte(Object target, byte value) {
+        try {
+            checkSettable(byteSetter, byte.class).invokeExact(target, value);
+
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * 設定欄位的數值，<code>char</code> 以及可以 widening 的欄位都適用。
+     *
+     * @param target
+     *            包含設值對象的實體物件，類別欄位可為 <code>null</code>。
+     * @param value
+     *            要指定的數值。
+     * @throws IllegalArgumentException
+     *             表示欄位的型態無法接受 <code>char</code>。
+     */
+    public void setChar(Object target, char value) {
+        try {
+            checkSettable(charSetter, char.class).invokeExact(target, value);
+
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * 設定欄位的數值，<code>short</code> 以及可以 widening 的欄位都適用。
+     *
+     * @param target
+     *            包含設值對象的實體物件，類別欄位可為 <code>null</code>。
+     * @param value
+     *            要指定的數值。
+     * @throws IllegalArgumentException
+     *             表示欄位的型態無法接受 <code>short</code>。
+     */
+    public void setShort(Object target, short value) {
+        try {
+            checkSettable(shortSetter, short.class).invokeExact(target, value);
+
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * 設定欄位的數值，<code>int</code> 以及可以 widening 的欄位都適用。
+     *
+     * @param target
+     *            包含設值對象的實體物件，類別欄位可為 <code>null</code>。
+     * @param value
+     *            要指定的數值。
+     * @throws IllegalArgumentException
+     *             表示欄位的型態無法接受 <code>int</code>。
+     */
+    public void setInt(Object target, int value) {
+        try {
+            checkSettable(intSetter, int.class).invokeExact(target, value);
+
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * 設定欄位的數值，<code>long</code> 以及可以 widening 的欄位都適用。
+     *
+     * @param target
+     *            包含設值對象的實體物件，類別欄位可為 <code>null</code>。
+     * @param value
+     *            要指定的數值。
+     * @throws IllegalArgumentException
+     *             表示欄位的型態無法接受 <code>long</code>。
+     */
+    public void setLong(Object target, long value) {
+        try {
+            checkSettable(longSetter, long.class).invokeExact(target, value);
+
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * 設定欄位的數值，<code>float</code> 以及可以 widening 的欄位都適用。
+     *
+     * @param target
+     *            包含設值對象的實體物件，類別欄位可為 <code>null</code>。
+     * @param value
+     *            要指定的數值。
+     * @throws IllegalArgumentException
+     *             表示欄位的型態無法接受 <code>float</code>。
+     */
+    public void setFloat(Object target, float value) {
+        try {
+            checkSettable(floatSetter, float.class).invokeExact(target, value);
+
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * 設定 <code>double</code> 欄位的數值。
+     *
+     * @param target
+     *            包含設值對象的實體物件，類別欄位可為 <code>null</code>。
+     * @param value
+     *            要指定的數值。
+     * @throws IllegalArgumentException
+     *             表示欄位的型態無法接受 <code>double</code>。
+     */
+    public void setDouble(Object target, double value) {
+        try {
+            checkSettable(doubleSetter, double.class).invokeExact(target, value);
+
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    private MethodHandle checkGettable(MethodHandle handle, Class<?> type) {
+        if (handle == null) {
+            throw new IllegalArgumentException(String.format("Field \"%s\" of type %s"
+                    + " cannot be read as %s.", field.getName(), field.getType().getName(), type));
+        }
+        return handle;
+    }
+
+    private MethodHandle checkSettable(MethodHandle handle) {
+        if (setter == null) {
+            throw new UnsupportedOperationException(String.format(
+                    "Field \"%s\" is a static final field and cannot be set.", field.getName()));
+        }
+        return handle;
+    }
+
+    private MethodHandle checkSettable(MethodHandle handle, Class<?> type) {
+        checkSettable(handle);
+        if (handle == null) {
+            throw new IllegalArgumentException(String.format("Field \"%s\" of type %s"
+                    + " cannot be set from %s.", field.getName(), field.getType().getName(), type));
+        }
+        return handle;
+    }
+
+    private static RuntimeException rethrow(Throwable throwable) {
+        if (throwable instanceof RuntimeException) {
+            return (RuntimeException) throwable;
+        }
+        if (throwable instanceof Error) {
+            throw (Error) throwable;
+        }
+        // MethodHandle 存取欄位不會丟出 checked exception，不過還是保險一下
+        return new IllegalStateException(throwable.getMessage(), throwable);
+    }
+
+    @Override
+    public String toString() {
+        return "FieldAccessor[" + field + "]";
+    }
+}
@@ -0,0 +1,384 @@
+package com.cht.test.util;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Resource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * {@link ObjectRobber} 使用的 Reflection 成員快取。
+ * <p>
+ * 以 {@link ClassValue} 為每個類別保存已解析過的 {@link Field}、{@link FieldAccessor} 以及依實際參數挑選出的
+ * {@link Method} 與 {@link InstanceFactory}，以及需要注入的欄位，連同「找不到」的結果也一併記住，所以同一個成員第二次以後的查詢只需要一次 map 存取，不會再沿著父類別一路
+ * {@code getDeclaredXxx} 並產生例外。
+ * 快取內容掛在 {@link Class} 物件上，類別被 unload 時會一起被回收。
+ * <p>
+ * 快取中的成員都已經呼叫過 {@code setAccessible(true)}，因為 {@code getDeclaredXxx} 每次都會回傳新的
+ * copy，所以不會影響到其他人手上的同一個成員。
+ *
+ * @author <a href="mailto:beta@cht.com.tw">黃培棠</a>
+ */
+final class MemberCache {
+
+    /**
+     * 代表查無此成員的標記。
+     */
+    private static final Object NOT_FOUND = new Object();
+
+    private static final String CONSTRUCTOR_NAME = "<init>";
+
+    private static final String INJECT_ANNOTATION_NAME = "javax.inject.Inject";
+
+    private static final ClassValue<MemberCache> CACHES = new ClassValue<MemberCache>() {
+        @Override
+        protected MemberCache computeValue(Class<?> type) {
+            return new MemberCache(type);
+        }
+    };
+
+    private final Class<?> klass;
+
+    private final ConcurrentMap<String, Object> fields = new ConcurrentHashMap<String, Object>();
+
+    private final ConcurrentMap<String, FieldAccessor<?>> accessors = new ConcurrentHashMap<String, FieldAccessor<?>>();
+
+    /**
+     * 以實際參數型態挑選 method 的結果，key 中的 <code>null</code> 代表該參數為 <code>null</code>。
+     */
+    private final ConcurrentMap<MethodKey, Object> methodCalls = new ConcurrentHashMap<MethodKey, Object>();
+
+    /**
+     * 以實際參數型態挑選 constructor 的結果，同樣包含找不到或無法判斷的情況。
+     */
+    private final ConcurrentMap<MethodKey, Object> constructorCalls = new ConcurrentHashMap<MethodKey, Object>();
+
+    /**
+     * 本類別及父類別中所有需要注入的欄位，第一次使用時才建立。
+     */
+    private volatile List<InjectionPoint> injectionPoints;
+
+    private MemberCache(Class<?> klass) {
+        this.klass = klass;
+    }
+
+    static MemberCache of(Class<?> klass) {
+        return CACHES.get(klass);
+    }
+
+    /**
+     * 取得 <code>klass</code> 或其父類別中名為 <code>fieldName</code> 的欄位。
+     *
+     * @return 已設為可存取的欄位，找不到時回傳 <code>null</code>。
+     */
+    static Field findField(Class<?> klass, String fieldName) {
+        return of(klass).findField(fieldName);
+    }
+
+    Field findField(String fieldName) {
+        Object field = fields.get(fieldName);
+        if (field == null) {
+            field = resolveField(fieldName);
+            Object existing = fields.putIfAbsent(fieldName, field);
+            if (existing != null) {
+                field = existing;
+            }
+        }
+
+        return field == NOT_FOUND ? null : (Field) field;
+    }
+
+    private Object resolveField(String fieldName) {
+        for (Field field : klass.getDeclaredFields()) {
+            if (field.getName().equals(fieldName)) {
+                field.setAccessible(true);
+                return field;
+            }
+        }
+
+        // 自己沒有就往父類別找，父類別也會有自己的快取
+        Class<?> superclass = klass.getSuperclass();
+        if (superclass != null) {
+            Field field = findField(superclass, fieldName);
+            if (field != null) {
+                return field;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * 取得 <code>fieldName</code> 欄位的存取器，同一個欄位只會建立一次。
+     *
+     * @return 欄位存取器，找不到欄位時回傳 <code>null</code>。
+     */
+    FieldAccessor<?> findAccessor(String fieldName) throws IllegalAccessException {
+        FieldAccessor<?> accessor = accessors.get(fieldName);
+        if (accessor == null) {
+            Field field = findField(fieldName);
+            if (field == null) {
+                return null;
+            }
+
+            accessor = FieldAccessor.of(field);
+            FieldAccessor<?> existing = accessors.putIfAbsent(fieldName, accessor);
+            if (existing != null) {
+                accessor = existing;
+            }
+        }
+        return accessor;
+    }
+
+    /**
+     * 取得本類別及父類別中標註 {@link Autowired}、{@link Resource} 或 <code>javax.inject.Inject</code>
+     * 的欄位，只會掃描一次。
+     *
+     * @return 需要注入的欄位，子類別的欄位排在前面。
+     * @throws IllegalAccessException
+     *             表示該欄位無法存取。
+     */
+    List<InjectionPoint> injectionPoints() throws IllegalAccessException {
+        List<InjectionPoint> points = injectionPoints;
+        if (points == null) {
+            points = new ArrayList<InjectionPoint>();
+            for (Class<?> type = klass; type != null; type = type.getSuperclass()) {
+                for (Field field : type.getDeclaredFields()) {
+                    if (isInjectionPoint(field)) {
+                        field.setAccessible(true);
+                        // 直接以 Field 建立存取器，父類別中同名的欄位才不會被子類別的蓋掉
+                        points.add(new InjectionPoint(field.getType(), FieldAccessor
+                                .<Object> of(field)));
+                    }
+                }
+            }
+            points = Collections.unmodifiableList(points);
+            injectionPoints = points;
+        }
+        return points;
+    }
+
+    private static boolean isInjectionPoint(Field field) {
+        for (Annotation annotation : field.getDeclaredAnnotations()) {
+            Class<? extends Annotation> type = annotation.annotationType();
+            // javax.inject 不一定在 classpath 中，所以用名稱判斷
+            if (type == Autowired.class || type == Resource.class
+                    || INJECT_ANNOTATION_NAME.equals(type.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 需要注入的欄位。
+     */
+    static final class InjectionPoint {
+
+        private final Class<?> type;
+
+        private final FieldAccessor<Object> accessor;
+
+        InjectionPoint(Class<?> type, FieldAccessor<Object> accessor) {
+            this.type = type;
+            this.accessor = accessor;
+        }
+
+        /**
+         * @return <code>value</code> 是否可以注入此欄位。
+         */
+        boolean accepts(Object value) {
+            return type.isInstance(value);
+        }
+
+        void inject(Object target, Object value) {
+            accessor.set(target, value);
+        }
+    }
+
+    /**
+     * 依據實際參數的型態，由本類別、父類別及介面中挑出名為 <code>methodName</code> 且最適合的函式，結果會依
+     * (名稱, 參數型態) 快取，包含找不到或無法判斷的情況。
+     *
+     * @param argTypes
+     *            參數的型態，<code>null</code> 參數以 <code>null</code> 表示。
+     * @return 挑選結果。
+     * @throws NoSuchMethodException
+     *             表示沒有適用的函式。
+     * @throws IllegalArgumentException
+     *             表示有多個適用的函式，但無法判斷要呼叫哪一個。
+     */
+    @SuppressWarnings("unchecked")
+    ExecutableResolver.Resolution<Method> resolveMethod(String methodName, Class<?>[] argTypes)
+            throws NoSuchMethodException {
+        Object resolution = methodCalls.get(new MethodKey(methodName, argTypes));
+        if (resolution == null) {
+            try {
+                resolution = ExecutableResolver.resolve(collectMethods(methodName), argTypes);
+                if (resolution == null) {
+                    resolution = NOT_FOUND;
+                }
+
+            } catch (IllegalArgumentException e) {
+                resolution = e;
+            }
+
+            Object existing = methodCalls.putIfAbsent(
+                    new MethodKey(methodName, argTypes.clone()), resolution);
+            if (existing != null) {
+                resolution = existing;
+            }
+        }
+
+        if (resolution == NOT_FOUND) {
+            throw new NoSuchMethodException(klass.getName() + "." + methodName
+                    + Arrays.asList(argTypes));
+
+        } else if (resolution instanceof IllegalArgumentException) {
+            throw new IllegalArgumentException(((IllegalArgumentException) resolution)
+                    .getMessage());
+        }
+        return (ExecutableResolver.Resolution<Method>) resolution;
+    }
+
+    /**
+     * 依據參數的型態挑出最適合的 constructor 並建立 {@link InstanceFactory}，結果會依參數型態快取。
+     *
+     * @param argTypes
+     *            參數的型態，<code>null</code> 參數以 <code>null</code> 表示。
+     * @return 物件工廠。
+     * @throws NoSuchMethodException
+     *             表示沒有適用的 constructor。
+     * @throws InstantiationException
+     *             表示該類別是抽象類別。
+     * @throws IllegalAccessException
+     *             表示該 constructor 無法存取。
+     * @throws IllegalArgumentException
+     *             表示有多個適用的 constructor，但無法判斷要呼叫哪一個。
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    <T> InstanceFactory<T> resolveConstructor(Class<?>[] argTypes) throws NoSuchMethodException,
+            InstantiationException, IllegalAccessException {
+        MethodKey key = new MethodKey(CONSTRUCTOR_NAME, argTypes);
+        Object factory = constructorCalls.get(key);
+        if (factory == null) {
+            try {
+                List<Constructor<T>> candidates = new ArrayList<Constructor<T>>();
+                for (Constructor<?> constructor : klass.getDeclaredConstructors()) {
+                    candidates.add((Constructor<T>) constructor);
+                }
+
+                ExecutableResolver.Resolution<Constructor<T>> resolution = ExecutableResolver
+                        .resolve(candidates, argTypes);
+                factory = resolution == null ? NOT_FOUND : InstanceFactory.of(resolution);
+
+            } catch (IllegalArgumentException e) {
+                factory = e;
+
+            } catch (InstantiationException e) {
+                factory = e;
+            }
+
+            Object existing = constructorCalls.putIfAbsent(
+                    new MethodKey(CONSTRUCTOR_NAME, argTypes.clone()), factory);
+            if (existing != null) {
+                factory = existing;
+            }
+        }
+
+        if (factory == NOT_FOUND) {
+            throw new NoSuchMethodException(klass.getName() + ".<init>" + Arrays.asList(argTypes));
+
+        } else if (factory instanceof IllegalArgumentException) {
+            throw new IllegalArgumentException(((IllegalArgumentException) factory).getMessage());
+
+        } else if (factory instanceof InstantiationException) {
+            throw new InstantiationException(((InstantiationException) factory).getMessage());
+        }
+        return (InstanceFactory) factory;
+    }
+
+    /**
+     * 收集本類別、父類別及介面中名為 <code>methodName</code> 的函式，被子類別覆寫的函式不列入。
+     */
+    private List<Method> collectMethods(String methodName) {
+        List<Method> candidates = new ArrayList<Method>();
+        Set<List<Class<?>>> signatures = new HashSet<List<Class<?>>>();
+        Deque<Class<?>> interfaces = new ArrayDeque<Class<?>>();
+
+        for (Class<?> type = klass; type != null; type = type.getSuperclass()) {
+            collectMethods(type, methodName, candidates, signatures);
+            interfaces.addAll(Arrays.asList(type.getInterfaces()));
+        }
+
+        // 介面中的 default method 及 static method
+        Set<Class<?>> visited = new HashSet<Class<?>>();
+        while (!interfaces.isEmpty()) {
+            Class<?> type = interfaces.poll();
+            if (visited.add(type)) {
+                collectMethods(type, methodName, candidates, signatures);
+                interfaces.addAll(Arrays.asList(type.getInterfaces()));
+            }
+        }
+        return candidates;
+    }
+
+    private static void collectMethods(Class<?> type, String methodName, List<Method> candidates,
+            Set<List<Class<?>>> signatures) {
+        for (Method method : type.getDeclaredMethods()) {
+            if (method.isBridge() || !method.getName().equals(methodName)) {
+                continue;
+            }
+            if (signatures.add(Arrays.<Class<?>> asList(method.getParameterTypes()))) {
+                method.setAccessible(true);
+                candidates.add(method);
+            }
+        }
+    }
+
+    /**
+     * 函式快取的 key，由函式名稱及參數型態組成。
+     */
+    private static final class MethodKey {
+        private final String name;
+
+        private final Class<?>[] parameterTypes;
+
+        private final int hashCode;
+
+        MethodKey(String name, Class<?>[] parameterTypes) {
+            this.name = name;
+            this.parameterTypes = parameterTypes;
+            this.hashCode = 31 * name.hashCode() + Arrays.hashCode(parameterTypes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof MethodKey)) {
+                return false;
+            }
+            MethodKey other = (MethodKey) obj;
+            return name.equals(other.name) && Arrays.equals(parameterTypes, other.parameterTypes);
+        }
+    }
+}
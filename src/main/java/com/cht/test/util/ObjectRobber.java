@@ -1,12 +1,12 @@
 package com.cht.test.util;
 
-import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.List;
+import java.util.function.Supplier;
 
 import javax.annotation.Resource;
 
@@ -74,6 +74,7 @@ public class ObjectRobber {
      * @param fieldName
      *            欄位名稱，支援巢狀用法，例如 directProperty.subProperty。
      * @return 該欄位的內容，如果是 primitive 數值，則會回傳其 Wrapper 類別。
+     * @see PropertyPath
      * @throws SecurityException
      *             表示無法完成本項要求。
      * @throws NoSuchFieldException
@@ -83,26 +84,10 @@ public class ObjectRobber {
      * @throws IllegalArgumentException
      *             表示丟入的參數錯誤，均不可為 <code>null</code>。
      */
-    @SuppressWarnings("unchecked")
     public static <T> T get(Object object, String fieldName) throws SecurityException,
             NoSuchFieldException, IllegalAccessException {
-        for (String field : fieldName.split("\\.")) {
-            object = getImpl(object, field);
-        }
-
-        return (T) object;
-    }
-
-    private static Object getImpl(Object object, String fieldName) throws SecurityException,
-            NoSuchFieldException, IllegalAccessException {
-        // 自動由 object 取得其 Class，所以一定要指定值
-        if (object == null) {
-            throw new IllegalArgumentException("\"object\" must be specified."
-                    + " If you want to get value of a static memeber,"
-                    + " you should use get(Class, String) instead.");
-        }
-
-        return doFieldOperation(object.getClass(), object, fieldName, false, null);
+        // 巢狀路徑只會解析一次，之後直接使用快取的 PropertyPath
+        return PropertyPath.compile(fieldName).get(object);
     }
 
     /**
@@ -141,10 +126,11 @@ public class ObjectRobber {
      * 如果要設定類別欄位的內容，請改用 {@link #set(Class, String, Object)} 方法。
      *
      * @see java.lang.reflect.Field#set(Object, Object)
+     * @see PropertyPath
      * @param object
      *            包含設值對象的實體物件。
      * @param fieldName
-     *            欄位名稱。
+     *            欄位名稱，支援巢狀用法，例如 directProperty.subProperty，路徑中間不可為 <code>null</code>。
      * @param value
      *            要指定的數值。
      * @throws SecurityException
@@ -164,11 +150,49 @@ public class ObjectRobber {
                     + " If you want to set value of a static memeber,"
                     + " you should use set(Class, String, Object) instead.");
         }
-        doFieldOperation(object.getClass(), object, fieldName, true, value);
+
+        if (fieldName.indexOf('.') >= 0) {
+            PropertyPath.compile(fieldName).set(object, value);
+
+        } else {
+            doFieldOperation(object.getClass(), object, fieldName, true, value);
+        }
+    }
+
+    /**
+     * 取得 <code>klass</code> 中 <code>fieldName</code> 欄位的存取器，找不到時會往父類別找。
+     * <p>
+     * 跟 {@link #get(Object, String)}、{@link #set(Object, String, Object)} 不同，存取器會把欄位解析成
+     * {@link java.lang.invoke.MethodHandle} 並重複使用，適合在迴圈中大量存取同一個欄位，primitive
+     * 欄位也可以透過 {@link FieldAccessor#getInt(Object)} 等函式避免 boxing。同一個欄位只會建立一個存取器。
+     *
+     * @param <V>
+     *            欄位的型態，primitive 型態請使用其 Wrapper 類別。
+     * @param klass
+     *            欄位所在的類別或其子類別。
+     * @param fieldName
+     *            欄位名稱。
+     * @return 欄位存取器。
+     * @throws NoSuchFieldException
+     *             表示欄位名稱錯誤。
+     * @throws IllegalAccessException
+     *             表示該欄位無法存取。
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> FieldAccessor<V> accessor(Class<?> klass, String fieldName)
+            throws NoSuchFieldException, IllegalAccessException {
+        Assert.notNull(klass, "\"klass\" must be specified.");
+        FieldAccessor<V> accessor = (FieldAccessor<V>) MemberCache.of(klass).findAccessor(fieldName);
+        if (accessor == null) {
+            throw new NoSuchFieldException(fieldName);
+        }
+        return accessor;
     }
 
     /**
      * 將物件中有 {@link Autowired} 或是 {@link Resource} 標註，且資料型態與指定值相符的欄位填入物件。
+     * <p>
+     * 父類別中的欄位也會一併處理，如果要一次注入多個物件，請改用 {@link #manualWire(Object, Object...)}。
      *
      * @param object
      *            包含設值對象的實體物件。
@@ -181,20 +205,39 @@ public class ObjectRobber {
      */
     public static void manualWire(Object object, Object valueToBeInjected)
             throws SecurityException, IllegalAccessException {
-        Assert.notNull(object);
-        Assert.notNull(valueToBeInjected);
-
-        Field[] fields = object.getClass().getDeclaredFields();
-        for (Field field : fields) {
-            if ((field.getAnnotation(Autowired.class) != null || field
-                    .getAnnotation(Resource.class) != null)
-                    && field.getType().isAssignableFrom(valueToBeInjected.getClass())) {
+        manualWire(object, new Object[] { valueToBeInjected });
+    }
 
-                try {
-                    set(object, field.getName(), valueToBeInjected);
+    /**
+     * 將多個物件一次注入到 <code>object</code> 中有 {@link Autowired}、{@link Resource} 或是
+     * <code>javax.inject.Inject</code> 標註的欄位，父類別中的欄位也會一併處理。
+     * <p>
+     * 每個類別需要注入的欄位只會掃描一次，之後只需要走訪一遍這些欄位。每個欄位會注入 <code>beans</code>
+     * 中第一個型態相符的物件，所以型態相容的物件請把比較精確的排在前面；沒有相符物件的欄位則維持原值。
+     *
+     * @param object
+     *            包含設值對象的實體物件。
+     * @param beans
+     *            要注入的物件，通常是 Mock 物件。
+     * @throws SecurityException
+     *             表示無法完成本項要求。
+     * @throws IllegalAccessException
+     *             代表無存取權限。
+     */
+    public static void manualWire(Object object, Object... beans) throws SecurityException,
+            IllegalAccessException {
+        Assert.notNull(object, "\"object\" must be specified.");
+        Assert.notEmpty(beans, "\"beans\" must be specified.");
+        for (Object bean : beans) {
+            Assert.notNull(bean, "\"beans\" must not contain null.");
+        }
 
-                } catch (NoSuchFieldException e) {
-                    throw new RuntimeException("Cannot set value.", e);
+        for (MemberCache.InjectionPoint point : MemberCache.of(object.getClass())
+                .injectionPoints()) {
+            for (Object bean : beans) {
+                if (point.accepts(bean)) {
+                    point.inject(object, bean);
+                    break;
                 }
             }
         }
@@ -203,25 +246,10 @@ public class ObjectRobber {
     private static Object doFieldOperation(Class<?> klass, Object object, String fieldName,
             boolean set, Object value) throws SecurityException, NoSuchFieldException,
             IllegalAccessException {
-        // 取得欄位，如果取不到就往父類別找
-        Field field = null;
-        while (field == null) {
-            try {
-                field = klass.getDeclaredField(fieldName);
-
-            } catch (NoSuchFieldException e) {
-                if (klass.getSuperclass() != null) {
-                    klass = klass.getSuperclass();
-
-                } else {
-                    throw e;
-                }
-            }
-        }
-
-        final boolean isAccessable = field.isAccessible();
-        if (isAccessable == false) {
-            field.setAccessible(true);
+        // 取得欄位，如果取不到就往父類別找；結果會被快取，而且已經設為可存取
+        Field field = MemberCache.findField(klass, fieldName);
+        if (field == null) {
+            throw new NoSuchFieldException(fieldName);
         }
 
         Object returnValue = null;
@@ -232,15 +260,15 @@ public class ObjectRobber {
             returnValue = field.get(object);
         }
 
-        if (isAccessable == false) {
-            field.setAccessible(false);
-        }
-
         return returnValue;
     }
 
     /**
      * 呼叫 <code>object</code> 物件的 <code>methodName</code> ，並依序代入所需的參數。
+     * <p>
+     * 會由物件的類別、父類別及介面中找出名稱相符的函式，並依 Java 的 overload 規則挑選最適合的一個，支援 boxing、
+     * un-boxing、primitive widening、子類別參數、<code>null</code> 參數及 varargs。挑選結果會依 (類別, 名稱, 參數型態)
+     * 快取，重複呼叫時不會再重新挑選。
      *
      * @param object
      *            目標物件。
@@ -254,9 +282,11 @@ public class ObjectRobber {
      * @throws SecurityException
      *             表示無法完成本項要求。
      * @throws NoSuchMethodException
-     *             表示 Method 名稱錯誤。
+     *             表示 Method 名稱錯誤，或是沒有參數相容的 Method。
      * @throws IllegalAccessException
      *             代表無存取權限。
+     * @throws IllegalArgumentException
+     *             表示有多個參數相容的 Method，但無法判斷要呼叫哪一個。
      * @throws InvocationTargetException
      *             表示呼叫底層物件時發生錯錯誤。
      */
@@ -265,160 +295,146 @@ public class ObjectRobber {
             InvocationTargetException {
         // 必須要指定物件，否則無法取得對應的內容
         if (object == null) {
-            throw new IllegalArgumentException("\"object\" must be specified."
-                    + " If you want to invoke a static method, you should use"
-                    + " invoke(Class, Object, String, Class[], Object[]),"
-                    + " and omit the \"Object\" parameter instead.");
+            throw new IllegalArgumentException("\"object\" must be specified.");
         }
 
         // 如果沒有指定參數內容，那表示不用參數
         if (params == null) {
-            return (T) invoke(object.getClass(), object, methodName, new Class[0], new Object[0]);
+            params = new Object[0];
         }
 
-        // 不然就一一取得 params 的類別，然後再 invoke
-        Class<?>[] args = new Class[params.length];
-        for (int i = 0; i < params.length; i++) {
-            if (params[i] != null) {
-                args[i] = params[i].getClass();
-            }
-        }
-
-        // 由實際的 method 中取得相容的變數型態
-        Method[] methods = object.getClass().getDeclaredMethods();
-        Set<Integer> possibleIndexSet = new HashSet<Integer>();
-        for (int i = 0; i < methods.length; i++) {
-            Class<?>[] possibleArgs = methods[i].getParameterTypes();
-            if (Arrays.equals(possibleArgs, args)) {
-                return invoke(object.getClass(), object, methodName, args, params);
+        // 一一取得 params 的類別，null 參數的類別就保持 null
+        Class<?>[] args = argumentTypes(params);
 
-            } else if (isCompatiable(possibleArgs, args)) {
-                possibleIndexSet.add(Integer.valueOf(i));
-            }
-        }
+        // 由實際的 method 中挑選相容的，結果會被快取
+        ExecutableResolver.Resolution<Method> resolution = MemberCache.of(object.getClass())
+                .resolveMethod(methodName, args);
+        Object value = resolution.getExecutable().invoke(object, resolution.adapt(params));
 
-        if (possibleIndexSet.size() == 1) {
-            Integer index = possibleIndexSet.iterator().next();
-            args = methods[index.intValue()].getParameterTypes();
-            return (T) invoke(object.getClass(), object, methodName, args, params);
-
-        } else if (possibleIndexSet.isEmpty()) {
-            throw new NoSuchMethodException(object.getClass().getName() + "." + methodName + "("
-                    + Arrays.asList(args) + ")");
-
-        } else {
-            throw new IllegalArgumentException("\"params\""
-                    + " cannot be determined as a possible arguments array."
-                    + " You are suggest to use "
-                    + "invoke(Class, Object, String, Class[], Object[])"
-                    + " to describe the desired method explicitly.");
-
-        }
-    }
-
-    private static boolean isCompatiable(Class<?>[] possibleArgs, Object[] params) {
-        // TODO 判斷兩個 Class[] 是否相容
-        return false;
+        @SuppressWarnings("unchecked")
+        T result = (T) value;
+        return result;
     }
 
     /**
-     * Reflection 中 method.invoke 的包裝，不過你必須明確的指定所有的參數(除了那些可為 <code>null</code>
-     * 的以外)。
+     * 輸入初始化參數，取得對應的 constructor，並產生物件實體。private 的 constructor 也可以使用。
+     * <p>
+     * constructor 的挑選規則與 {@link #invoke(Object, String, Object...)} 相同，支援 boxing、子類別參數、
+     * <code>null</code> 參數及 varargs；挑選結果會依 (類別, 參數型態) 快取成 {@link InstanceFactory}。
      *
      * @param klass
-     *            類別物件。如果其值為 <code>null</code>，那會自動由 object 取得，如果 object 也為
-     *            <code>null</code>，那你就爽了。
-     * @param object
-     *            實體物件，必須為 klass 或其子類別的實體; 不過如果要呼叫的方法為類別方法(靜態方法)，其值可為
-     *            <code>null</code>。
-     * @param methodName
-     *            要呼叫的方法名稱。
-     * @param args
-     *            要呼叫的方法的引數的 Class 陣列; 如果沒有引數，可為 <code>null</code>。
-     * @param params
-     *            要呼叫的方法所需代入的參數; 如果不需要參數，可為 <code>null</code>。
+     *            要建立的物件類別。
+     * @param initArgs
+     *            初始化參數。
+     * @param <T>
+     *            物件型別。
      * @return 初始化後的物件。
-     * @throws SecurityException
-     *             表示無法完成本項要求。
      * @throws NoSuchMethodException
-     *             表示 Method 名稱錯誤。
+     *             表示沒有可用的建構式。
+     * @throws InstantiationException
+     *             表示初始化過程發生錯誤。
      * @throws IllegalAccessException
-     *             代表無存取權限。
-     * @throws IllegalArgumentException
-     *             表示丟入的參數錯誤，均不可為 <code>null</code>。
+     *             表示無存取權限。
      * @throws InvocationTargetException
-     *             表示呼叫底層物件時發生錯錯誤。
+     *             表示呼叫過程發生錯誤。
      */
-    private static <T> T invoke(Class<?> klass, Object object, String methodName, Class<?>[] args,
-            Object[] params) throws SecurityException, NoSuchMethodException,
-            IllegalAccessException, InvocationTargetException {
-        // 如果 klass 沒指定，只給 object，那就好心的幫忙懶人設定吧
-        if (klass == null || object != null) {
-            klass = object.getClass();
+    public static <T> T genInstance(Class<?> klass, Object... initArgs)
+            throws NoSuchMethodException, InstantiationException, IllegalAccessException,
+            InvocationTargetException {
+        if (initArgs == null) {
+            initArgs = new Object[0];
         }
 
-        Method method = null;
-        while (method == null) {
-            try {
-                method = klass.getDeclaredMethod(methodName, args);
-
-            } catch (NoSuchMethodException e) {
-                if (klass.getSuperclass() != null) {
-                    klass = klass.getSuperclass();
+        InstanceFactory<T> factory = MemberCache.of(klass).resolveConstructor(
+                argumentTypes(initArgs));
+        return factory.create(initArgs);
+    }
 
-                } else {
-                    throw e;
-                }
+    /**
+     * 依序產生 <code>count</code> 個物件實體，每個物件的初始化參數由 <code>argsSupplier</code> 提供。適合一次產生大量測試資料，
+     * 參數型態相同時 constructor 只會挑選一次。
+     *
+     * @param klass
+     *            要建立的物件類別。
+     * @param count
+     *            要產生的物件數量。
+     * @param argsSupplier
+     *            每次呼叫提供一組初始化參數，不需要參數時可回傳 <code>null</code>。
+     * @param <T>
+     *            物件型別。
+     * @return 依序產生的物件。
+     * @throws NoSuchMethodException
+     *             表示沒有可用的建構式。
+     * @throws InstantiationException
+     *             表示初始化過程發生錯誤。
+     * @throws IllegalAccessException
+     *             表示無存取權限。
+     * @throws InvocationTargetException
+     *             表示呼叫過程發生錯誤。
+     */
+    public static <T> List<T> genInstances(Class<T> klass, int count,
+            Supplier<Object[]> argsSupplier) throws NoSuchMethodException,
+            InstantiationException, IllegalAccessException, InvocationTargetException {
+        Assert.isTrue(count >= 0, "\"count\" must not be negative.");
+        Assert.notNull(argsSupplier, "\"argsSupplier\" must be specified.");
+
+        MemberCache cache = MemberCache.of(klass);
+        List<T> instances = new ArrayList<T>(count);
+        InstanceFactory<T> factory = null;
+        Class<?>[] lastTypes = null;
+        for (int i = 0; i < count; i++) {
+            Object[] initArgs = argsSupplier.get();
+            if (initArgs == null) {
+                initArgs = new Object[0];
             }
-        }
-
-        final boolean isAccessable = method.isAccessible();
-        if (isAccessable == false) {
-            method.setAccessible(true);
-        }
 
-        Object value = method.invoke(object, params);
-
-        if (isAccessable == false) {
-            method.setAccessible(false);
+            // 參數型態跟上一筆相同時直接沿用，省下查詢快取的成本
+            Class<?>[] types = argumentTypes(initArgs);
+            if (factory == null || !Arrays.equals(types, lastTypes)) {
+                factory = cache.resolveConstructor(types);
+                lastTypes = types;
+            }
+            instances.add(factory.create(initArgs));
         }
-
-        @SuppressWarnings("unchecked")
-        T result = (T) value;
-        return result;
+        return instances;
     }
 
     /**
-     * 輸入初始化參數，取得對應的 constructor，並產生物件實體。private 的 constructor 也可以使用。
+     * 取得以 <code>parameterTypes</code> 呼叫 <code>klass</code> constructor 的物件工廠，private 的
+     * constructor 也可以使用。
+     * <p>
+     * <code>parameterTypes</code> 不需要跟 constructor 的宣告完全相同，挑選規則與
+     * {@link #genInstance(Class, Object...)} 相同。同樣的參數型態只會建立一個工廠。
      *
      * @param klass
      *            要建立的物件類別。
-     * @param initArgs
-     *            初始化參數。
+     * @param parameterTypes
+     *            之後呼叫 {@link InstanceFactory#newInstance(Object...)} 時的參數型態。
      * @param <T>
      *            物件型別。
-     * @return 初始化後的物件。
+     * @return 物件工廠。
      * @throws NoSuchMethodException
      *             表示沒有可用的建構式。
      * @throws InstantiationException
-     *             表示初始化過程發生錯誤。
+     *             表示該類別是抽象類別。
      * @throws IllegalAccessException
      *             表示無存取權限。
-     * @throws InvocationTargetException
-     *             表示呼叫過程發生錯誤。
      */
-    public static <T> T genInstance(Class<?> klass, Object... initArgs)
-            throws NoSuchMethodException, InstantiationException, IllegalAccessException,
-            InvocationTargetException {
-        Class<?>[] initArgClasses = new Class<?>[initArgs.length];
-        for (int i = 0; i < initArgs.length; ++i)
-            initArgClasses[i] = initArgs[i].getClass();
-        Constructor<?> constructor = klass.getDeclaredConstructor(initArgClasses);
-        if (!constructor.isAccessible())
-            constructor.setAccessible(true);
+    public static <T> InstanceFactory<T> instanceFactory(Class<T> klass,
+            Class<?>... parameterTypes) throws NoSuchMethodException, InstantiationException,
+            IllegalAccessException {
+        Assert.notNull(klass, "\"klass\" must be specified.");
+        return MemberCache.of(klass).resolveConstructor(
+                parameterTypes == null ? new Class<?>[0] : parameterTypes);
+    }
 
-        @SuppressWarnings("unchecked")
-        T result = (T) constructor.newInstance(initArgs);
-        return result;
+    private static Class<?>[] argumentTypes(Object[] args) {
+        Class<?>[] types = new Class<?>[args.length];
+        for (int i = 0; i < args.length; ++i) {
+            if (args[i] != null) {
+                types[i] = args[i].getClass();
+            }
+        }
+        return types;
     }
 }
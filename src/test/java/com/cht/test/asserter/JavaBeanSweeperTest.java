@@ -0,0 +1,107 @@
+package com.cht.test.asserter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.cht.test.asserter.sweep.SweptBean;
+
+public class JavaBeanSweeperTest {
+
+    @Test
+    public void testSweep() {
+        assertEquals(Arrays.asList(GoodBean.class.getName()),
+                JavaBeanSweeper.forClasses(GoodBean.class, NotSerializableBean.class)
+                        .exclude(NotSerializableBean.class).sweep());
+    }
+
+    @Test
+    public void testSweepPackage() {
+        // 同一個 package 裡的工具類別與 builder 不是 JavaBean，不會被測試
+        assertEquals(Arrays.asList(SweptBean.class.getName()),
+                JavaBeanSweeper.forPackages(SweptBean.class.getPackage().getName()).sweep());
+    }
+
+    @Test
+    public void testFailuresAreAggregated() {
+        try {
+            JavaBeanSweeper.forClasses(GoodBean.class, NotSerializableBean.class,
+                    NoDefaultConstructorBean.class).parallelism(2).sweep();
+            fail();
+
+        } catch (AssertionError e) {
+            assertEquals(2, e.getSuppressed().length);
+            assertTrue(e.getMessage().contains(NotSerializableBean.class.getName()));
+            assertTrue(e.getMessage().contains(NoDefaultConstructorBean.class.getName()));
+        }
+    }
+
+    @Test
+    public void testTypeArgumentsArePropagated() {
+        try (TypeArgumentScope scope = PropertyAsserter.openTypeArgumentScope()) {
+            scope.registerTypeAndDefaultArgument(Amount.class, new Amount(BigDecimal.ONE));
+            JavaBeanSweeper.forClasses(AmountBean.class).sweep();
+        }
+    }
+
+    public static class GoodBean implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private String name;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+
+    public static class NotSerializableBean {
+    }
+
+    public static class NoDefaultConstructorBean implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        public NoDefaultConstructorBean(String name) {
+        }
+    }
+
+    /**
+     * 沒有 default constructor 又是 final，只能使用註冊的參數。
+     */
+    public static final class Amount implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final BigDecimal value;
+
+        public Amount(BigDecimal value) {
+            this.value = value;
+        }
+
+        public BigDecimal getValue() {
+            return value;
+        }
+    }
+
+    public static class AmountBean implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private Amount amount;
+
+        public Amount getAmount() {
+            return amount;
+        }
+
+        public void setAmount(Amount amount) {
+            this.amount = amount;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.cht.test.asserter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class PropertyAsserterTest {
+
+    @After
+    public void tearDown() {
+        PropertyAsserter.resetToDefaultTypes();
+        PropertyAsserter.clearMockedProperties();
+    }
+
+    @Test
+    public void testAssertBasicGetterSetterBehavior() {
+        PropertyAsserter.assertBasicGetterSetterBehavior(new SimpleBean());
+        PropertyAsserter.assertBasicGetterSetterBehavior(new SimpleBean(), "name", "amount");
+    }
+
+    @Test
+    public void testRegisteredArgumentIsUsedAfterCaching() {
+        SimpleBean bean = new SimpleBean();
+        PropertyAsserter.assertBasicGetterSetterBehavior(bean, "amount");
+
+        BigDecimal amount = new BigDecimal("7788");
+        PropertyAsserter.registerTypeAndDefaultArgument(BigDecimal.class, amount);
+        PropertyAsserter.assertBasicGetterSetterBehavior(bean, "amount");
+
+        assertSame(amount, bean.getAmount());
+    }
+
+    @Test
+    public void testAssignableTypeArgument() {
+        assertTrue(PropertyAsserter.defaultArgumentForType(ArrayList.class) instanceof ArrayList);
+        assertNull(PropertyAsserter.defaultArgumentForType(LinkedList.class));
+
+        SimpleBean bean = new SimpleBean();
+        PropertyAsserter.assertBasicGetterSetterBehavior(bean, "arrayList");
+        assertSame(PropertyAsserter.defaultArgumentForType(List.class), bean.getArrayList());
+    }
+
+    @Test
+    public void testTypeArgumentScope() throws Exception {
+        BigDecimal global = (BigDecimal) PropertyAsserter.defaultArgumentForType(BigDecimal.class);
+        final BigDecimal scoped = new BigDecimal("5566");
+
+        try (TypeArgumentScope scope = PropertyAsserter.openTypeArgumentScope()) {
+            scope.registerTypeAndDefaultArgument(BigDecimal.class, scoped);
+            assertSame(scoped, PropertyAsserter.defaultArgumentForType(BigDecimal.class));
+
+            // 其他 Thread 不受影響
+            final Object[] other = new Object[1];
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    other[0] = PropertyAsserter.defaultArgumentForType(BigDecimal.class);
+                }
+            };
+            thread.start();
+            thread.join();
+            assertSame(global, other[0]);
+        }
+        assertSame(global, PropertyAsserter.defaultArgumentForType(BigDecimal.class));
+    }
+
+    @Test
+    public void testValueGenerators() {
+        GeneratedBean bean = new GeneratedBean();
+        PropertyAsserter.assertBasicGetterSetterBehavior(bean);
+
+        assertTrue(Proxy.isProxyClass(bean.getRunnable().getClass()));
+        assertTrue(bean.getQueue() instanceof ArrayDeque);
+        assertEquals(Arrays.asList(GeneratedBean.class.getName() + ".shape"),
+                new ArrayList<String>(PropertyAsserter.getMockedProperties().get(Shape.class)));
+    }
+
+    @Test
+    public void testMocksAreNotShared() {
+        assertNotSame(ValuePipeline.MOCK_GENERATOR.generate(Shape.class, null),
+                ValuePipeline.MOCK_GENERATOR.generate(Shape.class, null));
+    }
+
+    @Test
+    public void testRegisteredValueGenerator() {
+        final Circle circle = new Circle();
+        PropertyAsserter.registerValueGenerator(new ValueGenerator() {
+            @Override
+            public boolean accepts(Class<?> type) {
+                return type == Shape.class;
+            }
+
+            @Override
+            public Object generate(Class<?> type, ValuePipeline pipeline) {
+                return circle;
+            }
+        });
+
+        GeneratedBean bean = new GeneratedBean();
+        PropertyAsserter.assertBasicGetterSetterBehavior(bean, "shape");
+        assertSame(circle, bean.getShape());
+        assertTrue(PropertyAsserter.getMockedProperties().isEmpty());
+    }
+
+    @Test(expected = AssertionError.class)
+    public void testReadOnlyProperty() {
+        PropertyAsserter.assertBasicGetterSetterBehavior(new SimpleBean(), "readOnly");
+    }
+
+    public abstract static class Shape {
+    }
+
+    public static class Circle extends Shape {
+    }
+
+    public static class GeneratedBean {
+        private Runnable runnable;
+        private Queue<String> queue;
+        private Shape shape;
+
+        public Runnable getRunnable() {
+            return runnable;
+        }
+
+        public void setRunnable(Runnable runnable) {
+            this.runnable = runnable;
+        }
+
+        public Queue<String> getQueue() {
+            return queue;
+        }
+
+        public void setQueue(Queue<String> queue) {
+            this.queue = queue;
+        }
+
+        public Shape getShape() {
+            return shape;
+        }
+
+        public void setShape(Shape shape) {
+            this.shape = shape;
+        }
+    }
+
+    public static class SimpleBean {
+        private String name;
+        private int count;
+        private BigDecimal amount;
+        private List<String> items;
+        private ArrayList<String> arrayList;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public void setCount(int count) {
+            this.count = count;
+        }
+
+        public BigDecimal getAmount() {
+            return amount;
+        }
+
+        public void setAmount(BigDecimal amount) {
+            this.amount = amount;
+        }
+
+        public List<String> getItems() {
+            return items;
+        }
+
+        public void setItems(List<String> items) {
+            this.items = items;
+        }
+
+        public ArrayList<String> getArrayList() {
+            return arrayList;
+        }
+
+        public void setArrayList(ArrayList<String> arrayList) {
+            this.arrayList = arrayList;
+        }
+
+        public String getReadOnly() {
+            return name;
+        }
+    }
+}
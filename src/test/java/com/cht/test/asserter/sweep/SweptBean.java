@@ -0,0 +1,20 @@
+package com.cht.test.asserter.sweep;
+
+import java.io.Serializable;
+
+/**
+ * {@link com.cht.test.asserter.JavaBeanSweeperTest} 掃描 package 時唯一應該被測試的 JavaBean。
+ */
+public class SweptBean implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private String name;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+}
@@ -0,0 +1,18 @@
+package com.cht.test.asserter.sweep;
+
+/**
+ * builder 有 default constructor，但沒有 getter/setter，不是 JavaBean。
+ */
+public class SweptBeanBuilder {
+
+    private String name;
+
+    public SweptBeanBuilder name(String name) {
+        this.name = name;
+        return this;
+    }
+
+    public SweptBean build() {
+        return SweptBeans.of(name);
+    }
+}
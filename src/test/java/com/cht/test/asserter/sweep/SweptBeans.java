@@ -0,0 +1,16 @@
+package com.cht.test.asserter.sweep;
+
+/**
+ * 工具類別，沒有 default constructor，不是 JavaBean。
+ */
+public final class SweptBeans {
+
+    private SweptBeans() {
+    }
+
+    public static SweptBean of(String name) {
+        SweptBean bean = new SweptBean();
+        bean.setName(name);
+        return bean;
+    }
+}
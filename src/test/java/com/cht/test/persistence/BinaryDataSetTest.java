@@ -0,0 +1,139 @@
+package com.cht.test.persistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.ITable;
+import org.dbunit.dataset.xml.FlatXmlDataSetBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.test.context.TestContext;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+public class BinaryDataSetTest {
+
+    private static final String XML = "<dataset>"
+            + "<PERSON ID=\"1\" NAME=\"黃培棠\" CODE=\"007\" BIRTHDAY=\"[NOW]\"/>"
+            + "<PERSON ID=\"2\" NAME=\"[NULL]\" CODE=\"8\"/>"
+            + "<ADDRESS ID=\"-3\" PERSON_ID=\"1\"/>" + "</dataset>";
+
+    private static final String XML_LOCATION = "test-dataset.xml";
+
+    private static final String BINARY_LOCATION = "test-dataset.bin";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        assertDataSet(writeAndRead(false));
+    }
+
+    @Test
+    public void testCompressed() throws Exception {
+        assertDataSet(writeAndRead(true));
+    }
+
+    @Test
+    public void testUpToDate() throws Exception {
+        File xml = folder.newFile("test-dataset.xml");
+        Files.write(XML, xml, Charsets.UTF_8);
+        xml.setLastModified(1000000000000L);
+        File binary = new BinaryDataSetWriter(false).convert(xml);
+        assertTrue(BinaryDataSetReader.isUpToDate(new FileSystemResource(binary),
+                new FileSystemResource(xml)));
+
+        // 轉換之後修改 XML，二進位 dataset 就過期了
+        xml.setLastModified(1000000001000L);
+        assertFalse(BinaryDataSetReader.isUpToDate(new FileSystemResource(binary),
+                new FileSystemResource(xml)));
+        Files.write(XML.replace("007", "0007"), xml, Charsets.UTF_8);
+        xml.setLastModified(1000000000000L);
+        assertFalse(BinaryDataSetReader.isUpToDate(new FileSystemResource(binary),
+                new FileSystemResource(xml)));
+
+        // 不是由 XML 轉換的無法確認
+        assertFalse(BinaryDataSetReader.isUpToDate(new FileSystemResource(writeBinary(false)),
+                new FileSystemResource(xml)));
+    }
+
+    @Test
+    public void testListenerDetectsBinary() throws Exception {
+        File xml = folder.newFile("test-dataset.xml");
+        Files.write(XML, xml, Charsets.UTF_8);
+        xml.setLastModified(1000000000000L);
+        File binary = new BinaryDataSetWriter(false).convert(xml);
+        TestContext testContext = testContext(xml, binary);
+        CleanInsertTestExecutionListener listener = new CleanInsertTestExecutionListener();
+        assertEquals(BINARY_LOCATION, listener.findDataSetLocation(testContext));
+
+        // 轉換之後修改 XML，改用 XML
+        xml.setLastModified(1000000001000L);
+        assertEquals(XML_LOCATION, listener.findDataSetLocation(testContext));
+    }
+
+    @Test
+    public void testBinaryLocation() {
+        assertEquals("/com/cht/FooTest-dataset.bin",
+                BinaryDataSetReader.binaryLocationOf("/com/cht/FooTest-dataset.xml"));
+        assertNull(BinaryDataSetReader.binaryLocationOf("/com/cht/foo.xml"));
+    }
+
+    private static TestContext testContext(File xml, File binary) {
+        ApplicationContext applicationContext = mock(ApplicationContext.class);
+        when(applicationContext.getResource(XML_LOCATION)).thenReturn(
+                new FileSystemResource(xml));
+        when(applicationContext.getResource(BINARY_LOCATION)).thenReturn(
+                new FileSystemResource(binary));
+
+        TestContext testContext = mock(TestContext.class);
+        when(testContext.getTestInstance()).thenReturn(new AnnotatedTests());
+        when(testContext.getApplicationContext()).thenReturn(applicationContext);
+        return testContext;
+    }
+
+    private IDataSet writeAndRead(boolean compress) throws Exception {
+        return BinaryDataSetReader.read(new FileSystemResource(writeBinary(compress)));
+    }
+
+    private File writeBinary(boolean compress) throws Exception {
+        IDataSet xml = new FlatXmlDataSetBuilder().build(new ByteArrayInputStream(XML
+                .getBytes(Charsets.UTF_8)));
+        File file = folder.newFile("other-dataset.bin");
+        new BinaryDataSetWriter(compress).write(xml, file);
+        return file;
+    }
+
+    private static void assertDataSet(IDataSet dataSet) throws Exception {
+        ITable person = dataSet.getTable("PERSON");
+        assertEquals(2, person.getRowCount());
+        assertEquals(1L, person.getValue(0, "ID"));
+        assertEquals("黃培棠", person.getValue(0, "NAME"));
+        // 有前置 0 的值要保留原本的字串
+        assertEquals("007", person.getValue(0, "CODE"));
+        assertEquals("8", person.getValue(1, "CODE"));
+        assertEquals("[NOW]", person.getValue(0, "BIRTHDAY"));
+        assertEquals("[NULL]", person.getValue(1, "NAME"));
+        assertNull(person.getValue(1, "BIRTHDAY"));
+
+        ITable address = dataSet.getTable("ADDRESS");
+        assertEquals(-3L, address.getValue(0, "ID"));
+    }
+
+    @DataSetLocation(XML_LOCATION)
+    public static class AnnotatedTests {
+    }
+}
@@ -0,0 +1,186 @@
+package com.cht.test.persistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.dbunit.DatabaseUnitException;
+import org.dbunit.database.DatabaseConfig;
+import org.dbunit.database.DatabaseDataSourceConnection;
+import org.dbunit.database.IDatabaseConnection;
+import org.dbunit.dataset.Column;
+import org.dbunit.dataset.DataSetException;
+import org.dbunit.dataset.DefaultDataSet;
+import org.dbunit.dataset.DefaultTable;
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.ITable;
+import org.dbunit.dataset.ReplacementDataSet;
+import org.dbunit.dataset.datatype.DataType;
+import org.dbunit.ext.h2.H2DataTypeFactory;
+import org.dbunit.operation.DatabaseOperation;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BulkLoadOperationTest {
+
+    private static final Date NOW = new Date(1500000000123L);
+
+    private IDatabaseConnection connection;
+
+    @Before
+    public void setUp() throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:bulkLoad;DB_CLOSE_DELAY=-1");
+        connection = new DatabaseDataSourceConnection(dataSource);
+        connection.getConfig().setProperty(DatabaseConfig.PROPERTY_DATATYPE_FACTORY,
+                new H2DataTypeFactory());
+        // FlatXML 的空字串，CLEAN_INSERT 預設不允許
+        connection.getConfig().setFeature(DatabaseConfig.FEATURE_ALLOW_EMPTY_FIELDS, true);
+        execute("CREATE TABLE PERSON (ID BIGINT PRIMARY KEY, NAME VARCHAR(100),"
+                + " NOTE VARCHAR(100), PHOTO VARBINARY(100), BIRTHDAY TIMESTAMP,"
+                + " CREATED TIMESTAMP)",
+                "CREATE TABLE ADDRESS (ID BIGINT PRIMARY KEY,"
+                        + " PERSON_ID BIGINT REFERENCES PERSON (ID), CITY VARCHAR(100))");
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        execute("DROP ALL OBJECTS");
+        connection.close();
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        List<List<Object>> expected = load(DatabaseOperation.CLEAN_INSERT);
+        assertEquals(expected, load(new BulkLoadOperation(2, 0)));
+    }
+
+    @Test
+    public void testCsv() throws Exception {
+        List<List<Object>> expected = load(DatabaseOperation.CLEAN_INSERT);
+        assertEquals(expected, load(new BulkLoadOperation(2, 1)));
+
+        // NULL 與空字串不同
+        assertEquals("", expected.get(1).get(1));
+        assertNull(expected.get(1).get(2));
+        assertEquals("say \"hi\", it's", expected.get(2).get(1));
+        assertEquals(Arrays.asList(1, 2, 3), expected.get(0).get(3));
+        assertEquals(new Timestamp(NOW.getTime()), expected.get(0).get(5));
+    }
+
+    @Test
+    public void testReferentialIntegrityIsRestored() throws Exception {
+        load(new BulkLoadOperation(2, 1));
+        assertEquals("TRUE", referentialIntegrity());
+
+        // 原本就關閉時不會被打開
+        execute("SET REFERENTIAL_INTEGRITY FALSE");
+        load(new BulkLoadOperation(2, 1));
+        assertEquals("FALSE", referentialIntegrity());
+        execute("SET REFERENTIAL_INTEGRITY TRUE");
+    }
+
+    /**
+     * 載入 dataset，再以 JDBC 讀出所有資料；<code>byte[]</code> 轉成 {@link List} 以便比較。
+     */
+    private List<List<Object>> load(DatabaseOperation operation)
+            throws DatabaseUnitException, SQLException {
+        operation.execute(connection, dataSet());
+
+        List<List<Object>> rows = new ArrayList<List<Object>>();
+        Statement statement = connection.getConnection().createStatement();
+        try {
+            for (String tableName : new String[] { "PERSON", "ADDRESS" }) {
+                ResultSet resultSet = statement.executeQuery("SELECT * FROM " + tableName
+                        + " ORDER BY ID");
+                try {
+                    int columnCount = resultSet.getMetaData().getColumnCount();
+                    while (resultSet.next()) {
+                        List<Object> row = new ArrayList<Object>();
+                        for (int i = 1; i <= columnCount; i++) {
+                            Object value = resultSet.getObject(i);
+                            if (value instanceof byte[]) {
+                                List<Integer> bytes = new ArrayList<Integer>();
+                                for (byte b : (byte[]) value) {
+                                    bytes.add((int) b);
+                                }
+                                value = bytes;
+                            }
+                            row.add(value);
+                        }
+                        rows.add(row);
+                    }
+
+                } finally {
+                    resultSet.close();
+                }
+            }
+
+        } finally {
+            statement.close();
+        }
+        return rows;
+    }
+
+    /**
+     * 與 FlatXML 相同，所有的值都是字串，binary 以 Base64 表示。
+     */
+    private static IDataSet dataSet() throws DataSetException {
+        DefaultTable person = new DefaultTable("PERSON", new Column[] {
+                new Column("ID", DataType.UNKNOWN), new Column("NAME", DataType.UNKNOWN),
+                new Column("NOTE", DataType.UNKNOWN), new Column("PHOTO", DataType.UNKNOWN),
+                new Column("BIRTHDAY", DataType.UNKNOWN),
+                new Column("CREATED", DataType.UNKNOWN) });
+        person.addRow(new Object[] { "1", "Alice", "[NULL]", "AQID", "2010-01-01 08:00:00",
+                "[NOW]" });
+        person.addRow(new Object[] { "2", "", null, null, null, "[NOW]" });
+        person.addRow(new Object[] { "3", "say \"hi\", it's", "first\nsecond", "//79",
+                "2010-01-01 08:00:00.123", "[NOW]" });
+        DefaultTable address = new DefaultTable("ADDRESS", new Column[] {
+                new Column("ID", DataType.UNKNOWN), new Column("PERSON_ID", DataType.UNKNOWN),
+                new Column("CITY", DataType.UNKNOWN) });
+        address.addRow(new Object[] { "1", "1", "Taipei" });
+        address.addRow(new Object[] { "2", "3", "台北" });
+
+        ReplacementDataSet dataSet = new ReplacementDataSet(new DefaultDataSet(new ITable[] {
+                person, address }));
+        dataSet.addReplacementObject("[NULL]", null);
+        dataSet.addReplacementObject("[NOW]", NOW);
+        return dataSet;
+    }
+
+    private String referentialIntegrity() throws SQLException {
+        Statement statement = connection.getConnection().createStatement();
+        try {
+            ResultSet resultSet = statement.executeQuery("SELECT VALUE FROM"
+                    + " INFORMATION_SCHEMA.SETTINGS WHERE NAME = 'REFERENTIAL_INTEGRITY'");
+            resultSet.next();
+            return resultSet.getString(1);
+
+        } finally {
+            statement.close();
+        }
+    }
+
+    private void execute(String... sqls) throws SQLException {
+        Statement statement = connection.getConnection().createStatement();
+        try {
+            for (String sql : sqls) {
+                statement.execute(sql);
+            }
+
+        } finally {
+            statement.close();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.cht.test.persistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.dbunit.dataset.IDataSet;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.FileSystemResource;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+public class DataSetCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testParseOnce() throws Exception {
+        File file = writeDataSet("a");
+        DataSetCache cache = new DataSetCache(1024);
+
+        IDataSet dataSet = cache.get(new FileSystemResource(file));
+
+        assertSame(dataSet, cache.get(new FileSystemResource(file)));
+        assertEquals("a", dataSet.getTable("PERSON").getValue(0, "NAME"));
+    }
+
+    @Test
+    public void testReparseModified() throws Exception {
+        File file = writeDataSet("a");
+        DataSetCache cache = new DataSetCache(1024);
+        IDataSet dataSet = cache.get(new FileSystemResource(file));
+
+        writeDataSet("b");
+        file.setLastModified(file.lastModified() + 2000);
+        IDataSet modified = cache.get(new FileSystemResource(file));
+
+        assertNotSame(dataSet, modified);
+        assertEquals("b", modified.getTable("PERSON").getValue(0, "NAME"));
+    }
+
+    @Test
+    public void testEvict() throws Exception {
+        File file = writeDataSet("a");
+        DataSetCache cache = new DataSetCache(0);
+
+        IDataSet dataSet = cache.get(new FileSystemResource(file));
+
+        assertNotSame(dataSet, cache.get(new FileSystemResource(file)));
+    }
+
+    @Test
+    public void testWeighDecodedSize() throws Exception {
+        StringBuilder xml = new StringBuilder("<dataset>");
+        for (int i = 0; i < 100; i++) {
+            xml.append("<PERSON ID=\"").append(i).append("\" NAME=\"name\"/>");
+        }
+        xml.append("</dataset>");
+        File file = new File(folder.getRoot(), "large-dataset.xml");
+        Files.asCharSink(file, Charsets.UTF_8).write(xml);
+        File binary = new BinaryDataSetWriter(true).convert(file);
+        // 壓縮後的檔案比上限小，但解析後的 dataset 比上限大，不會快取
+        assertTrue(binary.length() < 1024);
+        DataSetCache cache = new DataSetCache(1024);
+
+        IDataSet dataSet = cache.get(new FileSystemResource(binary));
+        assertNotSame(dataSet, cache.get(new FileSystemResource(binary)));
+        dataSet = cache.get(new FileSystemResource(file));
+        assertNotSame(dataSet, cache.get(new FileSystemResource(file)));
+
+        // 上限足夠時快取
+        cache = new DataSetCache(1024 * 1024);
+        dataSet = cache.get(new FileSystemResource(binary));
+        assertSame(dataSet, cache.get(new FileSystemResource(binary)));
+    }
+
+    private File writeDataSet(String name) throws IOException {
+        File file = new File(folder.getRoot(), "cached-dataset.xml");
+        Files.asCharSink(file, Charsets.UTF_8).write(
+                "<dataset><PERSON ID=\"1\" NAME=\"" + name + "\"/></dataset>");
+        return file;
+    }
+}
@@ -0,0 +1,138 @@
+package com.cht.test.persistence;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import org.dbunit.DatabaseUnitException;
+import org.dbunit.database.DatabaseConfig;
+import org.dbunit.database.DatabaseDataSourceConnection;
+import org.dbunit.database.IDatabaseConnection;
+import org.dbunit.dataset.Column;
+import org.dbunit.dataset.DataSetException;
+import org.dbunit.dataset.DefaultDataSet;
+import org.dbunit.dataset.DefaultTable;
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.ITable;
+import org.dbunit.dataset.datatype.DataType;
+import org.dbunit.ext.h2.H2DataTypeFactory;
+import org.dbunit.operation.DatabaseOperation;
+import org.h2.jdbcx.JdbcDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 比較 DbUnit 的 {@link DatabaseOperation#CLEAN_INSERT} 與 {@link BulkLoadOperation} 以 JDBC batch 及 <code>CSVREAD</code>
+ * 載入 dataset 的時間。
+ * <p>
+ * 不會在單元測試時執行，請在 IDE 中直接執行 {@link #main(String[])}，或是:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.cht.test.persistence.DataSetLoadBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class DataSetLoadBenchmark {
+
+    @Param({ "10000", "100000", "1000000" })
+    public int rows;
+
+    @Param({ "dbunit", "batch", "csv" })
+    public String loader;
+
+    private IDatabaseConnection connection;
+
+    private IDataSet dataSet;
+
+    private DatabaseOperation operation;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException, DataSetException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1");
+        connection = new DatabaseDataSourceConnection(dataSource);
+        connection.getConfig().setProperty(DatabaseConfig.PROPERTY_DATATYPE_FACTORY,
+                new H2DataTypeFactory());
+        execute(connection.getConnection(), "DROP TABLE IF EXISTS ADDRESS",
+                "DROP TABLE IF EXISTS PERSON",
+                "CREATE TABLE PERSON (ID BIGINT PRIMARY KEY, NAME VARCHAR(100),"
+                        + " BIRTHDAY TIMESTAMP)",
+                "CREATE TABLE ADDRESS (ID BIGINT PRIMARY KEY,"
+                        + " PERSON_ID BIGINT REFERENCES PERSON (ID), CITY VARCHAR(100))");
+
+        // 與 FlatXML 相同，所有的值都是字串
+        DefaultTable person = new DefaultTable("PERSON", new Column[] {
+                new Column("ID", DataType.UNKNOWN), new Column("NAME", DataType.UNKNOWN),
+                new Column("BIRTHDAY", DataType.UNKNOWN) });
+        for (int i = 0; i < rows; i++) {
+            person.addRow(new Object[] { String.valueOf(i), "name" + i, "2010-01-01 08:00:00" });
+        }
+        DefaultTable address = new DefaultTable("ADDRESS", new Column[] {
+                new Column("ID", DataType.UNKNOWN), new Column("PERSON_ID", DataType.UNKNOWN),
+                new Column("CITY", DataType.UNKNOWN) });
+        for (int i = 0; i < rows / 10; i++) {
+            address.addRow(new Object[] { String.valueOf(i), String.valueOf(i * 10), "Taipei" });
+        }
+        dataSet = new DefaultDataSet(new ITable[] { person, address });
+
+        if ("dbunit".equals(loader)) {
+            operation = DatabaseOperation.CLEAN_INSERT;
+
+        } else if ("batch".equals(loader)) {
+            operation = new BulkLoadOperation(BulkLoadOperation.DEFAULT_BATCH_SIZE, 0);
+
+        } else {
+            operation = new BulkLoadOperation(BulkLoadOperation.DEFAULT_BATCH_SIZE, 1);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        execute(connection.getConnection(), "DROP TABLE ADDRESS", "DROP TABLE PERSON");
+        connection.close();
+    }
+
+    @Benchmark
+    public void load() throws DatabaseUnitException, SQLException {
+        operation.execute(connection, dataSet);
+    }
+
+    private static void execute(Connection connection, String... sqls) throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            for (String sql : sqls) {
+                statement.execute(sql);
+            }
+
+        } finally {
+            statement.close();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder().include(DataSetLoadBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,179 @@
+package com.cht.test.persistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestContext;
+
+public class DatabaseSnapshotTest {
+
+    private static final String DATA_SET = "classpath:com/cht/test/persistence/"
+            + "DatabaseSnapshotTest-dataset.xml";
+
+    private final CleanInsertTestExecutionListener listener =
+            new CleanInsertTestExecutionListener();
+
+    private JdbcDataSource dataSource;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private GenericApplicationContext applicationContext;
+
+    @Before
+    public void setUp() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:snapshot;DB_CLOSE_DELAY=-1");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        createTables();
+
+        applicationContext = new GenericApplicationContext();
+        applicationContext.getBeanFactory().registerSingleton("dataSource", dataSource);
+        applicationContext.refresh();
+    }
+
+    @After
+    public void tearDown() {
+        applicationContext.close();
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        TestContext testContext = testContext(new SnapshotTests());
+        listener.beforeTestMethod(testContext);
+        assertEquals("Alice", nameOf(1));
+
+        // 測試方法 commit 的異動
+        jdbcTemplate.update("UPDATE PERSON SET NAME = 'changed' WHERE ID = 1");
+        jdbcTemplate.update("DELETE FROM ADDRESS");
+        jdbcTemplate.update("INSERT INTO PERSON (ID, NAME) VALUES (3, 'Carol')");
+        listener.afterTestMethod(testContext);
+
+        // 下一個測試方法開始前恢復
+        listener.beforeTestMethod(testContext);
+        assertEquals("Alice", nameOf(1));
+        assertEquals(2, countOf("PERSON"));
+        assertEquals(1, countOf("ADDRESS"));
+
+        listener.afterTestClass(testContext);
+        assertEquals(0, snapshotCount());
+    }
+
+    @Test
+    public void testSnapshotAfterDatabaseRebuilt() throws Exception {
+        TestContext testContext = testContext(new SnapshotTests());
+        listener.beforeTestMethod(testContext);
+        listener.afterTestMethod(testContext);
+
+        // 例如 @DirtiesContext 重建了 embedded database，snapshot 的 schema 已經不存在
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+        createTables();
+        listener.beforeTestMethod(testContext);
+        assertEquals("Alice", nameOf(1));
+        assertEquals(2, countOf("PERSON"));
+        assertEquals(1, snapshotCount());
+
+        jdbcTemplate.update("DELETE FROM ADDRESS");
+        listener.afterTestMethod(testContext);
+        listener.beforeTestMethod(testContext);
+        assertEquals(1, countOf("ADDRESS"));
+
+        listener.afterTestClass(testContext);
+        assertEquals(0, snapshotCount());
+    }
+
+    @Test
+    public void testDirtyTables() throws Exception {
+        jdbcTemplate.batchUpdate("INSERT INTO PERSON (ID, NAME) VALUES (1, 'Alice')",
+                "INSERT INTO ADDRESS (ID, PERSON_ID, CITY) VALUES (1, 1, 'Taipei')",
+                "INSERT INTO TAG (ID, NAME) VALUES (1, 'vip')");
+        Connection connection = dataSource.getConnection();
+        try {
+            DatabaseSnapshot snapshot = DatabaseSnapshot.take(connection, new String[] {
+                    "PERSON", "ADDRESS", "TAG" }, true);
+
+            // commit 子資料表的異動，只需要恢復子資料表
+            jdbcTemplate.update("UPDATE ADDRESS SET CITY = 'Tainan'");
+            assertEquals(Arrays.asList("ADDRESS"), snapshot.getDirtyTables());
+            assertEquals(Arrays.asList("ADDRESS"), snapshot.restoreDirtyTables(connection));
+            assertEquals("Taipei", jdbcTemplate.queryForObject("SELECT CITY FROM ADDRESS",
+                    String.class));
+
+            // commit 子資料表、rollback 父資料表的異動；rollback 的異動也會恢復，參照父資料表的子資料表要一起恢復
+            jdbcTemplate.update("INSERT INTO ADDRESS (ID, PERSON_ID, CITY)"
+                    + " VALUES (2, 1, 'Tainan')");
+            Connection transaction = dataSource.getConnection();
+            try {
+                transaction.setAutoCommit(false);
+                transaction.createStatement().executeUpdate(
+                        "UPDATE PERSON SET NAME = 'changed'");
+                transaction.rollback();
+
+            } finally {
+                transaction.close();
+            }
+            assertEquals(Arrays.asList("PERSON", "ADDRESS"), snapshot.getDirtyTables());
+            assertEquals(Arrays.asList("PERSON", "ADDRESS"),
+                    snapshot.restoreDirtyTables(connection));
+            assertEquals(1, countOf("ADDRESS"));
+            assertEquals("Alice", nameOf(1));
+
+            // TRUNCATE TABLE 不會觸發 trigger，由資料筆數發現
+            jdbcTemplate.execute("TRUNCATE TABLE TAG");
+            assertEquals(Arrays.asList("TAG"), snapshot.restoreDirtyTables(connection));
+            assertEquals(1, countOf("TAG"));
+
+            // 沒有異動時不恢復任何資料表
+            assertEquals(Collections.emptyList(), snapshot.restoreDirtyTables(connection));
+            snapshot.drop(connection);
+
+        } finally {
+            connection.close();
+        }
+    }
+
+    private void createTables() {
+        jdbcTemplate.batchUpdate("CREATE TABLE PERSON (ID BIGINT PRIMARY KEY, NAME VARCHAR(100))",
+                "CREATE TABLE ADDRESS (ID BIGINT PRIMARY KEY,"
+                        + " PERSON_ID BIGINT REFERENCES PERSON (ID), CITY VARCHAR(100))",
+                "CREATE TABLE TAG (ID BIGINT PRIMARY KEY, NAME VARCHAR(100))");
+    }
+
+    private TestContext testContext(Object testInstance) {
+        TestContext testContext = mock(TestContext.class);
+        when(testContext.getTestInstance()).thenReturn(testInstance);
+        Mockito.<Class<?>> when(testContext.getTestClass()).thenReturn(testInstance.getClass());
+        when(testContext.getApplicationContext()).thenReturn(applicationContext);
+        return testContext;
+    }
+
+    private String nameOf(long id) {
+        return jdbcTemplate.queryForObject("SELECT NAME FROM PERSON WHERE ID = ?", String.class,
+                id);
+    }
+
+    private int snapshotCount() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM INFORMATION_SCHEMA.SCHEMATA"
+                + " WHERE SCHEMA_NAME LIKE 'CHT_SNAPSHOT_%'", Integer.class);
+    }
+
+    private int countOf(String tableName) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + tableName, Integer.class);
+    }
+
+    @DataSetLocation(value = DATA_SET, reset = ResetMode.SNAPSHOT)
+    public static class SnapshotTests {
+    }
+}
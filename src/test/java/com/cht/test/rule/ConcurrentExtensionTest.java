@@ -0,0 +1,213 @@
+package com.cht.test.rule;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.InvocationInterceptor.Invocation;
+import org.junit.jupiter.api.extension.ReflectiveInvocationContext;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.function.Executable;
+import org.mockito.Mockito;
+
+import com.cht.test.AbstractJupiterTests;
+import com.cht.test.annotation.Concurrent;
+
+public class ConcurrentExtensionTest {
+
+    @RegisterExtension
+    static ConcurrentExtension concurrentExtension = new ConcurrentExtension()
+            .threadLeakPolicy(ThreadLeakPolicy.FAIL);
+
+    private final Set<Integer> indexes = Collections
+            .newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+    @Test
+    @Concurrent(8)
+    public void testContextParameter(ConcurrentContext context) throws InterruptedException {
+        assertEquals(8, context.getConcurrency());
+        indexes.add(context.getIndex());
+        context.awaitPhase();
+        // 所有 Thread 都在同一個測試物件上執行
+        assertEquals(8, indexes.size());
+    }
+
+    @Test
+    public void testIterations() throws Throwable {
+        ConcurrentExtension extension = new ConcurrentExtension();
+        Target target = new Target();
+        Invocation<Void> invocation = invocation();
+        intercept(extension, target, "iterations", invocation);
+
+        verify(invocation).skip();
+        verify(invocation, never()).proceed();
+        assertEquals(40, target.calls.get());
+        assertEquals(40, extension.getLastResult().getOperations());
+    }
+
+    @Test
+    public void testWorkerFailure() {
+        final Target target = new Target();
+        IllegalStateException e = assertThrows(IllegalStateException.class, new Executable() {
+            @Override
+            public void execute() throws Throwable {
+                intercept(new ConcurrentExtension(), target, "failing", invocation());
+            }
+        });
+        assertEquals("worker 2", e.getMessage());
+    }
+
+    @Test
+    public void testNotConcurrent() throws Throwable {
+        Invocation<Void> invocation = invocation();
+        intercept(new ConcurrentExtension(), new Target(), "notConcurrent", invocation);
+        verify(invocation).proceed();
+        verify(invocation, never()).skip();
+    }
+
+    @Test
+    public void testThreadLeakInParallel() throws Throwable {
+        final ConcurrentExtension extension = new ConcurrentExtension()
+                .threadLeakPolicy(ThreadLeakPolicy.FAIL);
+        final Target target = new Target();
+        assertThrows(AssertionError.class, new Executable() {
+            @Override
+            public void execute() throws Throwable {
+                intercept(extension, target, "leaking", invocation());
+            }
+        });
+
+        // 同時執行其他測試時無法分辨 Thread 是由哪個測試建立的，只記錄 warning log
+        ExtensionContext parallel = extensionContext(target);
+        when(parallel.getConfigurationParameter(ConcurrentExtension.PARALLEL_ENABLED))
+                .thenReturn(Optional.of("true"));
+        intercept(extension, target, "leaking", invocation(), parallel);
+    }
+
+    @Test
+    public void testRegisteredExtensionReplacesDeclaredOne() throws Throwable {
+        assertTrue(Arrays.asList(AbstractJupiterTests.class.getAnnotation(ExtendWith.class)
+                .value()).contains(ConcurrentExtension.class));
+
+        // 父類別以 @ExtendWith 註冊的 ConcurrentExtension 不作用
+        ConcurrentExtension declared = new ConcurrentExtension();
+        RegisteredTests tests = new RegisteredTests();
+        assertFalse(declared.isActive(extensionContext(tests)));
+        assertTrue(RegisteredTests.registered.isActive(extensionContext(tests)));
+
+        Invocation<Void> invocation = invocation();
+        intercept(declared, tests, "iterations", invocation);
+        verify(invocation).proceed();
+        assertEquals(0, tests.calls.get());
+
+        // 沒有以 @RegisterExtension 註冊時，由 @ExtendWith 註冊的 ConcurrentExtension 執行
+        assertTrue(declared.isActive(extensionContext(new Target())));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Invocation<Void> invocation() {
+        return mock(Invocation.class);
+    }
+
+    private static ExtensionContext extensionContext(Object target) {
+        ExtensionContext extensionContext = mock(ExtensionContext.class);
+        Mockito.<Class<?>> when(extensionContext.getRequiredTestClass()).thenReturn(
+                target.getClass());
+        when(extensionContext.getTestInstance()).thenReturn(Optional.of(target));
+        when(extensionContext.getConfigurationParameter(ConcurrentExtension.PARALLEL_ENABLED))
+                .thenReturn(Optional.<String> empty());
+        return extensionContext;
+    }
+
+    private static void intercept(ConcurrentExtension extension, Object target,
+            String methodName, Invocation<Void> invocation) throws Throwable {
+        intercept(extension, target, methodName, invocation, extensionContext(target));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void intercept(ConcurrentExtension extension, Object target,
+            String methodName, Invocation<Void> invocation, ExtensionContext extensionContext)
+            throws Throwable {
+        Method method = null;
+        for (Method candidate : target.getClass().getMethods()) {
+            if (candidate.getName().equals(methodName)) {
+                method = candidate;
+            }
+        }
+        List<Object> arguments = Arrays.asList(new Object[method.getParameterTypes().length]);
+
+        ReflectiveInvocationContext<Method> invocationContext = mock(
+                ReflectiveInvocationContext.class);
+        when(invocationContext.getExecutable()).thenReturn(method);
+        when(invocationContext.getTarget()).thenReturn(Optional.of(target));
+        when(invocationContext.getArguments()).thenReturn(arguments);
+        extension.interceptTestMethod(invocation, invocationContext, extensionContext);
+    }
+
+    public static class Target {
+
+        final AtomicInteger calls = new AtomicInteger();
+
+        @Concurrent(value = 4, iterations = 10)
+        public void iterations() {
+            calls.incrementAndGet();
+        }
+
+        @Concurrent(4)
+        public void failing(ConcurrentContext context) {
+            if (context.getIndex() == 2) {
+                throw new IllegalStateException("worker " + context.getIndex());
+            }
+        }
+
+        @Concurrent(1)
+        public void leaking() {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(1000);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        public void notConcurrent() {
+            calls.incrementAndGet();
+        }
+    }
+
+    public static class RegisteredTests extends AbstractJupiterTests {
+
+        @RegisterExtension
+        static ConcurrentExtension registered = new ConcurrentExtension();
+
+        final AtomicInteger calls = new AtomicInteger();
+
+        @Concurrent(4)
+        public void iterations() {
+            calls.incrementAndGet();
+        }
+    }
+}
@@ -1,7 +1,26 @@
 package com.cht.test.rule;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 
+import org.junit.Assume;
 import org.junit.Rule;
 import org.junit.Test;
 
@@ -21,4 +40,453 @@ public class ConcurrentRuleTest {
         Thread.sleep(n);
         System.out.println("Thread \"" + Thread.currentThread().getName() + "\" finished");
     }
+
+    @Test
+    @Concurrent(value = 20, maxP99Millis = 5000)
+    public void testLatency() throws InterruptedException {
+        Thread.sleep(5);
+    }
+
+    @Test
+    public void testResult() throws Throwable {
+        ConcurrentResult result = new ConcurrentExecution("measured", 8,
+                ExecutorStrategies.shared(), ThreadLeakPolicy.FAIL)
+                .execute(new ConcurrentExecution.Task() {
+                    @Override
+                    public void run() throws InterruptedException {
+                        Thread.sleep(20);
+                    }
+                });
+        assertEquals(8, result.getOperations());
+        assertEquals(0, result.getFailures());
+        assertTrue(result.getP50Millis() >= 20);
+        assertTrue(result.getMaxMillis() >= result.getP99Millis());
+        assertTrue(result.getThroughput() > 0);
+        assertTrue(result.toJson().startsWith("{\"name\":\"measured\""));
+    }
+
+    @Test
+    public void testHistogramPercentiles() {
+        LatencyHistogram.Recorder recorder = new LatencyHistogram.Recorder();
+        for (long value = 1; value <= 10000; value++) {
+            recorder.record(value * 1000);
+        }
+        LatencyHistogram histogram = LatencyHistogram.merge(recorder);
+        assertEquals(10000, histogram.getTotalCount());
+        assertEquals(10000000, histogram.getMaxValue());
+        assertEquals(5000000, histogram.getValueAtPercentile(50), 5000000 / 64);
+        assertEquals(9900000, histogram.getValueAtPercentile(99), 9900000 / 64);
+    }
+
+    @Test
+    public void testIterations() throws Throwable {
+        final AtomicInteger calls = new AtomicInteger();
+        ConcurrentResult result = new ConcurrentExecution("iterated", 4,
+                ExecutorStrategies.shared(), ThreadLeakPolicy.FAIL).load(25, 0).warmup(5, 0)
+                .rampUp(20).execute(new ConcurrentExecution.Task() {
+                    @Override
+                    public void run() {
+                        calls.incrementAndGet();
+                    }
+                });
+        assertEquals(4 * 30, calls.get());
+        assertEquals(4 * 25, result.getOperations());
+    }
+
+    @Test
+    public void testDuration() throws Throwable {
+        ConcurrentResult result = new ConcurrentExecution("timed", 2, ExecutorStrategies.shared(),
+                ThreadLeakPolicy.FAIL).load(1, 50).execute(new ConcurrentExecution.Task() {
+            @Override
+            public void run() throws InterruptedException {
+                Thread.sleep(5);
+            }
+        });
+        assertTrue(result.getOperations() > 2);
+        assertTrue(result.getElapsedMillis() >= 50);
+    }
+
+    @Test
+    public void testOpenLoop() throws Throwable {
+        ConcurrentResult result = new ConcurrentExecution("scheduled", 4,
+                ExecutorStrategies.shared(), ThreadLeakPolicy.FAIL).rate(500).load(1, 200)
+                .warmup(10, 0).execute(new ConcurrentExecution.Task() {
+                    @Override
+                    public void run() {
+                        // do nothing
+                    }
+                });
+        // 實際的 throughput 受機器負載影響，只檢查呼叫次數
+        assertEquals(100, result.getOperations());
+        assertEquals(0, result.getFailures());
+        assertEquals(0, result.getDropped());
+        assertEquals(500, result.getTargetRate(), 0);
+    }
+
+    @Test
+    public void testOpenLoopRejectsRampUp() {
+        // 設定時就檢查，不會在開始收集統計資料之後才失敗
+        try {
+            new ConcurrentExecution("rampUp", 2, ExecutorStrategies.shared(),
+                    ThreadLeakPolicy.IGNORE).rampUp(100).rate(1000);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("rampUpMillis"));
+        }
+        try {
+            new ConcurrentExecution("rate", 2, ExecutorStrategies.shared(),
+                    ThreadLeakPolicy.IGNORE).rate(1000).rampUp(100);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("rampUpMillis"));
+        }
+    }
+
+    @Test
+    public void testOpenLoopMeasuresQueueing() throws Throwable {
+        // 1 個 Thread 每 10ms 要處理一次 20ms 的呼叫，排隊的時間會越來越長
+        ConcurrentResult result = new ConcurrentExecution("overloaded", 1,
+                ExecutorStrategies.shared(), ThreadLeakPolicy.FAIL).rate(100).load(10, 0)
+                .execute(new ConcurrentExecution.Task() {
+                    @Override
+                    public void run() throws InterruptedException {
+                        Thread.sleep(20);
+                    }
+                });
+        assertTrue(result.getMaxMillis() >= 100);
+        assertTrue(result.getLate() > 0);
+    }
+
+    @Test
+    @Concurrent(4)
+    public void testContext() throws Exception {
+        ConcurrentContext context = ConcurrentContext.current();
+        AtomicInteger counter = (AtomicInteger) context.getSharedState().computeIfAbsent(
+                "counter", new Function<String, Object>() {
+                    @Override
+                    public Object apply(String key) {
+                        return new AtomicInteger();
+                    }
+                });
+        counter.incrementAndGet();
+        context.awaitPhase();
+        // 所有 Thread 都已經加過
+        assertEquals(4, counter.get());
+        context.awaitBarrier();
+        assertTrue(context.getIndex() < context.getConcurrency());
+    }
+
+    @Test
+    @Concurrent(value = 4, diagnostics = true)
+    public void testDiagnostics() {
+        synchronized (this) {
+            new StringBuilder().append(Thread.currentThread().getName()).toString();
+        }
+    }
+
+    @Test
+    public void testDeadlock() throws Throwable {
+        final Lock[] locks = new Lock[] { new ReentrantLock(), new ReentrantLock() };
+        try {
+            new ConcurrentExecution("deadlock", 2, ExecutorStrategies.shared(),
+                    ThreadLeakPolicy.FAIL).diagnostics().execute(new ConcurrentExecution.Task() {
+                @Override
+                public void run() throws Exception {
+                    ConcurrentContext context = ConcurrentContext.current();
+                    Lock first = locks[context.getIndex()];
+                    Lock second = locks[1 - context.getIndex()];
+                    first.lockInterruptibly();
+                    try {
+                        context.awaitBarrier();
+                        second.lockInterruptibly();
+                        second.unlock();
+
+                    } finally {
+                        first.unlock();
+                    }
+                }
+            });
+            fail();
+
+        } catch (AssertionError e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("deadlock deadlocked:"));
+            assertTrue(e.getMessage().contains("deadlock-thread-1"));
+        }
+    }
+
+    @Test
+    @Concurrent(levels = { 1, 2, 4 }, iterations = 5)
+    public void testLevels() throws InterruptedException {
+        Thread.sleep(2);
+    }
+
+    @Test
+    public void testSweep() throws Throwable {
+        Concurrent concurrent = ConcurrentRuleTest.class.getMethod("testLevels").getAnnotation(
+                Concurrent.class);
+        final AtomicInteger calls = new AtomicInteger();
+        ConcurrentRule rule = new ConcurrentRule();
+        rule.execute(ConcurrentRuleTest.class.getName(), "sweep", concurrent,
+                new ConcurrentExecution.Task() {
+                    @Override
+                    public void run() throws InterruptedException {
+                        calls.incrementAndGet();
+                        Thread.sleep(2);
+                    }
+                });
+        assertEquals((1 + 2 + 4) * 5, calls.get());
+
+        ConcurrentSweep sweep = rule.getLastSweep();
+        // speedup 受機器負載影響，只檢查每個同步等級都有結果
+        assertEquals(3, sweep.getResults().size());
+        int[] levels = { 1, 2, 4 };
+        for (int i = 0; i < levels.length; i++) {
+            assertEquals(levels[i], sweep.getResults().get(i).getConcurrency());
+            assertEquals(levels[i] * 5, sweep.getResult(levels[i]).getOperations());
+            assertTrue(sweep.getSpeedup(levels[i]) > 0);
+        }
+        assertEquals(1, sweep.getSpeedup(1), 0.001);
+        assertTrue(sweep.toCsv().startsWith("concurrency,"));
+    }
+
+    @Concurrent(levels = { 1, 4, 4 }, iterations = 5)
+    public void duplicateLevels() {
+    }
+
+    @Test
+    public void testDuplicateLevels() throws Throwable {
+        Concurrent concurrent = ConcurrentRuleTest.class.getMethod("duplicateLevels")
+                .getAnnotation(Concurrent.class);
+        final AtomicInteger calls = new AtomicInteger();
+        try {
+            new ConcurrentRule().execute(ConcurrentRuleTest.class.getName(), "duplicate",
+                    concurrent, new ConcurrentExecution.Task() {
+                        @Override
+                        public void run() {
+                            calls.incrementAndGet();
+                        }
+                    });
+            fail();
+
+        } catch (IllegalArgumentException e) {
+            // 執行任何同步等級之前就拒絕
+            assertEquals(0, calls.get());
+        }
+    }
+
+    @Test
+    public void testFailFast() throws Throwable {
+        final AtomicInteger calls = new AtomicInteger();
+        try {
+            new ConcurrentExecution("failing", 4, ExecutorStrategies.shared(),
+                    ThreadLeakPolicy.FAIL).load(1, 10000).execute(new ConcurrentExecution.Task() {
+                @Override
+                public void run() throws InterruptedException {
+                    if (calls.incrementAndGet() == 10) {
+                        throw new IllegalStateException("failed");
+                    }
+                    Thread.sleep(1);
+                }
+            });
+            fail();
+
+        } catch (IllegalStateException e) {
+            assertEquals("failed", e.getMessage());
+        }
+        int stopped = calls.get();
+        Thread.sleep(50);
+        assertEquals(stopped, calls.get());
+    }
+
+    @Test
+    public void testTimeout() throws Throwable {
+        try {
+            new ConcurrentExecution("hanging", 2, ExecutorStrategies.shared(),
+                    ThreadLeakPolicy.FAIL).failFast(false).timeout(100).execute(
+                    new ConcurrentExecution.Task() {
+                        @Override
+                        public void run() throws InterruptedException {
+                            if (Thread.currentThread().getName().endsWith("-0")) {
+                                throw new IllegalArgumentException("first");
+                            }
+                            Thread.sleep(10000);
+                        }
+                    });
+            fail();
+
+        } catch (AssertionError e) {
+            assertTrue(e.getMessage().contains("hanging-thread-1"));
+            assertEquals(IllegalArgumentException.class, e.getSuppressed()[0].getClass());
+        }
+    }
+
+    @Test(expected = AssertionError.class)
+    public void testMaxP99Millis() throws Throwable {
+        new ConcurrentExecution("slow", 2, ExecutorStrategies.shared(), ThreadLeakPolicy.FAIL)
+                .maxP99Millis(1).execute(new ConcurrentExecution.Task() {
+                    @Override
+                    public void run() throws InterruptedException {
+                        Thread.sleep(20);
+                    }
+                });
+    }
+
+    @Test
+    public void testPooledThreadsAreReused() throws Throwable {
+        ExecutorStrategy strategy = ExecutorStrategies.pooled(4,
+                new ConcurrentThreadFactory("reused", true));
+        final Set<Thread> threads = Collections
+                .newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+        ConcurrentExecution.Task task = new ConcurrentExecution.Task() {
+            @Override
+            public void run() {
+                threads.add(Thread.currentThread());
+            }
+        };
+
+        new ConcurrentExecution("first", 4, strategy, ThreadLeakPolicy.FAIL).execute(task);
+        new ConcurrentExecution("second", 4, strategy, ThreadLeakPolicy.FAIL).execute(task);
+        assertEquals(4, threads.size());
+    }
+
+    @Test
+    public void testPooledStrategyRunsAllThreadsAtOnce() throws Throwable {
+        // 只有 2 個共用 Thread 時，4 個 Thread 必須同時執行才能通過 barrier
+        final CyclicBarrier barrier = new CyclicBarrier(4);
+        new ConcurrentExecution("oversized", 4, ExecutorStrategies.pooled(2,
+                new ConcurrentThreadFactory("oversized", true)), ThreadLeakPolicy.FAIL)
+                .execute(new ConcurrentExecution.Task() {
+                    @Override
+                    public void run() throws Throwable {
+                        barrier.await(10, TimeUnit.SECONDS);
+                    }
+                });
+    }
+
+    @Test
+    public void testPooledThreadsAreReserved() throws Throwable {
+        ExecutorStrategy strategy = ExecutorStrategies.pooled(4,
+                new ConcurrentThreadFactory("reserved", true));
+        ExecutorService first = strategy.acquire("first", 3);
+        // 平行執行的測試保留不到足夠的共用 Thread，改用專屬的 Thread pool
+        ExecutorService second = strategy.acquire("second", 3);
+        assertTrue(second instanceof ThreadPoolExecutor);
+        assertEquals(3, ((ThreadPoolExecutor) second).getCorePoolSize());
+        assertTrue(strategy.release(second));
+        assertTrue(second.isTerminated());
+
+        assertTrue(strategy.release(first));
+        assertTrue(first.isShutdown());
+        // 歸還後可以再保留所有共用的 Thread
+        ExecutorService third = strategy.acquire("third", 4);
+        assertFalse(third instanceof ThreadPoolExecutor);
+        assertTrue(strategy.release(third));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testBarrierNeedsAllThreadsAtOnce() throws Throwable {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            new ConcurrentExecution("undersized", 4, ExecutorStrategies.using(executor),
+                    ThreadLeakPolicy.IGNORE).execute(new ConcurrentExecution.Task() {
+                @Override
+                public void run() throws Throwable {
+                    ConcurrentContext.current().awaitBarrier();
+                }
+            });
+
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testBarrierNeedsIdleThreads() throws Throwable {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        final CountDownLatch busy = new CountDownLatch(1);
+        try {
+            // Thread pool 有 4 個 Thread，但其中 2 個正在執行其他工作
+            for (int i = 0; i < 2; i++) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            busy.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+            }
+            while (((ThreadPoolExecutor) executor).getActiveCount() < 2) {
+                Thread.sleep(1);
+            }
+            new ConcurrentExecution("busy", 3, ExecutorStrategies.using(executor),
+                    ThreadLeakPolicy.IGNORE).execute(new ConcurrentExecution.Task() {
+                @Override
+                public void run() throws Throwable {
+                    ConcurrentContext.current().awaitBarrier();
+                }
+            });
+
+        } finally {
+            busy.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(expected = AssertionError.class)
+    public void testThreadLeak() throws Throwable {
+        new ConcurrentExecution("leaky", 2, ExecutorStrategies.perTest(null),
+                ThreadLeakPolicy.FAIL).execute(new ConcurrentExecution.Task() {
+            @Override
+            public void run() {
+                Thread thread = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            Thread.sleep(1000);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                };
+                thread.setDaemon(true);
+                thread.start();
+            }
+        });
+    }
+
+    @Test
+    public void testThreadNames() throws Throwable {
+        final Set<String> names = Collections
+                .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        new ConcurrentExecution("named", 3, ExecutorStrategies.shared(), ThreadLeakPolicy.FAIL)
+                .execute(new ConcurrentExecution.Task() {
+                    @Override
+                    public void run() {
+                        names.add(Thread.currentThread().getName());
+                    }
+                });
+        assertTrue(names.contains("named-thread-0"));
+        assertEquals(3, names.size());
+    }
+
+    @Test
+    public void testVirtualThreads() throws Throwable {
+        Assume.assumeTrue(VirtualThreads.isSupported());
+
+        final Set<Thread> threads = Collections
+                .newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+        new ConcurrentExecution("virtual", 1000, ExecutorStrategies.virtual(),
+                ThreadLeakPolicy.FAIL).monitorPinning(true).execute(
+                new ConcurrentExecution.Task() {
+                    @Override
+                    public void run() throws InterruptedException {
+                        threads.add(Thread.currentThread());
+                        Thread.sleep(10);
+                    }
+                });
+        assertEquals(1000, threads.size());
+    }
 }
@@ -0,0 +1,90 @@
+package com.cht.test.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 比較 {@link ObjectRobber} 的 Reflection 存取方式與 {@link FieldAccessor} 的效能。
+ * <p>
+ * 不會在單元測試時執行，請在 IDE 中直接執行 {@link #main(String[])}，或是:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.cht.test.util.ObjectRobberBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObjectRobberBenchmark {
+
+    private BenchmarkTarget target;
+
+    private FieldAccessor<Integer> accessor;
+
+    private int counter;
+
+    @Setup
+    public void setUp() throws NoSuchFieldException, IllegalAccessException {
+        target = new BenchmarkTarget();
+        accessor = ObjectRobber.accessor(BenchmarkTarget.class, "value");
+    }
+
+    @Benchmark
+    public Object reflectionGet() throws NoSuchFieldException, IllegalAccessException {
+        return ObjectRobber.get(target, "value");
+    }
+
+    @Benchmark
+    public void reflectionSet() throws NoSuchFieldException, IllegalAccessException {
+        ObjectRobber.set(target, "value", counter++);
+    }
+
+    @Benchmark
+    public Object accessorGet() {
+        return accessor.get(target);
+    }
+
+    @Benchmark
+    public void accessorSet() {
+        accessor.set(target, counter++);
+    }
+
+    @Benchmark
+    public int accessorGetInt() {
+        return accessor.getInt(target);
+    }
+
+    @Benchmark
+    public void accessorSetInt() {
+        accessor.setInt(target, counter++);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder().include(ObjectRobberBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+
+    static class BenchmarkTarget {
+
+        @SuppressWarnings("unused")
+        private int value;
+    }
+}
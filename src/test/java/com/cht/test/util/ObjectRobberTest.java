@@ -1,11 +1,20 @@
 package com.cht.test.util;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
 
 import java.lang.reflect.InvocationTargetException;
 import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import javax.annotation.Resource;
 
 import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
 
 public class ObjectRobberTest {
 
@@ -32,6 +41,78 @@ public class ObjectRobberTest {
         private int intField = 7788;
     }
 
+    @Test
+    public void testGetInheritedField() throws SecurityException, NoSuchFieldException,
+            IllegalAccessException {
+        SubDummyClass obj = new SubDummyClass();
+        ObjectRobber.set(obj, "OBJECT_VALUE", Integer.valueOf(5));
+
+        assertEquals(5, ((Integer) ObjectRobber.get(obj, "OBJECT_VALUE")).intValue());
+        assertEquals(5, obj.getObjectValue());
+    }
+
+    @Test
+    public void testGetMissingFieldRepeatedly() throws SecurityException, IllegalAccessException {
+        // 第二次以後會命中快取中的「找不到」結果，但仍要丟出相同的例外
+        for (int i = 0; i < 2; i++) {
+            try {
+                ObjectRobber.get(new DummyClass(), "noSuchField");
+                fail("NoSuchFieldException expected");
+
+            } catch (NoSuchFieldException e) {
+                assertEquals("noSuchField", e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void testNestedGetAndSet() throws SecurityException, NoSuchFieldException,
+            IllegalAccessException {
+        Outer outer = new Outer();
+        ObjectRobber.set(outer, "inner.dummy.OBJECT_VALUE", Integer.valueOf(12));
+
+        assertEquals(12, outer.inner.dummy.getObjectValue());
+        assertEquals(Integer.valueOf(12), ObjectRobber.get(outer, "inner.dummy.OBJECT_VALUE"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNestedGetWithNullIntermediate() throws SecurityException,
+            NoSuchFieldException, IllegalAccessException {
+        Outer outer = new Outer();
+        outer.inner = null;
+        ObjectRobber.get(outer, "inner.dummy");
+    }
+
+    @Test
+    public void testPropertyPathNullPolicies() throws NoSuchFieldException,
+            IllegalAccessException {
+        Outer outer = new Outer();
+        outer.inner = null;
+        PropertyPath path = PropertyPath.compile("inner.dummy.OBJECT_VALUE");
+        assertSame(path, PropertyPath.compile("inner.dummy.OBJECT_VALUE"));
+
+        PropertyPath nullSafe = path.withNullPolicy(PropertyPath.NullPolicy.NULL_SAFE);
+        assertNull(nullSafe.get(outer));
+        nullSafe.set(outer, 1);
+        assertNull(outer.inner);
+
+        path.withNullPolicy(PropertyPath.NullPolicy.INSTANTIATE).set(outer, 3);
+        assertEquals(3, outer.inner.dummy.getObjectValue());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPropertyPathNull() {
+        PropertyPath.compile(null);
+    }
+
+    private static class Outer {
+        private Inner inner = new Inner();
+    }
+
+    private static class Inner {
+        private DummyClass dummy = new DummyClass();
+    }
+
     @Test
     public void testSetClassStringObject() throws SecurityException, NoSuchFieldException,
             IllegalAccessException {
@@ -49,6 +130,33 @@ public class ObjectRobberTest {
         assertEquals(32, obj.getObjectValue());
     }
 
+    @Test
+    public void testAccessor() throws NoSuchFieldException, IllegalAccessException {
+        DummyClass obj = new DummyClass();
+        FieldAccessor<Integer> accessor = ObjectRobber.accessor(DummyClass.class, "OBJECT_VALUE");
+        accessor.setInt(obj, 42);
+
+        assertEquals(42, accessor.getInt(obj));
+        assertEquals(42L, accessor.getLong(obj));
+        assertEquals(Integer.valueOf(42), accessor.get(obj));
+        assertSame(accessor, ObjectRobber.accessor(DummyClass.class, "OBJECT_VALUE"));
+    }
+
+    @Test
+    public void testAccessorOnStaticField() throws NoSuchFieldException, IllegalAccessException {
+        FieldAccessor<Integer> accessor = ObjectRobber.accessor(SubDummyClass.class, "CLASS_VALUE");
+        accessor.set(null, 64);
+
+        assertEquals(64, DummyClass.getClassValue());
+        assertEquals(64, accessor.getInt(null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAccessorWithNarrowingType() throws NoSuchFieldException,
+            IllegalAccessException {
+        ObjectRobber.accessor(DummyClass.class, "OBJECT_VALUE").getShort(new DummyClass());
+    }
+
     @Test
     public void testGenInstance() throws NoSuchMethodException, InstantiationException,
             IllegalAccessException, InvocationTargetException {
@@ -58,6 +166,87 @@ public class ObjectRobberTest {
         assertEquals(10, dummyClass.getObjectValue());
     }
 
+    @Test
+    public void testGenInstanceWithCompatibleArguments() throws NoSuchMethodException,
+            InstantiationException, IllegalAccessException, InvocationTargetException {
+        ConstructedClass constructed = ObjectRobber.genInstance(ConstructedClass.class, "a", 1);
+        assertEquals("a:1", constructed.value);
+
+        constructed = ObjectRobber.genInstance(ConstructedClass.class, new StringBuilder("b"));
+        assertEquals("b", constructed.value);
+
+        constructed = ObjectRobber.genInstance(ConstructedClass.class, (Object) null);
+        assertEquals("null", constructed.value);
+    }
+
+    @Test
+    public void testGenInstances() throws NoSuchMethodException, InstantiationException,
+            IllegalAccessException, InvocationTargetException {
+        final AtomicInteger sequence = new AtomicInteger();
+        List<ConstructedClass> instances = ObjectRobber.genInstances(ConstructedClass.class, 3,
+                new Supplier<Object[]>() {
+                    @Override
+                    public Object[] get() {
+                        return new Object[] { "n", sequence.incrementAndGet() };
+                    }
+                });
+
+        assertEquals(3, instances.size());
+        assertEquals("n:3", instances.get(2).value);
+    }
+
+    @Test
+    public void testInstanceFactory() throws NoSuchMethodException, InstantiationException,
+            IllegalAccessException, InvocationTargetException {
+        InstanceFactory<ConstructedClass> factory = ObjectRobber.instanceFactory(
+                ConstructedClass.class, String.class, long.class);
+
+        assertEquals("x:7", factory.newInstance("x", 7L).value);
+        assertSame(factory, ObjectRobber.instanceFactory(ConstructedClass.class, String.class,
+                long.class));
+    }
+
+    private static class ConstructedClass {
+        private final String value;
+
+        private ConstructedClass(CharSequence value) {
+            this.value = String.valueOf(value);
+        }
+
+        private ConstructedClass(String prefix, long number) {
+            this.value = prefix + ":" + number;
+        }
+    }
+
+    @Test
+    public void testManualWire() throws SecurityException, IllegalAccessException {
+        WiredService service = new WiredService();
+        Runnable runnable = new Thread();
+        StringBuilder builder = new StringBuilder();
+
+        ObjectRobber.manualWire(service, builder, runnable);
+
+        assertSame(runnable, service.runnable);
+        assertSame(builder, service.sequence);
+        assertSame(builder, ((AbstractWiredService) service).inherited);
+        assertNull(service.notWired);
+    }
+
+    private static class AbstractWiredService {
+        @Resource
+        private CharSequence inherited;
+    }
+
+    private static class WiredService extends AbstractWiredService {
+        @Autowired
+        private Runnable runnable;
+
+        @Resource
+        private CharSequence sequence;
+
+        private Runnable notWired;
+    }
+
     @Test
     public void testInvoke1() throws SecurityException, NoSuchMethodException,
             IllegalAccessException, InvocationTargetException {
@@ -81,6 +270,69 @@ public class ObjectRobberTest {
         Integer integer = ObjectRobber.invoke(dummyClass, "getClassValue");
         assertEquals(DummyClass.getClassValue(), integer.intValue());
     }
+
+    @Test
+    public void testInvokeWithWideningAndSubtype() throws SecurityException,
+            NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+        OverloadedClass overloaded = new OverloadedClass();
+
+        assertEquals("long", ObjectRobber.invoke(overloaded, "describe", 10));
+        assertEquals("CharSequence", ObjectRobber.invoke(overloaded, "describe", "text"));
+        assertEquals("null", ObjectRobber.invoke(overloaded, "nullable", (Object) null));
+        assertEquals("varargs:3", ObjectRobber.invoke(overloaded, "describe", 1, 2, 3));
+    }
+
+    @Test
+    public void testInvokeInheritedMethod() throws SecurityException, NoSuchMethodException,
+            IllegalAccessException, InvocationTargetException {
+        SubDummyClass dummyClass = new SubDummyClass();
+        Integer integer = ObjectRobber.invoke(dummyClass, "setObjectValue", 10);
+
+        assertEquals(10, integer.intValue());
+        assertEquals(10, dummyClass.getObjectValue());
+    }
+
+    @Test(expected = NoSuchMethodException.class)
+    public void testInvokeWithIncompatibleArguments() throws SecurityException,
+            NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+        ObjectRobber.invoke(new DummyClass(), "setObjectValue", "10");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvokeAmbiguously() throws SecurityException, NoSuchMethodException,
+            IllegalAccessException, InvocationTargetException {
+        ObjectRobber.invoke(new OverloadedClass(), "ambiguous", null, null);
+    }
+
+    @SuppressWarnings("unused")
+    private static class OverloadedClass {
+
+        private String describe(long value) {
+            return "long";
+        }
+
+        private String describe(double value) {
+            return "double";
+        }
+
+        private String describe(CharSequence value) {
+            return "CharSequence";
+        }
+
+        private String describe(int... values) {
+            return "varargs:" + values.length;
+        }
+
+        private String nullable(Object value) {
+            return String.valueOf(value);
+        }
+
+        private void ambiguous(String a, Integer b) {
+        }
+
+        private void ambiguous(Integer a, String b) {
+        }
+    }
 }
 
 class DummyClass {
@@ -109,3 +361,6 @@ class DummyClass {
         return OBJECT_VALUE;
     }
 }
+
+class SubDummyClass extends DummyClass {
+}